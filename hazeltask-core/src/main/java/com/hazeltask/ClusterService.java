@@ -5,13 +5,24 @@ import java.util.Collection;
 import java.util.Map;
 
 import com.google.common.base.Predicate;
+import com.hazeltask.executor.GroupSizes;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
 
+/**
+ * The methods without a maxAge ask every member right now.  The ones with a maxAge return
+ * the last snapshot if it is no older than maxAge millis.  Otherwise they fetch a new one, 
+ * and callers asking at the same time share that fetch.
+ */
 public interface ClusterService<GROUP extends Serializable> {
     public Collection<MemberResponse<Long>> getQueueSizes();
     public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes();  
     public Collection<MemberResponse<Long>> getOldestTaskTimes();
     public Collection<MemberResponse<Integer>> getThreadPoolSizes();
+    
+    public Collection<MemberResponse<Long>> getQueueSizes(long maxAge);
+    public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes(long maxAge);  
+    public Collection<MemberResponse<Long>> getOldestTaskTimes(long maxAge);
+    public Collection<MemberResponse<Integer>> getThreadPoolSizes(long maxAge);
  
 //    TODO: add this when we can implement a new member router    
 //    /**
@@ -33,5 +44,33 @@ public interface ClusterService<GROUP extends Serializable> {
      */
     public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes(Predicate<GROUP> predicate);
     
+    /**
+     * The group sizes of every member added together
+     * 
+     * @param predicate (must be serializable, may be null)
+     * @return
+     */
+    public GroupSizes<GROUP> getTotalGroupSizes(Predicate<GROUP> predicate);
+    
+    /**
+     * The largest groups in the cluster.  Each member only sends its limit largest groups 
+     * so this is much cheaper than getGroupSizes when there are many groups.  A group that
+     * is large on one member and small on the others may be undercounted.
+     * 
+     * @param limit
+     * @param predicate (must be serializable, may be null)
+     * @return
+     */
+    public GroupSizes<GROUP> getLargestGroups(int limit, Predicate<GROUP> predicate);
+    
+    /**
+     * The size of these groups in the cluster.  Members look them up directly instead of
+     * testing every group like getGroupSizes(Predicate)
+     * 
+     * @param groups
+     * @return
+     */
+    public GroupSizes<GROUP> getGroupSizes(Collection<GROUP> groups);
+    
     public void clearGroupQueue(GROUP group);
 }
@@ -1,8 +1,8 @@
 package com.hazeltask;
 
 import java.io.Serializable;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -13,10 +13,10 @@ import com.hazelcast.core.LifecycleListener;
 import com.hazelcast.core.LifecycleService;
 import com.hazelcast.core.MemberLeftException;
 import com.hazelcast.core.MigrationEvent;
-import com.hazelcast.core.Partition;
 import com.hazelcast.core.PartitionService;
 import com.hazeltask.config.ConfigValidator;
 import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
 import com.hazeltask.config.HazeltaskConfig;
 import com.hazeltask.core.concurrent.BackoffTimer;
 import com.hazeltask.executor.DistributedExecutorService;
@@ -25,8 +25,11 @@ import com.hazeltask.executor.DistributedFutureTracker;
 import com.hazeltask.executor.HazelcastExecutorTopologyService;
 import com.hazeltask.executor.IExecutorTopologyService;
 import com.hazeltask.executor.TaskResponseListener;
+import com.hazeltask.executor.WriteAheadLogBatcher;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.task.IdleTaskStealer;
+import com.hazeltask.executor.task.MemberCapacityTimerTask;
 import com.hazeltask.executor.task.TaskRebalanceTimerTask;
 import com.hazeltask.executor.task.TaskRecoveryTimerTask;
 import com.hazeltask.hazelcast.HazelcastPartitionManager;
@@ -45,12 +48,14 @@ public class HazeltaskInstance<GROUP extends Serializable> {
     private final HazeltaskTopology<GROUP>                topology;
     private final HazeltaskConfig<GROUP> hazeltaskConfig;
     private final UUID hazeltaskInstanceId = UUID.randomUUID();
+    private static final long MEMBER_CAPACITY_REFRESH = TimeUnit.SECONDS.toMillis(30);
     private final ExecutorConfig<GROUP> executorConfig;
     
-    private final ClusterService<GROUP> clusterService;
+    private final HazeltaskStatisticsService<GROUP> clusterService;
     private final ITopologyService<GROUP> topologyService;
     private final IExecutorTopologyService<GROUP> executorTopologyService;
     private final LocalTaskExecutorService<GROUP> localExeutorService;
+    private final DistributedFutureTracker<GROUP> futureTracker;
     private final ExecutorMetrics executorMetrics;
     
     /**
@@ -72,52 +77,51 @@ public class HazeltaskInstance<GROUP extends Serializable> {
         
         this.topology = new HazeltaskTopology<GROUP>(topologyName, hazelcast.getCluster().getLocalMember());
         executorTopologyService = new HazelcastExecutorTopologyService<GROUP>(hazeltaskConfig, topology);
-        clusterService = new HazeltaskStatisticsService<GROUP>(executorTopologyService);
+        clusterService = new HazeltaskStatisticsService<GROUP>(executorTopologyService, executorMetrics);
         
         if(!executorConfig.isDisableWorkers())
             localExeutorService = new LocalTaskExecutorService<GROUP>(hazelcast, executorConfig, hazeltaskConfig.getThreadFactory(), executorTopologyService, executorMetrics);
         else
             localExeutorService = null;
         
-        final DistributedFutureTracker<GROUP> futureTracker;
-        
 
         if(executorConfig.isFutureSupportEnabled()) {
                        
-            futureTracker = new DistributedFutureTracker<GROUP>(executorTopologyService, executorMetrics, executorConfig);
             final HazelcastPartitionManager partitionManager = new HazelcastPartitionManager(partitionService);
+            futureTracker = new DistributedFutureTracker<GROUP>(executorTopologyService, executorMetrics, executorConfig, partitionManager);
             
             /*
              * TODO: we can make losing partitions nicer:
-             * 1) don't loop so much... this is like o(p*n).. we can make it o(n)
-             * 2) optionally have the future listener store the HazeltaskTask its watching.  It can re-add
-             *    the task if the partition is lost.  (possible race condition here-- would double do work)
-             * 3) organize futures in 2 hashmaps... partitionId -> uuid -> future.
+             * optionally have the future listener store the HazeltaskTask its watching.  It can re-add
+             * the task if the partition is lost.  (possible race condition here-- would double do work)
              */
             partitionManager.addPartitionListener(new PartitionLostListener() {
                 @Override
                 public void partitionLost(MigrationEvent migrationEvent) {
-                    //TODO: make this faster, too many loops
-                    Set<UUID> uuids = futureTracker.getTrackedTaskIds();
-                    for(UUID uuid : uuids) {
-                        Partition partition = partitionManager.getPartition(uuid);
-                        if(migrationEvent.getPartitionId() == partition.getPartitionId()) {
-                            futureTracker.errorFuture(uuid, new MemberLeftException());
-                        }
-                    }
+                    //futures are indexed by partition so this only visits the lost partition's futures
+                    int errored = futureTracker.errorPartitionFutures(migrationEvent.getPartitionId(), new MemberLeftException());
+                    if(errored > 0)
+                        log.warn("Partition "+migrationEvent.getPartitionId()+" was lost, errored "+errored+" futures");
                 }
             });
             
             executorTopologyService.addTaskResponseMessageHandler(futureTracker);
             for(TaskResponseListener listener : executorConfig.getTaskResponseListeners()) {
-                executorTopologyService.addTaskResponseMessageHandler(listener);
+                executorTopologyService.addTaskResponseListener(listener);
             }
             
         } else {
             futureTracker = null;
         }
         
-        executor = new DistributedExecutorServiceImpl<GROUP>(topology, executorTopologyService, executorConfig, futureTracker, localExeutorService, executorMetrics);
+        WriteAheadLogBatcher<GROUP> walBatcher = null;
+        if(executorConfig.isWalGroupCommitEnabled()) {
+            walBatcher = new WriteAheadLogBatcher<GROUP>(executorTopologyService, executorConfig.getWalGroupCommitInterval(), 
+                    executorConfig.getWalGroupCommitSize(), hazeltaskConfig.getThreadFactory().named("wal"), 
+                    executorMetrics.getWalCommitTimer().getMetric(), executorMetrics.getWalBatchSizeHistogram().getMetric());
+        }
+        
+        executor = new DistributedExecutorServiceImpl<GROUP>(topology, executorTopologyService, executorConfig, futureTracker, localExeutorService, walBatcher, executorMetrics);
         
     }
     
@@ -148,20 +152,36 @@ public class HazeltaskInstance<GROUP extends Serializable> {
         }
     }
     
-    private void setupDistributedExecutor(final HazelcastInstance hazelcast, final HazeltaskTopology<GROUP> topology, final BackoffTimer hazeltaskTimer, final ExecutorConfig<GROUP> executorConfig, DistributedExecutorServiceImpl<GROUP> svc, ITopologyService<GROUP> topologySvc, IExecutorTopologyService<GROUP> executorTopologyService, LocalTaskExecutorService<GROUP> localExeutorService, ExecutorMetrics executorMetrics) {
-        final TaskRecoveryTimerTask<GROUP> bundleTask = new TaskRecoveryTimerTask<GROUP>(topology, svc, executorTopologyService, executorMetrics);
+    private void setupDistributedExecutor(final HazelcastInstance hazelcast, final HazeltaskTopology<GROUP> topology, final BackoffTimer hazeltaskTimer, final ExecutorConfig<GROUP> executorConfig, DistributedExecutorServiceImpl<GROUP> svc, final ITopologyService<GROUP> topologySvc, IExecutorTopologyService<GROUP> executorTopologyService, final LocalTaskExecutorService<GROUP> localExeutorService, ExecutorMetrics executorMetrics) {
+        //a rate limited recovery pass can run for a long time, keep it off the shared timer
+        final BackoffTimer recoveryTimer = new BackoffTimer(hazeltaskConfig.getTopologyName(), hazeltaskConfig.getThreadFactory().named("recovery"));
+        //each statistics fan-out can wait up to a minute on slow members
+        final BackoffTimer statisticsTimer = new BackoffTimer(hazeltaskConfig.getTopologyName(), hazeltaskConfig.getThreadFactory().named("statistics"));
+        final TaskRecoveryTimerTask<GROUP> bundleTask = new TaskRecoveryTimerTask<GROUP>(topology, svc, executorTopologyService, hazelcast.getCluster(), recoveryTimer, executorMetrics);
+        final ExecutorLoadBalancingConfig<GROUP> loadBalancingConfig = executorConfig.getLoadBalancingConfig();
         final TaskRebalanceTimerTask<GROUP> rebalanceTask;
-        if(!svc.getExecutorConfig().isDisableWorkers())
-            rebalanceTask = new TaskRebalanceTimerTask<GROUP>(topology, localExeutorService, executorTopologyService, executorMetrics);
-        else
+        final IdleTaskStealer<GROUP> idleTaskStealer;
+        if(svc.getExecutorConfig().isDisableWorkers()) {
             rebalanceTask = null;
-        final IsMemberReadyTimerTask<GROUP> getReadyMembersTask = new IsMemberReadyTimerTask<GROUP>(topologySvc, topology);
+            idleTaskStealer = null;
+        } else if(loadBalancingConfig.isIdleStealingEnabled()) {
+            rebalanceTask = null;
+            idleTaskStealer = new IdleTaskStealer<GROUP>(topology, localExeutorService, executorTopologyService, loadBalancingConfig, hazeltaskConfig.getThreadFactory().named("steal"), executorMetrics);
+            localExeutorService.addListener(idleTaskStealer);
+        } else {
+            rebalanceTask = new TaskRebalanceTimerTask<GROUP>(topology, localExeutorService, executorTopologyService, loadBalancingConfig.getTaskStealPolicy(), executorMetrics);
+            idleTaskStealer = null;
+        }
+        final MemberCapacityTimerTask<GROUP> memberCapacities = svc.getMemberCapacities();
+        final IsMemberReadyTimerTask<GROUP> getReadyMembersTask = new IsMemberReadyTimerTask<GROUP>(topologySvc, topology, hazelcast.getCluster());
+        
+        //listen before we read the ready members so we don't miss a change in between
+        topologySvc.addReadyMemberListener(getReadyMembersTask);
+        hazeltaskConfig.getHazelcast().getCluster().addMembershipListener(getReadyMembersTask);
         
-        //execute the getReadyMembers task immediately
+        //execute the getReadyMembers task immediately, after that it only reconciles missed events
         hazeltaskTimer.schedule(getReadyMembersTask, 20000, 20000);
         getReadyMembersTask.execute();
-   
-        hazeltaskConfig.getHazelcast().getCluster().addMembershipListener(getReadyMembersTask);
         
         svc.addServiceListener(new HazeltaskServiceListener<DistributedExecutorService<GROUP>>(){
             @Override
@@ -174,13 +194,33 @@ public class HazeltaskInstance<GROUP extends Serializable> {
                 /*
                  * We don't need to run the recovery task if we are a lite member because we don't store data
                  */
-                if(!isLiteMember)
-                    hazeltaskTimer.schedule(bundleTask, 1000, executorConfig.getRecoveryProcessPollInterval(), 2);
+                if(!isLiteMember) {
+                    recoveryTimer.schedule(bundleTask, 1000, executorConfig.getRecoveryProcessPollInterval(), 2);
+                    hazelcast.getCluster().addMembershipListener(bundleTask);
+                }
                 
                 if(rebalanceTask != null)
-                    hazeltaskTimer.schedule(rebalanceTask, 1000, hazeltaskConfig.getExecutorConfig().getLoadBalancingConfig().getRebalanceTaskPeriod());
+                    hazeltaskTimer.schedule(rebalanceTask, 1000, loadBalancingConfig.getRebalanceTaskPeriod());
+                
+                if(idleTaskStealer != null)
+                    hazeltaskTimer.schedule(idleTaskStealer, 1000, loadBalancingConfig.getIdleStealStatsMaxAge());
+                
+                if(hazeltaskConfig.getStatisticsRefreshInterval() > 0)
+                    statisticsTimer.schedule(clusterService.createRefreshTask(), hazeltaskConfig.getStatisticsRefreshInterval(), hazeltaskConfig.getStatisticsRefreshInterval());
+                
+                if(memberCapacities != null)
+                    hazeltaskTimer.schedule(memberCapacities, 0, MEMBER_CAPACITY_REFRESH);
+                
+                if(futureTracker != null)
+                    hazeltaskTimer.schedule(futureTracker.createExpiryTask(), futureTracker.getTickMillis(), futureTracker.getTickMillis());
+                
+                if(localExeutorService != null && localExeutorService.getWorkerPoolController() != null)
+                    hazeltaskTimer.schedule(localExeutorService.getWorkerPoolController(), executorConfig.getAdaptiveThreadInterval(), executorConfig.getAdaptiveThreadInterval());
                 
                 if(!executorConfig.isDisableWorkers()) {
+                   //reclaim our tasks from the last shutdown before other members send us more
+                   localExeutorService.restoreQueueSnapshot();
+                   topologySvc.setReady(true);
                    topology.iAmReady();
                    log.info(topology.getName()+" Hazeltask instance is ready to recieve tasks");                 
                 }
@@ -190,7 +230,17 @@ public class HazeltaskInstance<GROUP extends Serializable> {
             public void onBeginShutdown(DistributedExecutorService<GROUP> svc) {
                 log.info(topology.getName()+" Hazeltask instance is unscheduling timer tasks and stopping the timer thread");              
                 topology.shutdown();
+                try {
+                    topologySvc.setReady(false);
+                } catch (RuntimeException e) {
+                    //hazelcast may already be shutting down, the other members drop us when we leave
+                    log.warn(topology.getName()+" Hazeltask instance was unable to unpublish itself as ready", e);
+                }
                 hazeltaskTimer.stop();
+                recoveryTimer.stop();
+                statisticsTimer.stop();
+                if(idleTaskStealer != null)
+                    idleTaskStealer.shutdown();
             }      
         });
     }
@@ -206,6 +256,10 @@ public class HazeltaskInstance<GROUP extends Serializable> {
     public ClusterService<GROUP> getClusterService() {
         return this.clusterService;
     }
+    
+    public IExecutorTopologyService<GROUP> getExecutorTopologyService() {
+        return this.executorTopologyService;
+    }
 
     public HazeltaskConfig<GROUP> getHazeltaskConfig() {
         return hazeltaskConfig;
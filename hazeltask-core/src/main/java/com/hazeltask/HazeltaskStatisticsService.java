@@ -1,38 +1,122 @@
 package com.hazeltask;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import lombok.extern.slf4j.Slf4j;
+
+import com.codahale.metrics.Gauge;
 import com.google.common.base.Predicate;
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.executor.GroupSizes;
 import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
 
+@Slf4j
 public class HazeltaskStatisticsService<GROUP extends Serializable> implements ClusterService<GROUP> {
     private final IExecutorTopologyService<GROUP> executorTopologyService;
     
-    public HazeltaskStatisticsService(IExecutorTopologyService<GROUP> executorTopologyService) {
+    private final StatisticsSnapshot<Collection<MemberResponse<Long>>> queueSizes;
+    private final StatisticsSnapshot<Collection<MemberResponse<Map<GROUP, Integer>>>> groupSizes;
+    private final StatisticsSnapshot<Collection<MemberResponse<Long>>> oldestTaskTimes;
+    private final StatisticsSnapshot<Collection<MemberResponse<Integer>>> threadPoolSizes;
+    
+    public HazeltaskStatisticsService(final IExecutorTopologyService<GROUP> executorTopologyService, ExecutorMetrics metrics) {
         this.executorTopologyService = executorTopologyService;
+        
+        queueSizes = new StatisticsSnapshot<Collection<MemberResponse<Long>>>(new Callable<Collection<MemberResponse<Long>>>() {
+            public Collection<MemberResponse<Long>> call() {
+                return Collections.unmodifiableCollection(executorTopologyService.getMemberQueueSizes());
+            }
+        });
+        groupSizes = new StatisticsSnapshot<Collection<MemberResponse<Map<GROUP, Integer>>>>(new Callable<Collection<MemberResponse<Map<GROUP, Integer>>>>() {
+            public Collection<MemberResponse<Map<GROUP, Integer>>> call() {
+                return unmodifiableGroupSizes(executorTopologyService.getMemberGroupSizes());
+            }
+        });
+        oldestTaskTimes = new StatisticsSnapshot<Collection<MemberResponse<Long>>>(new Callable<Collection<MemberResponse<Long>>>() {
+            public Collection<MemberResponse<Long>> call() {
+                return Collections.unmodifiableCollection(executorTopologyService.getOldestTaskTimestamps());
+            }
+        });
+        threadPoolSizes = new StatisticsSnapshot<Collection<MemberResponse<Integer>>>(new Callable<Collection<MemberResponse<Integer>>>() {
+            public Collection<MemberResponse<Integer>> call() {
+                return Collections.unmodifiableCollection(executorTopologyService.getThreadPoolSizes());
+            }
+        });
+        
+        registerAgeGauge(metrics, "queue-sizes", queueSizes);
+        registerAgeGauge(metrics, "group-sizes", groupSizes);
+        registerAgeGauge(metrics, "oldest-task-times", oldestTaskTimes);
+        registerAgeGauge(metrics, "thread-pool-sizes", threadPoolSizes);
+    }
+    
+    /**
+     * The snapshots are shared by every caller so nobody may change them
+     */
+    private static <GROUP> Collection<MemberResponse<Map<GROUP, Integer>>> unmodifiableGroupSizes(Collection<MemberResponse<Map<GROUP, Integer>>> responses) {
+        List<MemberResponse<Map<GROUP, Integer>>> result = new ArrayList<MemberResponse<Map<GROUP, Integer>>>(responses.size());
+        for(MemberResponse<Map<GROUP, Integer>> response : responses) {
+            if(response.isSuccess() && response.getValue() != null)
+                result.add(new MemberResponse<Map<GROUP, Integer>>(response.getMember(), Collections.unmodifiableMap(response.getValue())));
+            else
+                result.add(response);
+        }
+        return Collections.unmodifiableList(result);
+    }
+    
+    private void registerAgeGauge(ExecutorMetrics metrics, String statistic, final StatisticsSnapshot<?> snapshot) {
+        metrics.registerStatisticsSnapshotAgeGauge(statistic, new Gauge<Long>() {
+            public Long getValue() {
+                return snapshot.getAge();
+            }
+        });
     }
 
     @Override
     public Collection<MemberResponse<Long>> getQueueSizes() {
-        return executorTopologyService.getMemberQueueSizes();
+        return queueSizes.refresh();
     }
 
     @Override
     public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes() {
-        return executorTopologyService.getMemberGroupSizes();
+        return groupSizes.refresh();
     }
 
     @Override
     public Collection<MemberResponse<Long>> getOldestTaskTimes() {
-        return executorTopologyService.getOldestTaskTimestamps();
+        return oldestTaskTimes.refresh();
     }
 
     @Override
     public Collection<MemberResponse<Integer>> getThreadPoolSizes() {
-        return executorTopologyService.getThreadPoolSizes();
+        return threadPoolSizes.refresh();
+    }
+    
+    @Override
+    public Collection<MemberResponse<Long>> getQueueSizes(long maxAge) {
+        return queueSizes.get(maxAge);
+    }
+
+    @Override
+    public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes(long maxAge) {
+        return groupSizes.get(maxAge);
+    }
+
+    @Override
+    public Collection<MemberResponse<Long>> getOldestTaskTimes(long maxAge) {
+        return oldestTaskTimes.get(maxAge);
+    }
+
+    @Override
+    public Collection<MemberResponse<Integer>> getThreadPoolSizes(long maxAge) {
+        return threadPoolSizes.get(maxAge);
     }
 
     @Override
@@ -40,9 +124,46 @@ public class HazeltaskStatisticsService<GROUP extends Serializable> implements C
         return executorTopologyService.getGroupSizes(predicate);
     }
 
+    @Override
+    public GroupSizes<GROUP> getTotalGroupSizes(Predicate<GROUP> predicate) {
+        return executorTopologyService.getTotalGroupSizes(predicate);
+    }
+
+    @Override
+    public GroupSizes<GROUP> getLargestGroups(int limit, Predicate<GROUP> predicate) {
+        return executorTopologyService.getLargestGroups(limit, predicate);
+    }
+
+    @Override
+    public GroupSizes<GROUP> getGroupSizes(Collection<GROUP> groups) {
+        return executorTopologyService.getGroupSizes(groups);
+    }
+
     @Override
     public void clearGroupQueue(GROUP group) {
         executorTopologyService.clearGroupQueue(group);
     }
+    
+    /**
+     * Refreshes the snapshots that have been asked for
+     */
+    public BackoffTask createRefreshTask() {
+        return new BackoffTask() {
+            @Override
+            public boolean execute() {
+                try {
+                    for(StatisticsSnapshot<?> snapshot : new StatisticsSnapshot<?>[]{queueSizes, groupSizes, oldestTaskTimes, threadPoolSizes}) {
+                        if(snapshot.isUsed())
+                            snapshot.refresh();
+                    }
+                    return false;
+                } catch (Throwable t) {
+                    //catch all exceptions and swallow so it doens't cancel our timer task
+                    log.error("Error refreshing cluster statistics", t);
+                    return true;
+                }
+            }
+        };
+    }
 
 }
@@ -12,7 +12,10 @@ import com.hazeltask.core.concurrent.collections.CopyOnWriteArrayListSet;
  * @author jclawson
  */
 public class HazeltaskTopology<GROUP extends Serializable> {
-    private final CopyOnWriteArrayListSet<Member> readyMembers;
+    //replaced as a whole on every change so readers never see a half applied resync
+    private volatile CopyOnWriteArrayListSet<Member> readyMembers;
+    //counts every add and remove so a resync can tell it read stale members
+    private long readyMembersVersion;
     private final Member localMember;
     private final String topologyName;
     private volatile boolean iAmReady;
@@ -26,25 +29,63 @@ public class HazeltaskTopology<GROUP extends Serializable> {
         }
     }
     
+    /**
+     * The returned set is never changed, it is replaced when the ready members change
+     */
     public CopyOnWriteArrayListSet<Member> getReadyMembers() {
         return this.readyMembers;
     }
     
     protected void iAmReady() {
         this.iAmReady = true;
-        this.readyMembers.add(localMember);
+        addReadyMember(localMember);
     }
     
     protected void shutdown() {
         this.iAmReady = false;
+        removeReadyMember(localMember.getUuid());
     }
     
     public boolean isReady() {
         return this.iAmReady;
     }
     
-    protected void setReadyMembers(Collection<Member> members) {
-        this.readyMembers.addAll(members);
+    protected synchronized long getReadyMembersVersion() {
+        return this.readyMembersVersion;
+    }
+    
+    /**
+     * Replace the ready members, members not in the collection are removed.  Nothing is 
+     * replaced if a member was added or removed since version was read, that change is 
+     * newer than the members given.
+     * 
+     * @return false if the ready members changed since version
+     */
+    protected synchronized boolean setReadyMembers(Collection<Member> members, long version) {
+        if(version != this.readyMembersVersion)
+            return false;
+        this.readyMembers = new CopyOnWriteArrayListSet<Member>(members);
+        return true;
+    }
+    
+    protected synchronized void addReadyMember(Member member) {
+        this.readyMembersVersion++;
+        if(this.readyMembers.contains(member))
+            return;
+        CopyOnWriteArrayListSet<Member> members = new CopyOnWriteArrayListSet<Member>(this.readyMembers);
+        members.add(member);
+        this.readyMembers = members;
+    }
+    
+    protected synchronized void removeReadyMember(String memberUuid) {
+        this.readyMembersVersion++;
+        CopyOnWriteArrayListSet<Member> members = new CopyOnWriteArrayListSet<Member>(this.readyMembers);
+        for(Member member : this.readyMembers) {
+            if(member.getUuid().equals(memberUuid))
+                members.remove(member);
+        }
+        if(members.size() != this.readyMembers.size())
+            this.readyMembers = members;
     }
     
     public String getName() {
@@ -11,8 +11,10 @@ import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 
 import com.codahale.metrics.Timer;
+import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.IMap;
 import com.hazelcast.core.Member;
 import com.hazeltask.clusterop.IsMemberReadyOp;
 import com.hazeltask.clusterop.NoOp;
@@ -27,6 +29,8 @@ public class HazeltaskTopologyService<GROUP extends Serializable> implements ITo
 private String topologyName;
     
     private final IExecutorService communicationExecutorService;
+    //member uuid of every member ready for tasks
+    private final IMap<String, Boolean> readyMembers;
     private final HazelcastInstance hazelcast;
     private final Timer getReadyMembersTimer;
     
@@ -34,6 +38,7 @@ private String topologyName;
         topologyName = hazeltaskConfig.getTopologyName();
         hazelcast = hazeltaskConfig.getHazelcast();
         communicationExecutorService = hazelcast.getExecutorService(name("com"));
+        readyMembers = hazelcast.getMap(name("ready-members"));
         this.getReadyMembersTimer = getReadyMembersTimer;
     }
     
@@ -52,16 +57,33 @@ private String topologyName;
         }
     }
 
+    /**
+     * The members in the cluster that published they are ready.  Entries left behind by 
+     * members that are gone are ignored.  Members that haven't published are asked, older 
+     * versions never write to the map.
+     */
     public Set<Member> getReadyMembers() {
         Timer.Context ctx = getReadyMembersTimer.time();
         try {
-            Collection<MemberResponse<Boolean>> responses = MemberTasks.executeOptimistic(
-                    communicationExecutorService, hazelcast.getCluster().getMembers(),
-                    new IsMemberReadyOp<GROUP>(topologyName));
-            Set<Member> result = new HashSet<Member>(responses.size());
-            for(MemberResponse<Boolean> response : responses) {
-                if(response.getValue())
-                    result.add(response.getMember());
+            Set<String> ready = readyMembers.keySet();
+            Member localMember = hazelcast.getCluster().getLocalMember();
+            Set<Member> result = new HashSet<Member>(ready.size());
+            Set<Member> unpublished = new HashSet<Member>();
+            for(Member member : hazelcast.getCluster().getMembers()) {
+                if(ready.contains(member.getUuid()))
+                    result.add(member);
+                else if(!member.equals(localMember))
+                    unpublished.add(member);
+            }
+            
+            if(!unpublished.isEmpty()) {
+                Collection<MemberResponse<Boolean>> responses = MemberTasks.executeOptimistic(
+                        communicationExecutorService, unpublished,
+                        new IsMemberReadyOp<GROUP>(topologyName));
+                for(MemberResponse<Boolean> response : responses) {
+                    if(response.getValue())
+                        result.add(response.getMember());
+                }
             }
             return result;
         } finally {
@@ -69,6 +91,22 @@ private String topologyName;
         }
     }
     
+    public void setReady(boolean ready) {
+        String uuid = hazelcast.getCluster().getLocalMember().getUuid();
+        if(ready)
+            readyMembers.put(uuid, Boolean.TRUE);
+        else
+            readyMembers.remove(uuid);
+    }
+    
+    public void removeReadyMember(Member member) {
+        readyMembers.remove(member.getUuid());
+    }
+    
+    public void addReadyMemberListener(EntryListener<String, Boolean> listener) {
+        readyMembers.addEntryListener(listener, false);
+    }
+    
     public void shutdown() {
         log.debug("Sending shutdown signal to members");
         MemberTasks.executeOptimistic(communicationExecutorService, 
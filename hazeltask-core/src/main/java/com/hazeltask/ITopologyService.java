@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Set;
 
+import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.Member;
 import com.hazeltask.executor.task.HazeltaskTask;
 
@@ -19,6 +20,29 @@ import com.hazeltask.executor.task.HazeltaskTask;
  */
 public interface ITopologyService<GROUP extends Serializable> {
     public Set<Member> getReadyMembers();
+    
+    /**
+     * Publish whether this member is ready for tasks.  Every member's ready member 
+     * listener sees the change right away.
+     * 
+     * @param ready
+     */
+    public void setReady(boolean ready);
+    
+    /**
+     * A member that left the cluster without saying it wasn't ready anymore
+     * 
+     * @param member
+     */
+    public void removeReadyMember(Member member);
+    
+    /**
+     * Be told when a member becomes ready or stops being ready.  Keys are member uuids.
+     * 
+     * @param listener
+     */
+    public void addReadyMemberListener(EntryListener<String, Boolean> listener);
+    
     public long pingMember(Member member);
     public void shutdown();
     public List<HazeltaskTask<GROUP>> shutdownNow();
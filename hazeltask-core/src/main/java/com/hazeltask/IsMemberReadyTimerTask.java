@@ -3,10 +3,12 @@ package com.hazeltask;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Set;
 
 import lombok.extern.slf4j.Slf4j;
 
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MembershipEvent;
 import com.hazelcast.core.MembershipListener;
@@ -15,23 +17,31 @@ import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
 /**
  * TODO: we can turn this into a heart beat task that monitors the state of the members
  *       perhaps take into account more things than just ready or not
+ * <p>
+ * Members publish their readiness in a map and we apply each change as the entry listener
+ * hears it.  The timer reconciles with the map in case we missed an event, and picks up
+ * members too old to publish.
  * 
  * @author Jason Clawson
  *
  */
 @Slf4j
-public class IsMemberReadyTimerTask<GROUP extends Serializable> extends BackoffTask implements MembershipListener {
+public class IsMemberReadyTimerTask<GROUP extends Serializable> extends BackoffTask implements MembershipListener, EntryListener<String, Boolean> {
     private final ITopologyService<GROUP> topologyService;
 	private final HazeltaskTopology<GROUP> topology;
+	private final Cluster cluster;
 	
-	public IsMemberReadyTimerTask(ITopologyService<GROUP> topologyService, HazeltaskTopology<GROUP> topology) {
+	public IsMemberReadyTimerTask(ITopologyService<GROUP> topologyService, HazeltaskTopology<GROUP> topology, Cluster cluster) {
 		this.topologyService = topologyService;
 		this.topology = topology;
+		this.cluster = cluster;
 	}
 	
 	@Override
 	public boolean execute() {
 	    try {
+	        //an event applied while we read is newer than what we read
+	        long version = topology.getReadyMembersVersion();
     	    Collection<Member> readyMembers = topologyService.getReadyMembers();
     	    Member me = topology.getLocalMember();
     
@@ -45,7 +55,8 @@ public class IsMemberReadyTimerTask<GROUP extends Serializable> extends BackoffT
             }
             
             //set the ready members on the topology instance
-            topology.setReadyMembers(members);
+            if(!topology.setReadyMembers(members, version))
+                log.debug("Ready members changed while reconciling, trying again next time");
             
             return true;
 	    } catch(Throwable t) {
@@ -56,14 +67,47 @@ public class IsMemberReadyTimerTask<GROUP extends Serializable> extends BackoffT
 	}
 
     public void memberAdded(MembershipEvent membershipEvent) {
+        //members too old to publish their readiness are only found by asking
         this.execute();
     }
 
     public void memberRemoved(MembershipEvent membershipEvent) {
         Member m = membershipEvent.getMember();
-        Set<Member> members = topology.getReadyMembers();
-        members.remove(m);
-        topology.setReadyMembers(members);
+        topology.removeReadyMember(m.getUuid());
+        try {
+            //it may have died without saying it wasn't ready
+            topologyService.removeReadyMember(m);
+        } catch(Throwable t) {
+            log.warn("Unable to unpublish "+m+" as ready", t);
+        }
+    }
+
+    public void entryAdded(EntryEvent<String, Boolean> event) {
+        memberReady(event.getKey());
+    }
+
+    public void entryUpdated(EntryEvent<String, Boolean> event) {
+        memberReady(event.getKey());
+    }
+
+    public void entryRemoved(EntryEvent<String, Boolean> event) {
+        topology.removeReadyMember(event.getKey());
+    }
+
+    public void entryEvicted(EntryEvent<String, Boolean> event) {
+        topology.removeReadyMember(event.getKey());
+    }
+    
+    private void memberReady(String uuid) {
+        Member me = topology.getLocalMember();
+        for(Member m : cluster.getMembers()) {
+            if(m.getUuid().equals(uuid)) {
+                topology.addReadyMember(m.equals(me) ? me : m);
+                return;
+            }
+        }
+        //the timer will pick it up once we see it join
+        log.debug("Member "+uuid+" is ready but isn't in the cluster yet");
     }
 	
 	
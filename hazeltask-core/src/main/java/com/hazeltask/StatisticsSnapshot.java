@@ -0,0 +1,115 @@
+package com.hazeltask;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The last result of a cluster statistic fan-out.  Callers say how stale a result they 
+ * accept.  If the snapshot is older, one caller fetches a new one and everyone else asking
+ * at the same time waits for that fetch instead of starting their own.
+ * 
+ * @author jclawson
+ *
+ * @param <T>
+ */
+class StatisticsSnapshot<T> {
+    private final Callable<T> fetch;
+    private volatile Snapshot<T> snapshot;
+    //guarded by this
+    private FutureTask<T> inFlight;
+    
+    StatisticsSnapshot(Callable<T> fetch) {
+        this.fetch = fetch;
+    }
+    
+    /**
+     * Callers share the value, so it should not be modifiable
+     * 
+     * @param maxAge - millis, 0 always fetches
+     */
+    T get(long maxAge) {
+        Snapshot<T> s = snapshot;
+        if(s != null && maxAge > 0 && System.currentTimeMillis() - s.time <= maxAge)
+            return s.value;
+        return refresh();
+    }
+    
+    /**
+     * Fetch a new snapshot, or wait for the fetch already in flight
+     */
+    T refresh() {
+        FutureTask<T> task;
+        boolean mine = false;
+        synchronized (this) {
+            if(inFlight == null) {
+                inFlight = new FutureTask<T>(new Callable<T>() {
+                    public T call() throws Exception {
+                        long time = System.currentTimeMillis();
+                        T value = fetch.call();
+                        snapshot = new Snapshot<T>(value, time);
+                        return value;
+                    }
+                });
+                mine = true;
+            }
+            task = inFlight;
+        }
+        
+        if(mine) {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    inFlight = null;
+                }
+            }
+        } else {
+            joinedFetch();
+        }
+        
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Snapshot<T> s = snapshot;
+            if(s == null)
+                throw new RuntimeException("Interrupted while waiting for the first snapshot", e);
+            return s.value;
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+    
+    /**
+     * Called when a caller is about to wait for a fetch another caller started
+     */
+    void joinedFetch() {}
+    
+    /**
+     * @return true if anyone has asked for this statistic yet
+     */
+    boolean isUsed() {
+        return snapshot != null;
+    }
+    
+    /**
+     * @return millis since the snapshot was fetched, -1 if it never was
+     */
+    long getAge() {
+        Snapshot<T> s = snapshot;
+        return s == null ? -1 : System.currentTimeMillis() - s.time;
+    }
+    
+    private static class Snapshot<T> {
+        private final T value;
+        private final long time;
+        
+        Snapshot(T value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+}
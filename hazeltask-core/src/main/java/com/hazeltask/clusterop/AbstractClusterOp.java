@@ -11,6 +11,7 @@ import com.hazeltask.Hazeltask;
 import com.hazeltask.HazeltaskInstance;
 import com.hazeltask.HazeltaskTopology;
 import com.hazeltask.executor.DistributedExecutorServiceImpl;
+import com.hazeltask.executor.IExecutorTopologyService;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 
 /**
@@ -53,6 +54,14 @@ public abstract class AbstractClusterOp<T, GROUP extends Serializable> implement
         throw new IllegalStateException("Hazeltask was null for topology: "+topologyName);
     }
     
+    protected IExecutorTopologyService<GROUP> getExecutorTopologyService() {
+        HazeltaskInstance<GROUP> ht = Hazeltask.getInstanceByName(topologyName);
+        if(ht != null) {
+            return ht.getExecutorTopologyService();
+        }
+        throw new IllegalStateException("Hazeltask was null for topology: "+topologyName);
+    }
+    
     protected HazeltaskTopology<GROUP> getHazeltaskTopology() {
         HazeltaskInstance<GROUP> ht = Hazeltask.getInstanceByName(topologyName);
         if(ht != null) {
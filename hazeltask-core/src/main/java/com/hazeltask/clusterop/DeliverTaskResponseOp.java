@@ -0,0 +1,42 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazeltask.executor.task.TaskResponse;
+
+/**
+ * Delivers a task response to the member that submitted the task
+ * @author jclawson
+ *
+ */
+public class DeliverTaskResponseOp<GROUP extends Serializable> extends AbstractClusterOp<Boolean, GROUP> {
+    private static final long serialVersionUID = 1L;
+    private TaskResponse<Serializable> response;
+    
+    //hazelcast dataserializable requires a default constructor
+    private DeliverTaskResponseOp(){super(null);}
+    
+    public DeliverTaskResponseOp(TaskResponse<Serializable> response, String topology) {
+        super(topology);
+        this.response = response;
+    }
+
+    public Boolean call() throws Exception {
+        getExecutorTopologyService().dispatchTaskResponse(response);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {
+        response = (TaskResponse<Serializable>) in.readObject();
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {
+        out.writeObject(response);
+    }
+}
@@ -0,0 +1,39 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+
+/**
+ * Get the capacity weight of a member for capacity weighted routing
+ * @author jclawson
+ *
+ */
+public class GetCapacityWeightOp<GROUP extends Serializable> extends AbstractClusterOp<Double, GROUP> {
+    private static final long serialVersionUID = 1L;
+
+    //hazelcast dataserializable requires a default constructor
+    private GetCapacityWeightOp(){super(null);}
+    
+    public GetCapacityWeightOp(String topology) {
+        super(topology);
+    }
+
+    public Double call() throws Exception {
+        LocalTaskExecutorService<GROUP> localSvc = getDistributedExecutorService().getLocalTaskExecutorService();
+        if(localSvc != null)
+            return localSvc.getCapacityWeight();
+        return 0d;
+    }
+
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {   
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {    
+    }       
+}
@@ -2,23 +2,28 @@ package com.hazeltask.clusterop;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import com.google.common.base.Predicate;
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
+import com.hazeltask.executor.GroupSizes;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 
 /**
- * Get the size of a partitioned queue
+ * Get the size of a partitioned queue.  Either every group matching the predicate, only the 
+ * limit largest of those, or only the groups asked for.
  * @author jclawson
  *
  */
-public class GetLocalGroupQueueSizesOp<GROUP extends Serializable> extends AbstractClusterOp<Map<GROUP, Integer>, GROUP> {
+public class GetLocalGroupQueueSizesOp<GROUP extends Serializable> extends AbstractClusterOp<GroupSizes<GROUP>, GROUP> {
     private static final long serialVersionUID = 1L;
 
     private Predicate<GROUP> predicate;
+    private int limit;
+    private Collection<GROUP> groups;
     
     //hazelcast dataserializable requires a default constructor
     private GetLocalGroupQueueSizesOp(){super(null);}
@@ -31,22 +36,57 @@ public class GetLocalGroupQueueSizesOp<GROUP extends Serializable> extends Abstr
         this(topology);
         this.predicate = predicate;
     }
+    
+    /**
+     * @param limit - only return this many of the largest groups
+     */
+    public GetLocalGroupQueueSizesOp(String topology, Predicate<GROUP> predicate, int limit) {
+        this(topology, predicate);
+        this.limit = limit;
+    }
+    
+    public GetLocalGroupQueueSizesOp(String topology, Collection<GROUP> groups) {
+        this(topology);
+        this.groups = groups;
+    }
 
-    public Map<GROUP, Integer> call() throws Exception {
+    public GroupSizes<GROUP> call() throws Exception {
         LocalTaskExecutorService<GROUP> localSvc = getDistributedExecutorService().getLocalTaskExecutorService();
-        if(localSvc != null)
-            return localSvc.getGroupSizes(predicate);
-        return Collections.emptyMap();
+        if(localSvc == null)
+            return new GroupSizes<GROUP>();
+        if(groups != null)
+            return new GroupSizes<GROUP>(localSvc.getGroupSizes(groups), false);
+        if(limit > 0)
+            return localSvc.getLargestGroups(limit, predicate);
+        return new GroupSizes<GROUP>(localSvc.getGroupSizes(predicate), false);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     protected void readChildData(ObjectDataInput in) throws IOException {
         predicate = (Predicate<GROUP>) in.readObject();
+        limit = in.readInt();
+        int size = in.readInt();
+        if(size >= 0) {
+            List<GROUP> groups = new ArrayList<GROUP>(size);
+            for(int i=0; i<size; i++) {
+                groups.add((GROUP) in.readObject());
+            }
+            this.groups = groups;
+        }
     }
 
     @Override
     protected void writeChildData(ObjectDataOutput out) throws IOException {  
         out.writeObject(predicate);
+        out.writeInt(limit);
+        if(groups == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(groups.size());
+            for(GROUP group : groups) {
+                out.writeObject(group);
+            }
+        }
     }       
 }
@@ -0,0 +1,40 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.steal.MemberLoad;
+
+/**
+ * Get the load of a member for the TaskStealPolicy
+ * @author jclawson
+ *
+ */
+public class GetMemberLoadOp<GROUP extends Serializable> extends AbstractClusterOp<MemberLoad, GROUP> {
+    private static final long serialVersionUID = 1L;
+
+    //hazelcast dataserializable requires a default constructor
+    private GetMemberLoadOp(){super(null);}
+    
+    public GetMemberLoadOp(String topology) {
+        super(topology);
+    }
+
+    public MemberLoad call() throws Exception {
+        LocalTaskExecutorService<GROUP> localSvc = getDistributedExecutorService().getLocalTaskExecutorService();
+        if(localSvc != null)
+            return localSvc.getMemberLoad();
+        return new MemberLoad(0, 0, 0);
+    }
+
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {   
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {    
+    }       
+}
@@ -0,0 +1,60 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+/**
+ * Takes tasks back for a restarted member on the member that owns their partitions, so 
+ * each fenced reclaim is local instead of a round trip of its own.
+ * @author jclawson
+ *
+ */
+public class ReclaimPendingTasksOp<GROUP extends Serializable> extends AbstractClusterOp<Map<UUID, Integer>, GROUP> {
+    private static final long serialVersionUID = 1L;
+    private Map<UUID, Integer> tasks;
+    private String newOwner;
+
+    //hazelcast dataserializable requires a default constructor
+    private ReclaimPendingTasksOp(){super(null);}
+
+    /**
+     * @param tasks - task id to the epoch the restarted member held it under
+     * @param newOwner - the uuid of the restarted member
+     */
+    public ReclaimPendingTasksOp(Map<UUID, Integer> tasks, String newOwner, String topology) {
+        super(topology);
+        this.tasks = tasks;
+        this.newOwner = newOwner;
+    }
+
+    public Map<UUID, Integer> call() throws Exception {
+        return getExecutorTopologyService().reclaimPendingTasks(tasks, newOwner);
+    }
+
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {
+        newOwner = in.readUTF();
+        int size = in.readInt();
+        tasks = new HashMap<UUID, Integer>(size * 4 / 3 + 1);
+        for(int i=0; i<size; i++) {
+            tasks.put(new UUID(in.readLong(), in.readLong()), in.readInt());
+        }
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(newOwner);
+        out.writeInt(tasks.size());
+        for(Map.Entry<UUID, Integer> task : tasks.entrySet()) {
+            out.writeLong(task.getKey().getMostSignificantBits());
+            out.writeLong(task.getKey().getLeastSignificantBits());
+            out.writeInt(task.getValue());
+        }
+    }
+}
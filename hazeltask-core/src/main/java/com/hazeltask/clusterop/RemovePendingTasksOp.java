@@ -0,0 +1,56 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+/**
+ * Removes completed tasks from the write ahead log on the member that owns their
+ * partitions, so each fenced removal is local instead of a round trip of its own.
+ * @author jclawson
+ *
+ */
+public class RemovePendingTasksOp<GROUP extends Serializable> extends AbstractClusterOp<Boolean, GROUP> {
+    private static final long serialVersionUID = 1L;
+    private Map<UUID, Integer> completedTasks;
+
+    //hazelcast dataserializable requires a default constructor
+    private RemovePendingTasksOp(){super(null);}
+
+    /**
+     * @param completedTasks - task id to the epoch it ran under
+     */
+    public RemovePendingTasksOp(Map<UUID, Integer> completedTasks, String topology) {
+        super(topology);
+        this.completedTasks = completedTasks;
+    }
+
+    public Boolean call() throws Exception {
+        getExecutorTopologyService().removePendingTasks(completedTasks);
+        return true;
+    }
+
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        completedTasks = new HashMap<UUID, Integer>(size * 4 / 3 + 1);
+        for(int i=0; i<size; i++) {
+            completedTasks.put(new UUID(in.readLong(), in.readLong()), in.readInt());
+        }
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {
+        out.writeInt(completedTasks.size());
+        for(Map.Entry<UUID, Integer> completed : completedTasks.entrySet()) {
+            out.writeLong(completed.getKey().getMostSignificantBits());
+            out.writeLong(completed.getKey().getLeastSignificantBits());
+            out.writeInt(completed.getValue());
+        }
+    }
+}
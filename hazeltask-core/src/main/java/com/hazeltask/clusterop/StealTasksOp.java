@@ -2,44 +2,66 @@ package com.hazeltask.clusterop;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collection;
+import java.util.UUID;
 
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
-import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.steal.StolenTaskChunk;
 
 /**
- * This cluster operation allows a member to take tasks from another member
+ * This cluster operation allows a member to take tasks from another member.  Tasks
+ * are handed over one chunk at a time.  Each request acknowledges the chunk before it
+ * so the victim can let go of those tasks.
  * @author jclawson
  *
  */
-public class StealTasksOp<GROUP extends Serializable> extends AbstractClusterOp<Collection<HazeltaskTask<GROUP>>, GROUP> {
+public class StealTasksOp<GROUP extends Serializable> extends AbstractClusterOp<StolenTaskChunk<GROUP>, GROUP> {
     private static final long serialVersionUID = 1L;
-    
+
+    private UUID stealId;
     private long numberOfTasks;
-    
+    private int chunkSize;
+    private int ack;
+
     //hazelcast dataserializable requires a default constructor
     private StealTasksOp(){super(null);}
-    
-    public StealTasksOp(String topology, long numberOfTasks) {
+
+    /**
+     * @param topology
+     * @param stealId - the same for every chunk of one steal
+     * @param numberOfTasks - the total number of tasks to steal
+     * @param chunkSize
+     * @param ack - the sequence of the last chunk received, 0 for the first request
+     */
+    public StealTasksOp(String topology, UUID stealId, long numberOfTasks, int chunkSize, int ack) {
         super(topology);
+        this.stealId = stealId;
         this.numberOfTasks = numberOfTasks;
+        this.chunkSize = chunkSize;
+        this.ack = ack;
     }
 
     @Override
-    public Collection<HazeltaskTask<GROUP>> call() throws Exception {
+    public StolenTaskChunk<GROUP> call() throws Exception {
         LocalTaskExecutorService<GROUP> localSvc = getLocalTaskExecutorService();
-        return localSvc.stealTasks(numberOfTasks);
+        return localSvc.stealChunk(stealId, numberOfTasks, chunkSize, ack);
     }
 
     @Override
     protected void readChildData(ObjectDataInput in) throws IOException {
+        this.stealId = new UUID(in.readLong(), in.readLong());
         this.numberOfTasks = in.readLong();
+        this.chunkSize = in.readInt();
+        this.ack = in.readInt();
     }
 
     @Override
     protected void writeChildData(ObjectDataOutput out) throws IOException {
+        out.writeLong(stealId.getMostSignificantBits());
+        out.writeLong(stealId.getLeastSignificantBits());
         out.writeLong(numberOfTasks);
-    }    
+        out.writeInt(chunkSize);
+        out.writeInt(ack);
+    }
 }
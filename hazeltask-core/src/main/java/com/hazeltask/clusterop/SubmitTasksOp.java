@@ -0,0 +1,58 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.task.HazeltaskTask;
+/**
+ * Used for sending a batch of HazeltaskTasks to a member
+ * @author jclawson
+ *
+ */
+public class SubmitTasksOp<GROUP extends Serializable> extends AbstractClusterOp<Integer, GROUP> {
+    private static final long serialVersionUID = 1L;
+    private Collection<HazeltaskTask<GROUP>> tasks;
+    
+    //hazelcast dataserializable requires a default constructor
+    private SubmitTasksOp(){super(null);}
+    
+    public SubmitTasksOp(Collection<HazeltaskTask<GROUP>> tasks, String topology) {
+        super(topology);
+        this.tasks = tasks;
+    }
+    
+    /**
+     * @return the number of tasks submitted
+     */
+    public Integer call() throws Exception {
+        LocalTaskExecutorService<GROUP> localSvc = getLocalTaskExecutorService();
+        
+        for(HazeltaskTask<GROUP> task : tasks) {
+            localSvc.execute(task);
+        }
+        return tasks.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        tasks = new ArrayList<HazeltaskTask<GROUP>>(size);
+        for(int i=0; i<size; i++) {
+            tasks.add((HazeltaskTask<GROUP>) in.readObject());
+        }
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {
+        out.writeInt(tasks.size());
+        for(HazeltaskTask<GROUP> task : tasks) {
+            out.writeObject(task);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.hazeltask.clusterop;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazeltask.executor.task.TaskResponse;
+
+/**
+ * Delivers a batch of completed tasks to the member that submitted them.  The member 
+ * removes the tasks from the write ahead log and hands the responses to its futures.
+ * @author jclawson
+ *
+ */
+public class TaskCompletionBatchOp<GROUP extends Serializable> extends AbstractClusterOp<Boolean, GROUP> {
+    private static final long serialVersionUID = 1L;
+    private Map<UUID, Integer> completedTasks;
+    private List<TaskResponse<Serializable>> responses;
+    
+    //hazelcast dataserializable requires a default constructor
+    private TaskCompletionBatchOp(){super(null);}
+    
+    /**
+     * @param completedTasks - task id to the epoch it ran under
+     */
+    public TaskCompletionBatchOp(Map<UUID, Integer> completedTasks, List<TaskResponse<Serializable>> responses, String topology) {
+        super(topology);
+        this.completedTasks = completedTasks;
+        this.responses = responses;
+    }
+
+    public Boolean call() throws Exception {
+        getExecutorTopologyService().handleTaskCompletions(completedTasks, responses);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void readChildData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        completedTasks = new HashMap<UUID, Integer>(size * 4 / 3 + 1);
+        for(int i=0; i<size; i++) {
+            completedTasks.put(new UUID(in.readLong(), in.readLong()), in.readInt());
+        }
+        size = in.readInt();
+        responses = new ArrayList<TaskResponse<Serializable>>(size);
+        for(int i=0; i<size; i++) {
+            responses.add((TaskResponse<Serializable>) in.readObject());
+        }
+    }
+
+    @Override
+    protected void writeChildData(ObjectDataOutput out) throws IOException {
+        out.writeInt(completedTasks.size());
+        for(Map.Entry<UUID, Integer> completed : completedTasks.entrySet()) {
+            out.writeLong(completed.getKey().getMostSignificantBits());
+            out.writeLong(completed.getKey().getLeastSignificantBits());
+            out.writeInt(completed.getValue());
+        }
+        out.writeInt(responses.size());
+        for(TaskResponse<Serializable> response : responses) {
+            out.writeObject(response);
+        }
+    }
+}
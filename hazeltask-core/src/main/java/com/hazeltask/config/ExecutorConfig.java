@@ -1,5 +1,6 @@
 package com.hazeltask.config;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -14,6 +15,9 @@ public class ExecutorConfig<GROUP extends Serializable> {
     protected int              corePoolSize                = 4;
     protected int              maxPoolSize                 = 4;
     protected long             maxThreadKeepAlive          = 60000;
+    private boolean            adaptiveThreadCount         = false;
+    private long               adaptiveThreadTargetWait    = 500;
+    private long               adaptiveThreadInterval      = 1000;
 
     @SuppressWarnings("unchecked")
     protected TaskIdAdapter<?, GROUP, ?>    taskIdAdapter     = (TaskIdAdapter<?, GROUP, ?>) new DefaultTaskIdAdapter();
@@ -24,6 +28,29 @@ public class ExecutorConfig<GROUP extends Serializable> {
     private boolean            asyncronousTaskDistribution = false;
     private int                asyncronousTaskDistributionQueueSize = 500;
     private long               recoveryProcessPollInterval = 30000;
+    private double             recoveryRate                = 10000;
+    private int                recoveryBatchSize           = 500;
+    
+    private long               offHeapQueueCapacity        = 0;
+    private int                offHeapQueueSlabSize        = 4 * 1024 * 1024;
+    
+    private File               spillDirectory              = null;
+    private long               spillThreshold              = 256 * 1024 * 1024;
+    private double             spillHeapUsage              = 0;
+    private int                spillSegmentSize            = 64 * 1024 * 1024;
+    private int                spillMinGroupSize           = 1000;
+    
+    private File               queueSnapshotFile           = null;
+    private long               queueSnapshotGracePeriod    = 120000;
+    
+    private boolean            shutdownDrain               = false;
+    private int                shutdownDrainBatchSize      = 100;
+    
+    private long               completionBatchInterval     = 0;
+    private int                completionBatchSize         = 100;
+    
+    private long               walGroupCommitInterval      = 0;
+    private int                walGroupCommitSize          = 500;
     
     private ExecutorLoadBalancingConfig<GROUP> executorLoadBalancingConfig = new ExecutorLoadBalancingConfig<GROUP>();
     private List<TaskResponseListener> taskResponseListeners = Lists.newArrayList();
@@ -131,8 +158,69 @@ public class ExecutorConfig<GROUP extends Serializable> {
         
         //for now we will have a fixed thread pool size
         this.maxPoolSize = threadCount;
+        this.adaptiveThreadCount = false;
+        return this;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * Resize the worker pool between minThreads and maxThreads based on how long tasks wait 
+     * in the local queue.  While tasks wait longer than the target wait, threads are added 
+     * one at a time as long as each one raises throughput and the CPU isn't saturated.  When 
+     * the queue is empty the pool shrinks by a quarter at a time.  This helps tasks that 
+     * spend most of their time waiting on I/O.
+     * 
+     * @see withAdaptiveThreadTargetWait
+     * @param minThreads
+     * @param maxThreads
+     * @return
+     */
+    public ExecutorConfig<GROUP> withAdaptiveThreadCount(int minThreads, int maxThreads) {
+        if(minThreads < 1 || maxThreads < minThreads)
+            throw new IllegalArgumentException("minThreads must be at least 1 and no more than maxThreads");
+        this.corePoolSize = minThreads;
+        this.maxPoolSize = maxThreads;
+        this.adaptiveThreadCount = true;
+        return this;
+    }
+    
+    /**
+     * How long a task may wait in the local queue before the adaptive worker pool adds 
+     * threads.  The default is 500 milliseconds.
+     * 
+     * @see withAdaptiveThreadCount
+     * @param targetWait
+     * @return
+     */
+    public ExecutorConfig<GROUP> withAdaptiveThreadTargetWait(long targetWait) {
+        this.adaptiveThreadTargetWait = targetWait;
         return this;
     }
+    
+    /**
+     * How often the adaptive worker pool is resized.  The default is 1 second.
+     * 
+     * @see withAdaptiveThreadCount
+     * @param interval
+     * @return
+     */
+    public ExecutorConfig<GROUP> withAdaptiveThreadInterval(long interval) {
+        this.adaptiveThreadInterval = interval;
+        return this;
+    }
+    
+    public boolean isAdaptiveThreadCountEnabled() {
+        return this.adaptiveThreadCount;
+    }
+    
+    public long getAdaptiveThreadTargetWait() {
+        return this.adaptiveThreadTargetWait;
+    }
+    
+    public long getAdaptiveThreadInterval() {
+        return this.adaptiveThreadInterval;
+    }
 
     /**
      * This adapter is used to take a Task and identify the GROUP it belongs to
@@ -172,6 +260,301 @@ public class ExecutorConfig<GROUP extends Serializable> {
         return this;
     }
     
+    /**
+     * Lost tasks are resubmitted in batches of batchSize at no more than tasksPerSecond so
+     * a member leaving with a large backlog doesn't flood the others.  Recovery runs on its 
+     * own thread and recovered batches are sent through their own executor, so a long pass 
+     * doesn't hold up the other timer tasks or the sending of new submissions.  Once they 
+     * arrive, recovered tasks keep their original created time and are queued ahead of 
+     * newer tasks in their group.  
+     * <p>
+     * The default is batches of 500 at 10000 tasks per second.  A rate of 0 is unlimited.
+     * 
+     * @param tasksPerSecond
+     * @param batchSize
+     * @return
+     */
+    public ExecutorConfig<GROUP> withRecoveryRateLimit(double tasksPerSecond, int batchSize) {
+        this.recoveryRate = tasksPerSecond;
+        this.recoveryBatchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * Store this member's queued tasks serialized in direct memory instead of on the heap.  
+     * Only a small index record per task is kept on the heap and a task is deserialized 
+     * when it is taken from the queue.  This is useful for members that build up very 
+     * large backlogs.
+     * <p>
+     * Once the capacity is used up a task sent to this member runs on a new worker thread 
+     * if the pool is below its maximum size.  Otherwise it isn't queued here.  It stays 
+     * in the write ahead log with no owner and task recovery hands it out again once it is 
+     * older than the recovery cutoff.
+     * 
+     * @param capacityBytes - the maximum number of bytes of direct memory to use
+     * @return
+     */
+    public ExecutorConfig<GROUP> withOffHeapTaskQueue(long capacityBytes) {
+        this.offHeapQueueCapacity = capacityBytes;
+        return this;
+    }
+    
+    /**
+     * Off heap memory is allocated in slabs of this size.  The default is 4MB.
+     * 
+     * @see withOffHeapTaskQueue
+     * @param slabSizeBytes
+     * @return
+     */
+    public ExecutorConfig<GROUP> withOffHeapTaskQueueSlabSize(int slabSizeBytes) {
+        this.offHeapQueueSlabSize = slabSizeBytes;
+        return this;
+    }
+    
+    public boolean isOffHeapTaskQueueEnabled() {
+        return this.offHeapQueueCapacity > 0;
+    }
+    
+    public long getOffHeapTaskQueueCapacity() {
+        return this.offHeapQueueCapacity;
+    }
+    
+    public int getOffHeapTaskQueueSlabSize() {
+        return this.offHeapQueueSlabSize;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * When the tasks queued on this member take more than maxInMemoryBytes serialized, the 
+     * tail of large groups is written to memory mapped segment files in the directory 
+     * instead of being kept in memory.  The size of the queued tasks is estimated from a 
+     * sample of them.  Spilled tasks are read back in order as the group's in memory tasks 
+     * are executed.  All groups share the same segment files.
+     * <p>
+     * Spilled tasks are not kept across restarts.  Any segment files in the directory are 
+     * deleted on startup.  The tasks are still in the write ahead log so task recovery
+     * sends them to another member when this one leaves the cluster.
+     * 
+     * @param directory - a directory only used by this executor
+     * @param maxInMemoryBytes - the default is 256MB
+     * @return
+     */
+    public ExecutorConfig<GROUP> withLocalQueueSpill(File directory, long maxInMemoryBytes) {
+        this.spillDirectory = directory;
+        this.spillThreshold = maxInMemoryBytes;
+        return this;
+    }
+    
+    /**
+     * Also spill to disk when more than this fraction of the max heap is used.  This is
+     * disabled (0) by default.
+     * 
+     * @see withLocalQueueSpill
+     * @param fractionOfMaxHeap - between 0 and 1
+     * @return
+     */
+    public ExecutorConfig<GROUP> withLocalQueueSpillHeapUsage(double fractionOfMaxHeap) {
+        this.spillHeapUsage = fractionOfMaxHeap;
+        return this;
+    }
+    
+    /**
+     * Spill segment files are created and memory mapped at this size.  The default is 64MB.
+     * 
+     * @see withLocalQueueSpill
+     * @param segmentSizeBytes
+     * @return
+     */
+    public ExecutorConfig<GROUP> withLocalQueueSpillSegmentSize(int segmentSizeBytes) {
+        this.spillSegmentSize = segmentSizeBytes;
+        return this;
+    }
+    
+    /**
+     * A group keeps at least this many tasks in memory before it spills.  Groups smaller 
+     * than this are never spilled.  The default is 1000.
+     * 
+     * @see withLocalQueueSpill
+     * @param minGroupSize
+     * @return
+     */
+    public ExecutorConfig<GROUP> withLocalQueueSpillMinGroupSize(int minGroupSize) {
+        this.spillMinGroupSize = minGroupSize;
+        return this;
+    }
+    
+    public boolean isLocalQueueSpillEnabled() {
+        return this.spillDirectory != null;
+    }
+    
+    public File getLocalQueueSpillDirectory() {
+        return this.spillDirectory;
+    }
+    
+    public long getLocalQueueSpillThreshold() {
+        return this.spillThreshold;
+    }
+    
+    public double getLocalQueueSpillHeapUsage() {
+        return this.spillHeapUsage;
+    }
+    
+    public int getLocalQueueSpillSegmentSize() {
+        return this.spillSegmentSize;
+    }
+    
+    public int getLocalQueueSpillMinGroupSize() {
+        return this.spillMinGroupSize;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * On graceful shutdown, write the tasks still queued on this member to a snapshot file 
+     * instead of leaving them for task recovery.  On the next startup the snapshot is 
+     * reloaded before this member is marked ready, so its tasks are picked up right away 
+     * without a wave of recovery resubmissions.
+     * <p>
+     * Tasks that completed or were recovered by another member while this member was down 
+     * are skipped.  Other members wait for the snapshot grace period before they recover 
+     * the tasks of a member that wrote a snapshot.
+     * 
+     * @param file - a file only used by this member
+     * @return
+     */
+    public ExecutorConfig<GROUP> withLocalQueueSnapshotFile(File file) {
+        this.queueSnapshotFile = file;
+        return this;
+    }
+    
+    /**
+     * How long other members leave the tasks of a member that shut down with a queue 
+     * snapshot alone, waiting for it to restart and restore them.  After this they are 
+     * recovered like the tasks of a member that crashed.  The default is 2 minutes.
+     * 
+     * @see withLocalQueueSnapshotFile
+     * @param gracePeriod - millis
+     * @return
+     */
+    public ExecutorConfig<GROUP> withLocalQueueSnapshotGracePeriod(long gracePeriod) {
+        this.queueSnapshotGracePeriod = gracePeriod;
+        return this;
+    }
+    
+    public boolean isLocalQueueSnapshotEnabled() {
+        return this.queueSnapshotFile != null;
+    }
+    
+    public File getLocalQueueSnapshotFile() {
+        return this.queueSnapshotFile;
+    }
+    
+    public long getLocalQueueSnapshotGracePeriod() {
+        return this.queueSnapshotGracePeriod;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * On graceful shutdown, hand the tasks still queued on this member to the other ready 
+     * members instead of running them here before stopping.  Tasks in progress are left to 
+     * finish.  If no other member is ready, they stay in the local queue.  A task that fails 
+     * to hand off is recovered from the write ahead log.
+     * 
+     * @return
+     */
+    public ExecutorConfig<GROUP> withShutdownDrain() {
+        this.shutdownDrain = true;
+        return this;
+    }
+    
+    /**
+     * The number of tasks taken out of the local queue at a time during a shutdown drain.  
+     * The default is 100.
+     * 
+     * @see withShutdownDrain
+     * @param batchSize
+     * @return
+     */
+    public ExecutorConfig<GROUP> withShutdownDrainBatchSize(int batchSize) {
+        this.shutdownDrainBatchSize = batchSize;
+        return this;
+    }
+    
+    public boolean isShutdownDrainEnabled() {
+        return this.shutdownDrain;
+    }
+    
+    public int getShutdownDrainBatchSize() {
+        return this.shutdownDrainBatchSize;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * Buffer the completions of tasks per submitting member and send them as one message 
+     * every flushIntervalMillis or once maxBatchSize tasks have completed.  The submitting 
+     * member removes the tasks from the write ahead log and completes their futures.  This 
+     * greatly reduces messaging for short tasks, but futures complete up to 
+     * flushIntervalMillis later.
+     * 
+     * @param flushIntervalMillis
+     * @param maxBatchSize
+     * @return
+     */
+    public ExecutorConfig<GROUP> withCompletionBatching(long flushIntervalMillis, int maxBatchSize) {
+        this.completionBatchInterval = flushIntervalMillis;
+        this.completionBatchSize = maxBatchSize;
+        return this;
+    }
+    
+    public boolean isCompletionBatchingEnabled() {
+        return this.completionBatchInterval > 0;
+    }
+    
+    public long getCompletionBatchInterval() {
+        return this.completionBatchInterval;
+    }
+    
+    public int getCompletionBatchSize() {
+        return this.completionBatchSize;
+    }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * Buffer the write ahead log writes of new tasks and write them together every 
+     * flushIntervalMillis, or once maxBatchSize tasks are waiting.  Each group is written 
+     * with one putAll, which hazelcast splits into one operation per partition.  A submit 
+     * still doesn't return, and its task isn't sent, until the task is in the write ahead 
+     * log, so the durability is the same.  This greatly raises throughput when many 
+     * threads submit, but a single submit can wait up to flushIntervalMillis longer.
+     * 
+     * @param flushIntervalMillis
+     * @param maxBatchSize
+     * @return
+     */
+    public ExecutorConfig<GROUP> withWalGroupCommit(long flushIntervalMillis, int maxBatchSize) {
+        this.walGroupCommitInterval = flushIntervalMillis;
+        this.walGroupCommitSize = maxBatchSize;
+        return this;
+    }
+    
+    public boolean isWalGroupCommitEnabled() {
+        return this.walGroupCommitInterval > 0;
+    }
+    
+    public long getWalGroupCommitInterval() {
+        return this.walGroupCommitInterval;
+    }
+    
+    public int getWalGroupCommitSize() {
+        return this.walGroupCommitSize;
+    }
+    
     public ExecutorConfig<GROUP> addTaskResponseListener(TaskResponseListener listener) {
         this.taskResponseListeners.add(listener);
         return this;
@@ -180,6 +563,14 @@ public class ExecutorConfig<GROUP extends Serializable> {
     public long getRecoveryProcessPollInterval() {
         return this.recoveryProcessPollInterval;
     }
+    
+    public double getRecoveryRate() {
+        return this.recoveryRate;
+    }
+    
+    public int getRecoveryBatchSize() {
+        return this.recoveryBatchSize;
+    }
 
     /**
      * By default we will automatically startup the task system when its
@@ -1,6 +1,7 @@
 package com.hazeltask.config;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.Serializable;
 
@@ -11,11 +12,23 @@ import com.hazeltask.core.concurrent.collections.grouped.prioritizer.LoadBalance
 import com.hazeltask.core.concurrent.collections.grouped.prioritizer.RoundRobinGroupPrioritizer;
 import com.hazeltask.core.concurrent.collections.router.ListRouterFactory;
 import com.hazeltask.core.concurrent.collections.router.RoundRobinRouter;
+import com.hazeltask.executor.steal.TaskStealPolicy;
+import com.hazeltask.executor.steal.WorkEstimateStealPolicy;
 
 public class ExecutorLoadBalancingConfig<GROUP extends Serializable> {
     private ListRouterFactory<Member> memberRouterFactory = RoundRobinRouter.newFactory();
     private GroupPrioritizer<GROUP>   groupPrioritizer    = new RoundRobinGroupPrioritizer<GROUP>();
     private long                      rebalanceTaskPeriod = MINUTES.toMillis(2);
+    private TaskStealPolicy           taskStealPolicy     = new WorkEstimateStealPolicy();
+    private boolean                   groupPreservingSteal = false;
+    private double                    capacityWeight      = 0;
+    private boolean                   capacityWeightedRouting = false;
+    private int                       idleStealLowWaterMark = 0;
+    private int                       idleStealChunkSize = 100;
+    private long                      idleStealLeaseTime = SECONDS.toMillis(30);
+    private long                      idleStealStatsMaxAge = SECONDS.toMillis(5);
+    private int                       stealChunkSize = 100;
+    private long                      stealChunkTimeout = SECONDS.toMillis(30);
 
     public static <GROUP extends Serializable> ExecutorLoadBalancingConfig<GROUP> create() {
         return new ExecutorLoadBalancingConfig<GROUP>();
@@ -77,6 +90,49 @@ public class ExecutorLoadBalancingConfig<GROUP extends Serializable> {
         return this.memberRouterFactory;
     }
     
+    /**
+     * How much work this member can do compared to the others.  A member with twice the 
+     * weight of another gets twice the tasks from capacity weighted routing and keeps twice 
+     * the work when tasks are rebalanced.  By default the weight is the worker thread count.
+     * <p>
+     * Set this when thread counts don't tell the whole story, like a member with faster 
+     * cores or tasks that are limited by something other than CPU.
+     * 
+     * @param capacityWeight
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withCapacityWeight(double capacityWeight) {
+        if(capacityWeight <= 0)
+            throw new IllegalArgumentException("capacityWeight must be positive");
+        this.capacityWeight = capacityWeight;
+        return this;
+    }
+    
+    /**
+     * @return 0 if the thread count should be used
+     */
+    public double getCapacityWeight() {
+        return this.capacityWeight;
+    }
+    
+    /**
+     * Send new tasks to members in proportion to their capacity weight instead of round 
+     * robin.  Weights are fetched from every member periodically.
+     * <p>
+     * This option is not enabled by default
+     * 
+     * @see withCapacityWeight
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useCapacityWeightedRouting() {
+        this.capacityWeightedRouting = true;
+        return this;
+    }
+    
+    public boolean isCapacityWeightedRouting() {
+        return this.capacityWeightedRouting;
+    }
+    
     /**
      * This is the period in which we will rebalance the task load across nodes ensuring all nodes
      * have roughly the same number of tasks.  By default this is set to 2 minutes.
@@ -93,4 +149,143 @@ public class ExecutorLoadBalancingConfig<GROUP extends Serializable> {
         return this.rebalanceTaskPeriod;
     }
     
+    /**
+     * Decides when and how many tasks the rebalance task takes from other members.  By 
+     * default this is a WorkEstimateStealPolicy which balances the estimated time to run 
+     * each member's queue.  Use a TaskCountStealPolicy to balance on queue sizes alone.
+     * 
+     * @param taskStealPolicy
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useTaskStealPolicy(TaskStealPolicy taskStealPolicy) {
+        this.taskStealPolicy = taskStealPolicy;
+        return this;
+    }
+    
+    public TaskStealPolicy getTaskStealPolicy() {
+        return this.taskStealPolicy;
+    }
+    
+    /**
+     * When another member steals from this one, give it whole groups where they fit and 
+     * then the newest tasks of one more group, instead of a slice of every group.  Both 
+     * members end up with whole per group queues and the oldest tasks of each group stay 
+     * here to run next.
+     * <p>
+     * This option is not enabled by default
+     * 
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withGroupPreservingSteal() {
+        this.groupPreservingSteal = true;
+        return this;
+    }
+    
+    public boolean isGroupPreservingSteal() {
+        return this.groupPreservingSteal;
+    }
+    
+    /**
+     * Replaces the periodic rebalance task.  As soon as this member's queue drops below 
+     * lowWaterMark it asks the most loaded members for up to chunkSize tasks each until it 
+     * is back above the mark.  No cluster wide lock is taken, a member is only stolen from
+     * by one member at a time using a lease.
+     * <p>
+     * This option is not enabled by default
+     * 
+     * @param lowWaterMark
+     * @param chunkSize - the most tasks to take from one member at a time
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withIdleStealing(int lowWaterMark, int chunkSize) {
+        if(lowWaterMark < 1 || chunkSize < 1)
+            throw new IllegalArgumentException("lowWaterMark and chunkSize must be at least 1");
+        this.idleStealLowWaterMark = lowWaterMark;
+        this.idleStealChunkSize = chunkSize;
+        return this;
+    }
+    
+    /**
+     * How long a member may hold the right to steal from another member.  Leases are 
+     * released after each steal, and a steal asks for no more chunks once its lease has 
+     * expired, so this also bounds how long one steal can take.  By 
+     * default this is 30 seconds.
+     * 
+     * @param idleStealLeaseTime
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withIdleStealLeaseTime(long idleStealLeaseTime) {
+        this.idleStealLeaseTime = idleStealLeaseTime;
+        return this;
+    }
+    
+    /**
+     * Idle stealing picks the members to steal from using cached queue sizes.  This is how 
+     * old they may get before they are fetched again.  It is also how often an idle member
+     * checks if it should steal when it isn't completing tasks.  By default this is 5 seconds.
+     * 
+     * @param idleStealStatsMaxAge
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withIdleStealStatsMaxAge(long idleStealStatsMaxAge) {
+        this.idleStealStatsMaxAge = idleStealStatsMaxAge;
+        return this;
+    }
+    
+    public boolean isIdleStealingEnabled() {
+        return this.idleStealLowWaterMark > 0;
+    }
+    
+    public int getIdleStealLowWaterMark() {
+        return this.idleStealLowWaterMark;
+    }
+    
+    public int getIdleStealChunkSize() {
+        return this.idleStealChunkSize;
+    }
+    
+    public long getIdleStealLeaseTime() {
+        return this.idleStealLeaseTime;
+    }
+    
+    public long getIdleStealStatsMaxAge() {
+        return this.idleStealStatsMaxAge;
+    }
+    
+    /**
+     * Stolen tasks are sent in chunks of at most this many tasks.  The member being stolen 
+     * from holds on to a chunk until the thief asks for the next one, so this bounds how 
+     * many tasks are in flight at once.  By default this is 100.
+     * 
+     * @param stealChunkSize
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withStealChunkSize(int stealChunkSize) {
+        if(stealChunkSize < 1)
+            throw new IllegalArgumentException("stealChunkSize must be at least 1");
+        this.stealChunkSize = stealChunkSize;
+        return this;
+    }
+    
+    /**
+     * How long a thief waits for a chunk of stolen tasks before it gives up on that member.  
+     * The member being stolen from waits twice this for the next request before it puts 
+     * the unacknowledged chunk back in its own queue.  By default this is 30 seconds.
+     * 
+     * @param stealChunkTimeout
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withStealChunkTimeout(long stealChunkTimeout) {
+        this.stealChunkTimeout = stealChunkTimeout;
+        return this;
+    }
+    
+    public int getStealChunkSize() {
+        return this.stealChunkSize;
+    }
+    
+    public long getStealChunkTimeout() {
+        return this.stealChunkTimeout;
+    }
+    
 }
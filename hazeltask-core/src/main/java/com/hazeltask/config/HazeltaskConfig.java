@@ -24,6 +24,7 @@ public class HazeltaskConfig<GROUP extends Serializable> {
     private ExecutorConfig<GROUP> executorConfig = new ExecutorConfig<GROUP>();
     private MetricsConfig         metricsConfig  = new MetricsConfig();
     private NamedThreadFactory    threadFactory;
+    private long                  statisticsRefreshInterval = 0;
     
     /**
      * Topology names allow you to run multiple Hazeltask platforms on the same JVM.  You may retrive your Hazeltask intance
@@ -107,4 +108,23 @@ public class HazeltaskConfig<GROUP extends Serializable> {
     public NamedThreadFactory getThreadFactory() {
         return this.threadFactory;
     }
+    
+    /**
+     * This option is not enabled by default
+     * <p>
+     * Refresh the ClusterService statistic snapshots in the background every interval 
+     * millis so callers that pass a maxAge rarely wait on the cluster.  Only statistics 
+     * that have been asked for are refreshed.
+     * 
+     * @param interval
+     * @return
+     */
+    public HazeltaskConfig<GROUP> withStatisticsRefreshInterval(long interval) {
+        this.statisticsRefreshInterval = interval;
+        return this;
+    }
+    
+    public long getStatisticsRefreshInterval() {
+        return this.statisticsRefreshInterval;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,263 @@
+package com.hazeltask.core.concurrent.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A compact concurrent map keyed by UUID.  Keys are stored as their two longs in an open
+ * addressing table, so an entry costs two longs and a reference instead of a node, a
+ * UUID and a hash map entry.  Looking up, adding and removing by the two longs does
+ * not allocate.
+ * <p>
+ * The table is split into stripes that are locked independently.  Each stripe uses
+ * linear probing with backward shift deletion, so there are no tombstones to clean up.
+ *
+ * @author jclawson
+ *
+ * @param <V>
+ */
+public class ConcurrentUuidMap<V> {
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int MIN_STRIPE_CAPACITY = 16;
+
+    private final Stripe<V>[] stripes;
+    private final int stripeMask;
+
+    public ConcurrentUuidMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param concurrency - the number of stripes, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentUuidMap(int concurrency) {
+        if(concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        int count = Integer.highestOneBit(concurrency - 1) << 1;
+        if(count < 1)
+            count = 1;
+        stripes = new Stripe[count];
+        for(int i=0; i<count; i++) {
+            stripes[i] = new Stripe<V>();
+        }
+        stripeMask = count - 1;
+    }
+
+    /**
+     * A well mixed hash of the two longs of a UUID
+     */
+    public static long hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Stripe<V> stripe(long hash) {
+        return stripes[(int)(hash >>> 40) & stripeMask];
+    }
+
+    public V get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    public V get(long most, long least) {
+        long hash = hash(most, least);
+        return stripe(hash).get(most, least, (int) hash);
+    }
+
+    /**
+     * @return the previous value or null
+     */
+    public V put(UUID key, V value) {
+        return put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    public V put(long most, long least, V value) {
+        if(value == null)
+            throw new NullPointerException();
+        long hash = hash(most, least);
+        return stripe(hash).put(most, least, (int) hash, value);
+    }
+
+    /**
+     * @return the removed value or null if there was no mapping
+     */
+    public V remove(UUID key) {
+        return remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    public V remove(long most, long least) {
+        long hash = hash(most, least);
+        return stripe(hash).remove(most, least, (int) hash);
+    }
+
+    /**
+     * Remove the mapping only if it is currently mapped to this value instance
+     * @return true if removed
+     */
+    public boolean remove(long most, long least, V value) {
+        long hash = hash(most, least);
+        return stripe(hash).remove(most, least, (int) hash, value);
+    }
+
+    /**
+     * This is a sum of the stripe sizes without locking, so it may be slightly stale
+     * while entries are being added and removed
+     */
+    public int size() {
+        int size = 0;
+        for(Stripe<V> stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for(Stripe<V> stripe : stripes) {
+            if(stripe.size > 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the keys, each stripe is copied while it is locked
+     */
+    public List<UUID> keys() {
+        List<UUID> keys = new ArrayList<UUID>(size());
+        for(Stripe<V> stripe : stripes) {
+            stripe.copyKeys(keys);
+        }
+        return keys;
+    }
+
+    private static final class Stripe<V> {
+        //most and least of slot i are at 2i and 2i+1
+        private long[] keys = new long[MIN_STRIPE_CAPACITY * 2];
+        //null marks an empty slot
+        private Object[] values = new Object[MIN_STRIPE_CAPACITY];
+        private volatile int size;
+
+        private int find(long most, long least, int hash) {
+            int mask = values.length - 1;
+            int i = hash & mask;
+            while(values[i] != null) {
+                if(keys[i<<1] == most && keys[(i<<1) + 1] == least)
+                    return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long most, long least, int hash) {
+            int i = find(most, least, hash);
+            return i < 0 ? null : (V) values[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long most, long least, int hash, V value) {
+            int i = find(most, least, hash);
+            if(i >= 0) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+
+            //keep the load factor under 3/4
+            if((size + 1) * 4 > values.length * 3)
+                resize(values.length << 1);
+            insert(most, least, hash, value);
+            size++;
+            return null;
+        }
+
+        private void insert(long most, long least, int hash, Object value) {
+            int mask = values.length - 1;
+            int i = hash & mask;
+            while(values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i<<1] = most;
+            keys[(i<<1) + 1] = least;
+            values[i] = value;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[capacity * 2];
+            values = new Object[capacity];
+            for(int i=0; i<oldValues.length; i++) {
+                if(oldValues[i] != null) {
+                    long most = oldKeys[i<<1];
+                    long least = oldKeys[(i<<1) + 1];
+                    insert(most, least, (int) hash(most, least), oldValues[i]);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long most, long least, int hash) {
+            int i = find(most, least, hash);
+            if(i < 0)
+                return null;
+            V previous = (V) values[i];
+            delete(i);
+            return previous;
+        }
+
+        synchronized boolean remove(long most, long least, int hash, V value) {
+            int i = find(most, least, hash);
+            if(i < 0 || values[i] != value)
+                return false;
+            delete(i);
+            return true;
+        }
+
+        /**
+         * Empty the slot and shift back any entries after it that would no longer be
+         * reachable from their home slot
+         */
+        private void delete(int i) {
+            int mask = values.length - 1;
+            values[i] = null;
+            int j = i;
+            while(true) {
+                j = (j + 1) & mask;
+                if(values[j] == null)
+                    break;
+                long most = keys[j<<1];
+                long least = keys[(j<<1) + 1];
+                int home = (int) hash(most, least) & mask;
+                //the entry at j can fill the hole if its home is not cyclically in (i, j]
+                boolean reachable = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+                if(!reachable) {
+                    keys[i<<1] = most;
+                    keys[(i<<1) + 1] = least;
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+            size--;
+
+            //give memory back after a burst of futures
+            if(values.length > MIN_STRIPE_CAPACITY && size * 8 < values.length)
+                resize(values.length >> 1);
+        }
+
+        synchronized void copyKeys(List<UUID> result) {
+            for(int i=0; i<values.length; i++) {
+                if(values[i] != null)
+                    result.add(new UUID(keys[i<<1], keys[(i<<1) + 1]));
+            }
+        }
+    }
+}
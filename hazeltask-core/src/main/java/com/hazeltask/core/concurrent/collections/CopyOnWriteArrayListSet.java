@@ -2,6 +2,7 @@ package com.hazeltask.core.concurrent.collections;
 
 import java.util.AbstractList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -38,4 +39,34 @@ public class CopyOnWriteArrayListSet<E> extends AbstractList<E> implements Set<E
     public E get(int index) {
         return arrayList.get(index);
     }
+    
+    /*
+     * AbstractList iterates and removes by index which isn't safe while another thread 
+     * changes the list.  These go straight to the CopyOnWriteArrayList.
+     */
+    
+    @Override
+    public Iterator<E> iterator() {
+        return arrayList.iterator();
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return arrayList.contains(o);
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        return arrayList.remove(o);
+    }
+    
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return arrayList.removeAll(c);
+    }
+    
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return arrayList.retainAll(c);
+    }
 }
@@ -0,0 +1,17 @@
+package com.hazeltask.core.concurrent.collections.grouped;
+
+import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
+
+/**
+ * Creates the backing queue for a single group in a grouped queue.  This allows the 
+ * storage of queued items to be swapped out (on heap, off heap, etc) without changing
+ * how groups are routed.
+ * 
+ * @author jclawson
+ *
+ * @param <E>
+ * @param <G>
+ */
+public interface GroupQueueFactory<E, G> {
+    public ITrackedQueue<E> createQueue(G group);
+}
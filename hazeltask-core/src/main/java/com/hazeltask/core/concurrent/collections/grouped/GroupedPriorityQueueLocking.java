@@ -2,15 +2,19 @@ package com.hazeltask.core.concurrent.collections.grouped;
 
 import java.util.AbstractQueue;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
@@ -38,7 +42,8 @@ import com.hazeltask.executor.metrics.ExecutorMetrics;
 @Slf4j
 public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated, G> extends
         AbstractQueue<E> implements IGroupedQueue<E, G>, BlockingQueue<E> {
-    private final Map<G, ITrackedQueue<E>>        queuesByGroup = new HashMap<G, ITrackedQueue<E>>();
+    //concurrent so group size reads can scan it without taking the lock
+    private final Map<G, ITrackedQueue<E>>        queuesByGroup = new ConcurrentHashMap<G, ITrackedQueue<E>>();
     
     /**
      * Using a ConcurrentSkipListSet seems to have more predictable round robin routing than a 
@@ -52,6 +57,7 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
     private final Map<G, GroupMetadata<G>>        emptyQueues   = new HashMap<G, GroupMetadata<G>>();
     private final CopyOnWriteArrayList<G>         groups        = new CopyOnWriteArrayList<G>();
     private final GroupPrioritizer<G>             groupPrioritizer;
+    private final GroupQueueFactory<E, G>         queueFactory;
 
     private final ReentrantReadWriteLock          lock          = new ReentrantReadWriteLock(false);
     private final Condition                       notEmpty      = lock.writeLock().newCondition();
@@ -61,7 +67,21 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
     private final Timer pollTimer;
     
     public GroupedPriorityQueueLocking(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer) {
+        this(metrics, groupPrioritizer, new GroupQueueFactory<E, G>() {
+            public ITrackedQueue<E> createQueue(G group) {
+                return new TrackedPriorityBlockingQueue<E>();
+            }
+        });
+    }
+    
+    /**
+     * @param metrics
+     * @param groupPrioritizer
+     * @param queueFactory - creates the queue that holds the items for each group
+     */
+    public GroupedPriorityQueueLocking(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer, GroupQueueFactory<E, G> queueFactory) {
         this.groupPrioritizer = groupPrioritizer;
+        this.queueFactory = queueFactory;
         this.routesSkipped = metrics.getRoutesSkipped().getMetric();
         this.routeNotFound = metrics.getRouteNotFound().getMetric();
         this.pollTimer = metrics.getTaskQueuePollTimer().getMetric();
@@ -114,7 +134,7 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
             try {
                 q = getQueueByGroup(group);
                 if (q == null) {
-                    ITrackedQueue<E> newQ = new TrackedPriorityBlockingQueue<E>();
+                    ITrackedQueue<E> newQ = queueFactory.createQueue(group);
                     if (queuesByGroup.put(group, newQ) == null) {
                         q = newQ;
     
@@ -268,11 +288,11 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
     public int drainTo(Collection<? super E> c) {
         lock.writeLock().lock();
         try {
-            int startSize = c.size();
-//            for (G group : groups) {
-//                drainTo(group, c);
-//            }
-            return c.size() - startSize;
+            int num = 0;
+            for (G group : groups) {
+                num += drainTo(group, c);
+            }
+            return num;
         } finally {
             lock.writeLock().unlock();
         }
@@ -282,11 +302,12 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
     public int drainTo(Collection<? super E> c, int maxElements) {
         lock.writeLock().lock();
         try {
-            int startSize = c.size();
-//            for (G group : groups) {
-//                drainTo(group, c, maxElements);
-//            }
-            return c.size() - startSize;
+            int num = 0;
+            for (G group : groups) {
+                if (num >= maxElements) break;
+                num += drainTo(group, c, maxElements - num);
+            }
+            return num;
         } finally {
             lock.writeLock().unlock();
         }
@@ -342,6 +363,17 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
         }
     }
 
+    public int drainNewestTo(G partition, Collection<? super E> toCollection, int max) {
+        ITrackedQueue<E> q = getQueueByGroup(partition);
+        if (q == null) return 0;
+        lock.writeLock().lock();
+        try {
+            return q.drainNewestTo(toCollection, max);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     @Override
     public Iterator<E> iterator() {
         return new FastPartitionedQueueIterator();
@@ -438,4 +470,58 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
         }
         return result;
     }
+    
+    @Override
+    public Map<G, Integer> getGroupSizes(Collection<G> groups) {
+        Map<G, Integer> result = new HashMap<G, Integer>(groups.size());
+        for (G group : groups) {
+            ITrackedQueue<E> q = queuesByGroup.get(group);
+            if(q != null) {
+                result.put(group, q.size());
+            }
+        }
+        return result;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<G, Integer> getLargestGroups(int limit, Predicate<G> predicate) {
+        if(limit <= 0)
+            return Collections.emptyMap();
+        //min heap of the largest so far, so we never hold more than limit entries
+        PriorityQueue<GroupSize<G>> largest = new PriorityQueue<GroupSize<G>>(limit + 1);
+        for (Entry<G, ITrackedQueue<E>> groupQueue : queuesByGroup.entrySet()) {
+            G group = groupQueue.getKey();
+            if(predicate == null || predicate.apply(group)) {
+                int size = groupQueue.getValue().size();
+                if(size > 0 && (largest.size() < limit || size > largest.peek().size)) {
+                    largest.offer(new GroupSize<G>(group, size));
+                    if(largest.size() > limit)
+                        largest.poll();
+                }
+            }
+        }
+        
+        GroupSize<G>[] sorted = largest.toArray(new GroupSize[largest.size()]);
+        Arrays.sort(sorted, Collections.reverseOrder());
+        Map<G, Integer> result = new LinkedHashMap<G, Integer>();
+        for(GroupSize<G> groupSize : sorted) {
+            result.put(groupSize.group, groupSize.size);
+        }
+        return result;
+    }
+    
+    private static class GroupSize<G> implements Comparable<GroupSize<G>> {
+        private final G group;
+        private final int size;
+        
+        private GroupSize(G group, int size) {
+            this.group = group;
+            this.size = size;
+        }
+
+        public int compareTo(GroupSize<G> o) {
+            return size < o.size ? -1 : (size == o.size ? 0 : 1);
+        }
+    }
 }
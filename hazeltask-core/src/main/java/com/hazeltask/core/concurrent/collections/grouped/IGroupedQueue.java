@@ -15,10 +15,25 @@ public interface IGroupedQueue<E extends Groupable<G>, G> extends BlockingQueue<
     public abstract int drainTo(G partition, Collection<? super E> toCollection);
 
     public abstract int drainTo(G partition, Collection<? super E> toCollection, int max);
+    
+    /**
+     * Remove up to max of the newest items in a group, leaving its oldest items to run next
+     */
+    public abstract int drainNewestTo(G partition, Collection<? super E> toCollection, int max);
 
     public Collection<G> getGroups();
     
     public Map<G, Integer> getGroupSizes(Predicate<G> predicate);
     
+    /**
+     * Looks each group up directly instead of testing every group against a predicate
+     */
+    public Map<G, Integer> getGroupSizes(Collection<G> groups);
+    
+    /**
+     * @return the limit largest groups that match the predicate, largest first
+     */
+    public Map<G, Integer> getLargestGroups(int limit, Predicate<G> predicate);
+    
     public ITrackedQueue<E> getQueueByGroup(G group);
 }
\ No newline at end of file
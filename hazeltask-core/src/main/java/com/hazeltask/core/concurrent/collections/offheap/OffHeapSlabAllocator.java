@@ -0,0 +1,284 @@
+package com.hazeltask.core.concurrent.collections.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Hands out space in direct memory slabs.  Records are bump allocated into the current
+ * slab.  A slab is recycled once every record in it has been freed, which suits queues
+ * where records are freed in roughly the order they were written.
+ * <p>
+ * Space freed in a slab that still has live records goes on a free list, merged with
+ * the free space next to it, and new records take the smallest hole they fit in before
+ * a new slab is used.  A long lived record only pins its own bytes, not its whole slab.
+ * <p>
+ * Records larger than a slab get a slab of their own that is dropped (not recycled)
+ * once freed.
+ * <p>
+ * One allocator is shared by all the group queues of a member so the capacity is a
+ * limit on the total number of bytes this member will hold off heap.
+ *
+ * @author jclawson
+ *
+ */
+public class OffHeapSlabAllocator {
+    /**
+     * returned by allocate when there is no room left
+     */
+    public static final long NO_CAPACITY = -1;
+
+    private static final Comparator<Hole> SMALLEST_FIRST = new Comparator<Hole>() {
+        public int compare(Hole o1, Hole o2) {
+            if(o1.length != o2.length)
+                return o1.length < o2.length ? -1 : 1;
+            int s1 = o1.slab == null ? -1 : o1.slab.index;
+            int s2 = o2.slab == null ? -1 : o2.slab.index;
+            if(s1 != s2)
+                return s1 < s2 ? -1 : 1;
+            return o1.offset < o2.offset ? -1 : (o1.offset == o2.offset ? 0 : 1);
+        }
+    };
+
+    private final int slabSize;
+    private final long capacityBytes;
+
+    private final List<Slab> slabs = new ArrayList<Slab>();
+    private final ArrayDeque<Slab> freeSlabs = new ArrayDeque<Slab>();
+    //free space in slabs that still have live records
+    private final TreeSet<Hole> holes = new TreeSet<Hole>(SMALLEST_FIRST);
+    private Slab current;
+
+    private long usedBytes;
+    private long reservedBytes;
+
+    public OffHeapSlabAllocator(long capacityBytes, int slabSize) {
+        if(slabSize <= 0)
+            throw new IllegalArgumentException("slabSize must be greater than 0");
+        if(capacityBytes < slabSize)
+            throw new IllegalArgumentException("capacityBytes must be at least the size of one slab");
+        this.capacityBytes = capacityBytes;
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Copy the bytes into a slab
+     *
+     * @param bytes
+     * @return the address of the record or NO_CAPACITY if we are out of room
+     */
+    public synchronized long allocate(byte[] bytes) {
+        int length = bytes.length;
+        Slab slab;
+        int offset;
+        if(length > slabSize) {
+            if(reservedBytes + length > capacityBytes)
+                return NO_CAPACITY;
+            slab = newSlab(length, false);
+            offset = 0;
+            slab.writeOffset = length;
+        } else if(current != null && current.remaining() >= length) {
+            slab = current;
+            offset = slab.writeOffset;
+            slab.writeOffset += length;
+        } else {
+            //a probe that sorts before every hole of this length
+            Hole hole = holes.ceiling(new Hole(null, -1, length));
+            if(hole != null) {
+                slab = hole.slab;
+                offset = hole.offset;
+                removeHole(hole);
+                if(hole.length > length)
+                    addHole(new Hole(slab, offset + length, hole.length - length));
+            } else {
+                Slab next = nextSlab();
+                if(next == null)
+                    return NO_CAPACITY;
+                Slab full = current;
+                current = next;
+                retire(full);
+                slab = current;
+                offset = 0;
+                slab.writeOffset = length;
+            }
+        }
+
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(offset);
+        buffer.put(bytes);
+        slab.liveBytes += length;
+        usedBytes += length;
+        return address(slab.index, offset);
+    }
+
+    public synchronized byte[] read(long address, int length) {
+        Slab slab = slabs.get(slabIndex(address));
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(slabOffset(address));
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public synchronized void free(long address, int length) {
+        Slab slab = slabs.get(slabIndex(address));
+        slab.liveBytes -= length;
+        usedBytes -= length;
+        if(slab.liveBytes == 0 && slab != current) {
+            release(slab);
+        } else if(slab.recyclable) {
+            freeSpace(slab, slabOffset(address), length);
+        }
+    }
+
+    /**
+     * @return the number of bytes held by live records
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of bytes of direct memory held in slabs
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    private Slab nextSlab() {
+        Slab slab = freeSlabs.poll();
+        if(slab != null)
+            return slab;
+        if(reservedBytes + slabSize > capacityBytes)
+            return null;
+        return newSlab(slabSize, true);
+    }
+
+    private Slab newSlab(int size, boolean recyclable) {
+        int index = slabs.indexOf(null);
+        Slab slab = new Slab(index == -1 ? slabs.size() : index, ByteBuffer.allocateDirect(size), recyclable);
+        if(index == -1)
+            slabs.add(slab);
+        else
+            slabs.set(index, slab);
+        reservedBytes += size;
+        return slab;
+    }
+
+    /**
+     * The slab is no longer bump allocated into, so what is left at its end is free space
+     */
+    private void retire(Slab slab) {
+        if(slab == null)
+            return;
+        if(slab.liveBytes == 0) {
+            release(slab);
+        } else if(slab.remaining() > 0) {
+            int tail = slab.writeOffset;
+            int length = slab.remaining();
+            slab.writeOffset = slab.buffer.capacity();
+            freeSpace(slab, tail, length);
+        }
+    }
+
+    /**
+     * Merge the space with the holes on either side of it.  Space at the end of the
+     * current slab goes back to bump allocation.
+     */
+    private void freeSpace(Slab slab, int offset, int length) {
+        Map.Entry<Integer, Hole> before = slab.holes.lowerEntry(offset);
+        if(before != null && before.getValue().offset + before.getValue().length == offset) {
+            removeHole(before.getValue());
+            offset = before.getValue().offset;
+            length += before.getValue().length;
+        }
+        Hole after = slab.holes.get(offset + length);
+        if(after != null) {
+            removeHole(after);
+            length += after.length;
+        }
+
+        if(slab == current && offset + length == slab.writeOffset)
+            slab.writeOffset = offset;
+        else
+            addHole(new Hole(slab, offset, length));
+    }
+
+    private void addHole(Hole hole) {
+        holes.add(hole);
+        hole.slab.holes.put(hole.offset, hole);
+    }
+
+    private void removeHole(Hole hole) {
+        holes.remove(hole);
+        hole.slab.holes.remove(hole.offset);
+    }
+
+    private void release(Slab slab) {
+        for(Hole hole : slab.holes.values()) {
+            holes.remove(hole);
+        }
+        slab.holes.clear();
+        if(slab.recyclable) {
+            slab.writeOffset = 0;
+            freeSlabs.add(slab);
+        } else {
+            //let the GC reclaim the direct memory of oversized slabs
+            slabs.set(slab.index, null);
+            reservedBytes -= slab.buffer.capacity();
+        }
+    }
+
+    private static long address(int slabIndex, int offset) {
+        return ((long)slabIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int slabIndex(long address) {
+        return (int)(address >>> 32);
+    }
+
+    private static int slabOffset(long address) {
+        return (int) address;
+    }
+
+    private static class Slab {
+        private final int index;
+        private final ByteBuffer buffer;
+        private final boolean recyclable;
+        //by offset so freed space can be merged with its neighbours
+        private final TreeMap<Integer, Hole> holes = new TreeMap<Integer, Hole>();
+        private int writeOffset;
+        private int liveBytes;
+
+        Slab(int index, ByteBuffer buffer, boolean recyclable) {
+            this.index = index;
+            this.buffer = buffer;
+            this.recyclable = recyclable;
+        }
+
+        int remaining() {
+            return buffer.capacity() - writeOffset;
+        }
+    }
+
+    private static class Hole {
+        private final Slab slab;
+        private final int offset;
+        private final int length;
+
+        Hole(Slab slab, int offset, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
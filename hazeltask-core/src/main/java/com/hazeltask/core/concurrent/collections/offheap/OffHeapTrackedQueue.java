@@ -0,0 +1,242 @@
+package com.hazeltask.core.concurrent.collections.offheap;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
+import com.hazeltask.core.concurrent.collections.tracked.ItemCodec;
+import com.hazeltask.core.concurrent.collections.tracked.TrackCreated;
+
+/**
+ * A queue ordered by created time, like TrackedPriorityBlockingQueue, that keeps its
+ * items serialized in off heap slabs.  The heap only holds a small index record per 
+ * item (id, created time, and slab address).  Items are decoded when they are polled 
+ * or iterated.
+ * <p>
+ * Removing an item by equality only needs its id so it doesn't have to decode 
+ * anything.
+ * 
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class OffHeapTrackedQueue<E extends TrackCreated> extends AbstractQueue<E> implements ITrackedQueue<E> {
+    private static final Comparator<IndexRecord> CREATED_ORDER = new Comparator<IndexRecord>() {
+        public int compare(IndexRecord o1, IndexRecord o2) {
+            if(o1.createdAt != o2.createdAt)
+                return o1.createdAt < o2.createdAt ? -1 : 1;
+            //break ties by insertion order
+            return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+        }
+    };
+    
+    private final OffHeapSlabAllocator allocator;
+    private final ItemCodec<E> codec;
+    private final TreeSet<IndexRecord> index = new TreeSet<IndexRecord>(CREATED_ORDER);
+    private long nextSequence;
+    
+    private volatile Long lastAddedTime = null;
+    private volatile Long lastRemovedTime = null;
+    
+    public OffHeapTrackedQueue(OffHeapSlabAllocator allocator, ItemCodec<E> codec) {
+        this.allocator = allocator;
+        this.codec = codec;
+    }
+    
+    /**
+     * @return false if the allocator is out of capacity
+     */
+    @Override
+    public synchronized boolean offer(E e) {
+        if(e == null)
+            throw new NullPointerException();
+        byte[] bytes = codec.encode(e);
+        long address = allocator.allocate(bytes);
+        if(address == OffHeapSlabAllocator.NO_CAPACITY)
+            return false;
+        
+        UUID id = codec.getId(e);
+        index.add(new IndexRecord(id.getMostSignificantBits(), id.getLeastSignificantBits(), 
+                                    e.getTimeCreated(), address, bytes.length, nextSequence++));
+        lastAddedTime = System.currentTimeMillis();
+        return true;
+    }
+
+    @Override
+    public synchronized E poll() {
+        IndexRecord record = index.pollFirst();
+        lastRemovedTime = System.currentTimeMillis();
+        if(record == null)
+            return null;
+        return release(record);
+    }
+
+    /**
+     * Takes the newest records from the tail of the index.  Only the records being 
+     * removed are decoded.
+     */
+    public synchronized int drainNewestTo(Collection<? super E> c, int max) {
+        if(max <= 0)
+            return 0;
+        int count = Math.min(max, index.size());
+        IndexRecord[] records = new IndexRecord[count];
+        for(int i=count-1; i>=0; i--) {
+            records[i] = index.pollLast();
+        }
+        for(int i=0; i<count; i++) {
+            c.add(release(records[i]));
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return count;
+    }
+
+    @Override
+    public synchronized E peek() {
+        if(index.isEmpty())
+            return null;
+        IndexRecord record = index.first();
+        return codec.decode(allocator.read(record.address, record.length));
+    }
+    
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+    
+    /**
+     * Removes by id only
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized boolean remove(Object o) {
+        if(o == null)
+            return false;
+        UUID id = codec.getId((E) o);
+        Iterator<IndexRecord> it = index.iterator();
+        while(it.hasNext()) {
+            IndexRecord record = it.next();
+            if(record.idMost == id.getMostSignificantBits() && record.idLeast == id.getLeastSignificantBits()) {
+                it.remove();
+                free(record);
+                lastRemovedTime = System.currentTimeMillis();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private synchronized boolean removeRecord(IndexRecord record) {
+        if(!record.released && index.remove(record)) {
+            free(record);
+            lastRemovedTime = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+    
+    private E release(IndexRecord record) {
+        byte[] bytes = allocator.read(record.address, record.length);
+        free(record);
+        return codec.decode(bytes);
+    }
+    
+    private void free(IndexRecord record) {
+        record.released = true;
+        allocator.free(record.address, record.length);
+    }
+    
+    /**
+     * @return null if the record was removed after the snapshot was taken
+     */
+    private synchronized E read(IndexRecord record) {
+        if(record.released)
+            return null;
+        return codec.decode(allocator.read(record.address, record.length));
+    }
+
+    /**
+     * The iterator walks a snapshot of the index in created order and decodes each 
+     * item as it is reached
+     */
+    @Override
+    public Iterator<E> iterator() {
+        IndexRecord[] snapshot;
+        synchronized (this) {
+            snapshot = index.toArray(new IndexRecord[index.size()]);
+        }
+        return new SnapshotIterator(snapshot);
+    }
+    
+    public synchronized Long getOldestItemTime() {
+        if(!index.isEmpty())
+            return index.first().createdAt;
+        return null;
+    }
+
+    public Long getLastAddedTime() {
+        return lastAddedTime;
+    }
+
+    public Long getLastRemovedTime() {
+        return lastRemovedTime;
+    }
+    
+    private class SnapshotIterator implements Iterator<E> {
+        private final IndexRecord[] records;
+        private int position = 0;
+        private IndexRecord last;
+        private E next;
+        
+        SnapshotIterator(IndexRecord[] records) {
+            this.records = records;
+        }
+        
+        public boolean hasNext() {
+            //skip anything that was polled or removed since the snapshot
+            while(next == null && position < records.length) {
+                next = read(records[position++]);
+            }
+            return next != null;
+        }
+
+        public E next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            E item = next;
+            last = records[position - 1];
+            next = null;
+            return item;
+        }
+
+        public void remove() {
+            if(last == null)
+                throw new IllegalStateException();
+            removeRecord(last);
+            last = null;
+        }
+    }
+    
+    private static final class IndexRecord {
+        private final long idMost;
+        private final long idLeast;
+        private final long createdAt;
+        private final long address;
+        private final int length;
+        private final long sequence;
+        private boolean released;
+        
+        IndexRecord(long idMost, long idLeast, long createdAt, long address, int length, long sequence) {
+            this.idMost = idMost;
+            this.idLeast = idLeast;
+            this.createdAt = createdAt;
+            this.address = address;
+            this.length = length;
+            this.sequence = sequence;
+        }
+    }
+}
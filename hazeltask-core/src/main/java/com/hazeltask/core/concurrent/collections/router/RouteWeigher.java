@@ -0,0 +1,15 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+/**
+ * Gives the relative share of items a route should get
+ * 
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public interface RouteWeigher<T> {
+    /**
+     * @return a positive weight, routes with a weight of 0 or less are never chosen
+     */
+    double getWeight(T route);
+}
@@ -0,0 +1,105 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Round robin where each route gets a share of the picks in proportion to its weight.  This 
+ * is the smooth weighted round robin nginx uses.  Every pick, each route's credit goes up 
+ * by its weight and the route with the most credit is chosen and pays back the total 
+ * weight.  With weights 1 and 3 the order is B A B B instead of B B B A, so a heavy route
+ * doesn't get bursts.
+ * <p>
+ * Weights are read on every pick so they can change at any time.  This router is 
+ * synchronized, picking is cheap compared to sending a task.
+ * 
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public class WeightedRoundRobinRouter<T> implements ListRouter<T> {
+    
+    public static <E> ListRouterFactory<E> newFactory(final RouteWeigher<E> weigher) {
+        return new ListRouterFactory<E>() {
+            public ListRouter<E> createRouter(Callable<List<E>> list) {
+                return new WeightedRoundRobinRouter<E>(list, weigher);
+            }
+            
+            public ListRouter<E> createRouter(List<E> list) {
+                return new WeightedRoundRobinRouter<E>(list, weigher);
+            }
+        };
+    }
+    
+    private final List<T> list;
+    private final Callable<List<T>> fetchList;
+    private final RouteWeigher<T> weigher;
+    private RouteCondition<T> condition;
+    
+    private final Map<T, Double> credits = new HashMap<T, Double>();
+    //the routes the credits were last cleaned up against
+    private List<T> lastRoutes = Collections.emptyList();
+    
+    public WeightedRoundRobinRouter(List<T> list, RouteWeigher<T> weigher) {
+        this.list = list;
+        this.fetchList = null;
+        this.weigher = weigher;
+    }
+    
+    public WeightedRoundRobinRouter(Callable<List<T>> fetchList, RouteWeigher<T> weigher) {
+        this.list = null;
+        this.fetchList = fetchList;
+        this.weigher = weigher;
+    }
+    
+    public synchronized T next() {
+        List<T> routes = getList();
+        
+        //forget routes that went away.  Routes skipped by the condition keep their credit.
+        if(!routes.equals(lastRoutes)) {
+            credits.keySet().retainAll(new HashSet<T>(routes));
+            lastRoutes = new ArrayList<T>(routes);
+        }
+        
+        T best = null;
+        double bestCredit = 0;
+        double totalWeight = 0;
+        for(T route : routes) {
+            if(condition != null && !condition.isRoutable(route))
+                continue;
+            double weight = weigher.getWeight(route);
+            if(weight <= 0)
+                continue;
+            
+            Double credit = credits.get(route);
+            double newCredit = (credit == null ? 0 : credit) + weight;
+            credits.put(route, newCredit);
+            totalWeight += weight;
+            if(best == null || newCredit > bestCredit) {
+                best = route;
+                bestCredit = newCredit;
+            }
+        }
+        
+        if(best != null)
+            credits.put(best, bestCredit - totalWeight);
+        return best;
+    }
+    
+    private List<T> getList(){
+        try {
+            return (list == null) ? fetchList.call() : list;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    public synchronized void setRouteCondition(RouteCondition<T> condition) {
+        this.condition = condition;
+    }
+}
@@ -0,0 +1,100 @@
+package com.hazeltask.core.concurrent.collections.spill;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A growable ring of longs that can be taken from either end without boxing.
+ * <p>
+ * This is not thread safe.  The owning queue synchronizes access.
+ *
+ * @author jclawson
+ *
+ */
+class LongRing {
+    private long[] items;
+    private int head;
+    private int size;
+
+    LongRing(int capacity) {
+        items = new long[Math.max(2, capacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void addLast(long value) {
+        if(size == items.length)
+            grow();
+        items[index(size)] = value;
+        size++;
+    }
+
+    long get(int i) {
+        if(i < 0 || i >= size)
+            throw new IndexOutOfBoundsException();
+        return items[index(i)];
+    }
+
+    long peekFirst() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        return items[head];
+    }
+
+    long pollFirst() {
+        long value = peekFirst();
+        head = index(1);
+        size--;
+        return value;
+    }
+
+    long pollLast() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        size--;
+        return items[index(size)];
+    }
+
+    /**
+     * Removes from the middle by shifting everything after it
+     */
+    void removeAt(int i) {
+        if(i < 0 || i >= size)
+            throw new IndexOutOfBoundsException();
+        for(int j=i; j<size-1; j++) {
+            items[index(j)] = items[index(j+1)];
+        }
+        size--;
+    }
+
+    long[] toArray() {
+        return toArray(size);
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private int index(int i) {
+        return (head + i) % items.length;
+    }
+
+    private void grow() {
+        items = toArray(items.length * 2);
+        head = 0;
+    }
+
+    private long[] toArray(int capacity) {
+        long[] result = new long[capacity];
+        for(int i=0; i<size; i++) {
+            result[i] = items[index(i)];
+        }
+        return result;
+    }
+}
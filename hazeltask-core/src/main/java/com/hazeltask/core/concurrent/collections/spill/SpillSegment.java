@@ -0,0 +1,176 @@
+package com.hazeltask.core.concurrent.collections.spill;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * An append only file that is memory mapped in full when it is created.  Records are
+ * written at the end and read back by position.  A removed record is marked by flipping
+ * the bits of its length, so a stale position is never read as live.
+ * <p>
+ * Record layout: [int payload length][long created at][long id most][long id least][payload]
+ * <p>
+ * This is not thread safe.  The SpillStore synchronizes appends and removals since a
+ * segment is shared by every group.  A live record is only read by the queue that owns 
+ * it, and the segment can't be deleted while it has live records.
+ *
+ * @author jclawson
+ *
+ */
+class SpillSegment {
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 8 + 8;
+
+    private final int id;
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    //records that were written and not yet read back or removed
+    private int liveCount;
+    private long liveBytes;
+
+    SpillSegment(int id, File file, int size) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    boolean hasRoom(int payloadLength) {
+        return buffer.capacity() - writePosition >= RECORD_HEADER_SIZE + payloadLength;
+    }
+
+    /**
+     * @return the number of bytes used by the record
+     */
+    int append(long createdAt, UUID id, byte[] payload) {
+        int position = writePosition;
+        buffer.putInt(position, payload.length);
+        buffer.putLong(position + 4, createdAt);
+        buffer.putLong(position + 12, id.getMostSignificantBits());
+        buffer.putLong(position + 20, id.getLeastSignificantBits());
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.put(payload);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        writePosition += recordSize;
+        liveCount++;
+        liveBytes += recordSize;
+        return recordSize;
+    }
+    
+    int getId() {
+        return id;
+    }
+    
+    int getLiveCount() {
+        return liveCount;
+    }
+    
+    long getLiveBytes() {
+        return liveBytes;
+    }
+    
+    /**
+     * The record was read back or removed
+     */
+    void remove(int position) {
+        int length = buffer.getInt(position);
+        if(length >= 0) {
+            buffer.putInt(position, ~length);
+            liveCount--;
+            liveBytes -= RECORD_HEADER_SIZE + length;
+        }
+    }
+    
+    boolean isRemoved(int position) {
+        return buffer.getInt(position) < 0;
+    }
+    
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int recordSize(int position) {
+        return RECORD_HEADER_SIZE + length(position);
+    }
+    
+    private int length(int position) {
+        int length = buffer.getInt(position);
+        return length < 0 ? ~length : length;
+    }
+
+    long createdAt(int position) {
+        return buffer.getLong(position + 4);
+    }
+
+    UUID id(int position) {
+        return new UUID(buffer.getLong(position + 12), buffer.getLong(position + 20));
+    }
+
+    boolean hasId(int position, UUID id) {
+        return buffer.getLong(position + 12) == id.getMostSignificantBits()
+            && buffer.getLong(position + 20) == id.getLeastSignificantBits();
+    }
+
+    byte[] payload(int position) {
+        byte[] payload = new byte[length(position)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(payload);
+        return payload;
+    }
+
+    /**
+     * Unmaps the buffer, closes the file and deletes it.  Nothing may read this segment
+     * afterwards.
+     */
+    void delete() {
+        close();
+        if(buffer != null) {
+            unmap(buffer);
+            buffer = null;
+        }
+        file.delete();
+    }
+    
+    /**
+     * Java has no public way to unmap a buffer, so we call its cleaner the way the jdk
+     * does internally.  If this jdk doesn't have one the mapping goes away when the 
+     * buffer is collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if(cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Throwable t) {
+            //leave it for the garbage collector
+        }
+    }
+
+    private void close() {
+        if(raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                //nothing we can do, the file is deleted next anyway
+            }
+            raf = null;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.hazeltask.core.concurrent.collections.spill;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hazeltask.core.concurrent.collections.tracked.ItemCodec;
+
+/**
+ * Shared by all the SpillableTrackedQueues of a grouped queue.  It owns the spill
+ * directory and the segment files, and decides when queues should start spilling.
+ * <p>
+ * Every group appends to the same segment so a group with a few spilled items doesn't
+ * map a segment of its own.  A spilled record is addressed by a long with the segment id
+ * in the high int and its position in the low int.  A segment is deleted once none of
+ * its records are live.
+ * <p>
+ * Queues spill once the bytes held in memory pass the budget.  Encoding every item to
+ * count its bytes would double the cost of an offer, so the bytes are estimated from the
+ * number of items in memory and the average encoded size of a sample of them.
+ * <p>
+ * Spilled items are not durable.  Any segment files left over from a previous run are
+ * deleted when the store is created.  Every spilled task is still in the write ahead log
+ * owned by this member, so task recovery sends them out again once this member leaves
+ * the cluster.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class SpillStore<E> {
+    private static final String FILE_PREFIX = "hazeltask-spill-";
+    private static final String FILE_SUFFIX = ".seg";
+    //encode one in this many items kept in memory to estimate their size
+    private static final int SAMPLE_RATE = 64;
+
+    private final File directory;
+    private final ItemCodec<E> codec;
+    private final int segmentSize;
+    private final long maxInMemoryBytes;
+    private final double maxHeapUsage;
+    private final int minHeadSize;
+
+    private final AtomicLong inMemoryItems = new AtomicLong();
+    private final AtomicLong spilledItems = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong sampledItems = new AtomicLong();
+    private final AtomicLong sampledBytes = new AtomicLong();
+
+    //live records are read without the lock, the segment can't be deleted under them
+    private final ConcurrentMap<Integer, SpillSegment> segments = new ConcurrentHashMap<Integer, SpillSegment>();
+    //guarded by this
+    private SpillSegment appendSegment;
+    private int segmentSequence;
+
+    /**
+     * @param directory - where segment files are written
+     * @param codec
+     * @param segmentSize - the size of each memory mapped segment file
+     * @param maxInMemoryBytes - start spilling once the items held in memory are estimated to use this many bytes
+     * @param maxHeapUsage - start spilling once this fraction of the max heap is used.  0 to disable.
+     * @param minHeadSize - a group always keeps at least this many items in memory
+     *                      so small groups are never spilled
+     */
+    public SpillStore(File directory, ItemCodec<E> codec, int segmentSize, long maxInMemoryBytes, double maxHeapUsage, int minHeadSize) {
+        if(segmentSize <= SpillSegment.RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException("segmentSize is too small");
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("Unable to create spill directory "+directory);
+
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.maxInMemoryBytes = maxInMemoryBytes;
+        this.maxHeapUsage = maxHeapUsage;
+        this.minHeadSize = minHeadSize;
+
+        deleteSegmentFiles();
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }
+        });
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return true if memory thresholds are exceeded and a large group should send new
+     *         items to disk
+     */
+    boolean isOverThreshold() {
+        if(getInMemoryBytes() >= maxInMemoryBytes)
+            return true;
+        if(maxHeapUsage > 0) {
+            Runtime runtime = Runtime.getRuntime();
+            long used = runtime.totalMemory() - runtime.freeMemory();
+            return used >= runtime.maxMemory() * maxHeapUsage;
+        }
+        return false;
+    }
+
+    /**
+     * Called for items about to be kept in memory so we know roughly how big they are
+     */
+    void sample(E e) {
+        if(offered.getAndIncrement() % SAMPLE_RATE == 0)
+            addSample(codec.encode(e).length);
+    }
+
+    private void addSample(int bytes) {
+        sampledItems.incrementAndGet();
+        sampledBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @return the record address
+     */
+    synchronized long append(long createdAt, UUID id, byte[] payload) throws IOException {
+        SpillSegment segment = appendSegment;
+        if(segment == null || !segment.hasRoom(payload.length)) {
+            segment = createSegment(payload.length);
+            segments.put(segment.getId(), segment);
+            //the full one is deleted once its last record is released
+            appendSegment = segment;
+        }
+
+        int position = segment.getWritePosition();
+        int recordSize = segment.append(createdAt, id, payload);
+        addSpilled(1, recordSize);
+        addSample(payload.length);
+        return ((long) segment.getId() << 32) | position;
+    }
+
+    private SpillSegment createSegment(int minPayloadSize) throws IOException {
+        int size = Math.max(segmentSize, SpillSegment.RECORD_HEADER_SIZE + minPayloadSize);
+        int id = ++segmentSequence;
+        File file = new File(directory, FILE_PREFIX + id + FILE_SUFFIX);
+        return new SpillSegment(id, file, size);
+    }
+
+    /**
+     * Reads and releases a live record
+     */
+    byte[] take(long record) {
+        byte[] payload = segmentOf(record).payload(positionOf(record));
+        release(record);
+        return payload;
+    }
+
+    /**
+     * The record was read back or removed.  Its segment is deleted if it was the last one.
+     */
+    synchronized void release(long record) {
+        SpillSegment segment = segmentOf(record);
+        int position = positionOf(record);
+        addSpilled(-1, -segment.recordSize(position));
+        segment.remove(position);
+        if(segment.getLiveCount() == 0) {
+            if(segment == appendSegment)
+                appendSegment = null;
+            delete(segment);
+        }
+    }
+
+    private void delete(SpillSegment segment) {
+        segments.remove(segment.getId());
+        segment.delete();
+    }
+
+    /**
+     * Only for live records
+     */
+    long createdAt(long record) {
+        return segmentOf(record).createdAt(positionOf(record));
+    }
+
+    /**
+     * Only for live records
+     */
+    boolean hasId(long record, UUID id) {
+        return segmentOf(record).hasId(positionOf(record), id);
+    }
+
+    /**
+     * For records that may have been released since they were seen
+     *
+     * @return null if the record is no longer live
+     */
+    synchronized byte[] payloadIfLive(long record) {
+        SpillSegment segment = segments.get((int) (record >>> 32));
+        if(segment == null || segment.isRemoved(positionOf(record)))
+            return null;
+        return segment.payload(positionOf(record));
+    }
+
+    private SpillSegment segmentOf(long record) {
+        return segments.get((int) (record >>> 32));
+    }
+
+    private static int positionOf(long record) {
+        return (int) record;
+    }
+
+    ItemCodec<E> getCodec() {
+        return codec;
+    }
+
+    int getMinHeadSize() {
+        return minHeadSize;
+    }
+
+    void addInMemory(long delta) {
+        inMemoryItems.addAndGet(delta);
+    }
+
+    private void addSpilled(long items, long bytes) {
+        spilledItems.addAndGet(items);
+        spilledBytes.addAndGet(bytes);
+    }
+
+    public long getInMemoryItems() {
+        return inMemoryItems.get();
+    }
+
+    /**
+     * @return an estimate of the encoded bytes of the items held in memory
+     */
+    public long getInMemoryBytes() {
+        long samples = sampledItems.get();
+        if(samples == 0)
+            return 0;
+        return inMemoryItems.get() * (sampledBytes.get() / samples);
+    }
+
+    public long getSpilledItems() {
+        return spilledItems.get();
+    }
+
+    /**
+     * @return the bytes of live records in segment files
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+}
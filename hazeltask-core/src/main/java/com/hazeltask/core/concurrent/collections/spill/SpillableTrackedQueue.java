@@ -0,0 +1,368 @@
+package com.hazeltask.core.concurrent.collections.spill;
+
+import java.io.IOException;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
+import com.hazeltask.core.concurrent.collections.tracked.ItemCodec;
+import com.hazeltask.core.concurrent.collections.tracked.TrackCreated;
+
+/**
+ * A group queue that keeps its oldest items in an in memory head queue and moves its
+ * tail to append only memory mapped segment files when the SpillStore is over its
+ * memory threshold.
+ * <p>
+ * A group only spills once its head holds at least minHeadSize items, so small groups
+ * stay entirely in memory and every group always has items ready for the round robin.
+ * Once a group has spilled, new items are appended to disk behind the spilled items
+ * unless they are older than the oldest spilled item.  That keeps everything in the
+ * head older than everything on disk.  As the head drains it is refilled from disk.
+ * <p>
+ * The address of every live spilled record is kept in spill order in a ring of longs,
+ * so spilled items are read back from its front and the newest are drained from its 
+ * back without scanning the segments.  The segments are shared with the other groups
+ * through the SpillStore.
+ * <p>
+ * If the head can't take an item read back from disk (ex: off heap capacity) it is held
+ * in memory between the head and the disk until the head has room.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class SpillableTrackedQueue<E extends TrackCreated> extends AbstractQueue<E> implements ITrackedQueue<E> {
+    private final ITrackedQueue<E> head;
+    private final SpillStore<E> store;
+    private final ItemCodec<E> codec;
+
+    //record addresses in the store
+    private final LongRing spilled = new LongRing(16);
+    //read back from disk but the head had no room for it
+    private E front;
+
+    private volatile Long lastAddedTime = null;
+    private volatile Long lastRemovedTime = null;
+
+    public SpillableTrackedQueue(ITrackedQueue<E> head, SpillStore<E> store) {
+        this.head = head;
+        this.store = store;
+        this.codec = store.getCodec();
+    }
+
+    @Override
+    public synchronized boolean offer(E e) {
+        if(e == null)
+            throw new NullPointerException();
+
+        boolean toHead;
+        if(spilled.isEmpty()) {
+            toHead = head.size() < store.getMinHeadSize() || !store.isOverThreshold();
+        } else {
+            //recovered or stolen tasks may be older than what is on disk
+            toHead = e.getTimeCreated() < getOldestSpilledTime();
+        }
+
+        boolean result = (toHead || !spill(e)) ? offerToHead(e) : true;
+        if(result)
+            lastAddedTime = System.currentTimeMillis();
+        return result;
+    }
+
+    private boolean offerToHead(E e) {
+        store.sample(e);
+        if(head.offer(e)) {
+            store.addInMemory(1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return false if we were unable to write to disk
+     */
+    private boolean spill(E e) {
+        try {
+            spilled.addLast(store.append(e.getTimeCreated(), codec.getId(e), codec.encode(e)));
+        } catch (IOException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized E poll() {
+        E e = head.poll();
+        if(e != null) {
+            store.addInMemory(-1);
+        } else if(front != null) {
+            e = takeFront();
+        } else if(!spilled.isEmpty()) {
+            //the head may not be able to take items (ex: off heap capacity), so
+            //hand out the next spilled item directly
+            e = readNextSpilled();
+        }
+
+        if(!spilled.isEmpty() && head.size() <= store.getMinHeadSize() / 2)
+            refill();
+
+        lastRemovedTime = System.currentTimeMillis();
+        return e;
+    }
+
+    /**
+     * Moves spilled items into the head until it holds minHeadSize items
+     */
+    private void refill() {
+        if(front != null) {
+            if(!head.offer(front))
+                return;
+            //already counted in memory
+            front = null;
+        }
+        
+        int target = Math.max(1, store.getMinHeadSize());
+        while(!spilled.isEmpty() && head.size() < target) {
+            E e = readNextSpilled();
+            if(!offerToHead(e)) {
+                //hold it until the head has room instead of losing it
+                front = e;
+                store.addInMemory(1);
+                return;
+            }
+        }
+    }
+
+    private E takeFront() {
+        E e = front;
+        front = null;
+        store.addInMemory(-1);
+        return e;
+    }
+
+    /**
+     * Reads and consumes the oldest spilled item.  There must be one.
+     */
+    private E readNextSpilled() {
+        return codec.decode(store.take(spilled.pollFirst()));
+    }
+
+    private long getOldestSpilledTime() {
+        if(spilled.isEmpty())
+            return Long.MAX_VALUE;
+        return store.createdAt(spilled.peekFirst());
+    }
+
+    @Override
+    public synchronized E peek() {
+        E e = head.peek();
+        if(e == null && (front != null || !spilled.isEmpty())) {
+            refill();
+            e = head.peek();
+            if(e == null)
+                e = front;
+        }
+        return e;
+    }
+
+    @Override
+    public synchronized int size() {
+        return head.size() + (front == null ? 0 : 1) + spilled.size();
+    }
+
+    /**
+     * Spilled items are found by id without reading them back
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized boolean remove(Object o) {
+        if(o == null)
+            return false;
+        if(head.remove(o)) {
+            store.addInMemory(-1);
+            lastRemovedTime = System.currentTimeMillis();
+            return true;
+        }
+        UUID id = codec.getId((E) o);
+        if(front != null && codec.getId(front).equals(id)) {
+            takeFront();
+            lastRemovedTime = System.currentTimeMillis();
+            return true;
+        }
+
+        long createdAt = ((E) o).getTimeCreated();
+        for(int i=0; i<spilled.size(); i++) {
+            long record = spilled.get(i);
+            if(store.createdAt(record) == createdAt && store.hasId(record, id)) {
+                spilled.removeAt(i);
+                store.release(record);
+                lastRemovedTime = System.currentTimeMillis();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Everything on disk is newer than the head, so the newest items are taken from the
+     * back of the ring first.  Only the taken records are read.
+     */
+    public synchronized int drainNewestTo(Collection<? super E> c, int max) {
+        if(max <= 0)
+            return 0;
+        
+        int diskCount = Math.min(max, spilled.size());
+        List<E> fromDisk = new ArrayList<E>(diskCount);
+        for(int i=0; i<diskCount; i++) {
+            fromDisk.add(codec.decode(store.take(spilled.pollLast())));
+        }
+        //they were taken newest first
+        Collections.reverse(fromDisk);
+        
+        //the held item is older than the disk and newer than the head
+        E fromFront = null;
+        if(fromDisk.size() < max && front != null)
+            fromFront = takeFront();
+        
+        int fromHead = 0;
+        int taken = fromDisk.size() + (fromFront == null ? 0 : 1);
+        if(taken < max) {
+            fromHead = head.drainNewestTo(c, max - taken);
+            store.addInMemory(-fromHead);
+        }
+        if(fromFront != null)
+            c.add(fromFront);
+        c.addAll(fromDisk);
+        lastRemovedTime = System.currentTimeMillis();
+        return fromHead + taken;
+    }
+
+    @Override
+    public synchronized void clear() {
+        int headSize = head.size();
+        head.clear();
+        store.addInMemory(-headSize);
+        if(front != null)
+            takeFront();
+        while(!spilled.isEmpty())
+            store.release(spilled.pollLast());
+        lastRemovedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Iterates the head, the held item and then the spilled items in the order they will 
+     * be taken.
+     * Spilled items are decoded as they are reached.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        long[] snapshot;
+        E heldFront;
+        synchronized (this) {
+            snapshot = spilled.toArray();
+            heldFront = front;
+        }
+        return new SpillIterator(head.iterator(), heldFront, snapshot);
+    }
+
+    public synchronized Long getOldestItemTime() {
+        Long oldest = head.getOldestItemTime();
+        if(oldest == null && front != null)
+            return front.getTimeCreated();
+        if(oldest == null && !spilled.isEmpty())
+            return getOldestSpilledTime();
+        return oldest;
+    }
+
+    public Long getLastAddedTime() {
+        return lastAddedTime;
+    }
+
+    public Long getLastRemovedTime() {
+        return lastRemovedTime;
+    }
+
+    /**
+     * @return the number of items in segment files that have not been read back
+     */
+    public synchronized int getSpilledSize() {
+        return spilled.size();
+    }
+
+    private class SpillIterator implements Iterator<E> {
+        private final Iterator<E> headIterator;
+        private E heldFront;
+        private final long[] snapshot;
+        private boolean inHead = true;
+        private int index = 0;
+
+        private E next;
+        private E lastItem;
+        private boolean lastInHead;
+
+        SpillIterator(Iterator<E> headIterator, E heldFront, long[] snapshot) {
+            this.headIterator = headIterator;
+            this.heldFront = heldFront;
+            this.snapshot = snapshot;
+        }
+
+        public boolean hasNext() {
+            if(next != null)
+                return true;
+            if(inHead) {
+                if(headIterator.hasNext())
+                    return true;
+                inHead = false;
+            }
+            if(heldFront != null) {
+                next = heldFront;
+                heldFront = null;
+                return true;
+            }
+            while(index < snapshot.length) {
+                //skip records read back or removed since the snapshot
+                byte[] payload = store.payloadIfLive(snapshot[index++]);
+                if(payload != null) {
+                    next = codec.decode(payload);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public E next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            if(inHead) {
+                lastInHead = true;
+                lastItem = null;
+                return headIterator.next();
+            }
+            lastInHead = false;
+            lastItem = next;
+            next = null;
+            return lastItem;
+        }
+
+        public void remove() {
+            if(lastInHead) {
+                headIterator.remove();
+                store.addInMemory(-1);
+                lastRemovedTime = System.currentTimeMillis();
+                lastInHead = false;
+                return;
+            }
+            if(lastItem == null)
+                throw new IllegalStateException();
+            //it may have been read back into the head since we iterated past it
+            SpillableTrackedQueue.this.remove(lastItem);
+            lastItem = null;
+        }
+    }
+}
@@ -1,9 +1,20 @@
 package com.hazeltask.core.concurrent.collections.tracked;
 
+import java.util.Collection;
 import java.util.Queue;
 
 public interface ITrackedQueue<E> extends Queue<E> {
     public Long getOldestItemTime();
     public Long getLastAddedTime();
     public Long getLastRemovedTime();
+    
+    /**
+     * Remove up to max of the newest items.  The oldest items stay in the queue to be 
+     * polled next.
+     * 
+     * @param c - the items are added oldest first
+     * @param max
+     * @return the number of items removed
+     */
+    public int drainNewestTo(Collection<? super E> c, int max);
 }
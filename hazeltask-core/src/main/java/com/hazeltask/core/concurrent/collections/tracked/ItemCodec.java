@@ -0,0 +1,17 @@
+package com.hazeltask.core.concurrent.collections.tracked;
+
+import java.util.UUID;
+
+/**
+ * Converts queued items to and from bytes for queues that don't keep items on the heap.
+ * The id lets those queues find and remove items without materializing them.
+ * 
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public interface ItemCodec<E> {
+    public UUID getId(E item);
+    public byte[] encode(E item);
+    public E decode(byte[] bytes);
+}
@@ -1,31 +1,59 @@
 package com.hazeltask.core.concurrent.collections.tracked;
 
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
-
-public class TrackedPriorityBlockingQueue<E extends TrackCreated> extends PriorityBlockingQueue<E> implements ITrackedQueue<E> {
-    private static final long serialVersionUID = 1L;
+/**
+ * An unbounded blocking queue ordered by created time.  Items created at the same time
+ * come out in the order they were added.
+ * <p>
+ * It is backed by a sorted set instead of a heap so the newest items can be taken from
+ * the tail without disturbing the rest of the queue.
+ */
+public class TrackedPriorityBlockingQueue<E extends TrackCreated> extends AbstractQueue<E> implements BlockingQueue<E>, ITrackedQueue<E> {
     private volatile Long lastAddedTime = null;
     private volatile Long lastRemovedTime = null;
-    
-    //TODO: make this size configurable to prevent a lot of resizes
-    private static final int DEFAULT_INITIAL_SIZE = 100;
-    
-    private static class TimeCreatedComparator<E extends TrackCreated> implements Comparator<E> {
-        
-        public int compare(E o1, E o2) {
-            Long t1 = o1.getTimeCreated();
-            Long t2 = o2.getTimeCreated();
-            return t1.compareTo(t2);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final TreeSet<Node<E>> items = new TreeSet<Node<E>>(new TimeCreatedComparator<E>());
+    //breaks ties between items created at the same time, guarded by lock
+    private long sequence;
+
+    private static class Node<E extends TrackCreated> {
+        final E item;
+        final long createdAt;
+        final long sequence;
+
+        Node(E item, long sequence) {
+            this.item = item;
+            this.createdAt = item.getTimeCreated();
+            this.sequence = sequence;
         }
     }
-    
-    public TrackedPriorityBlockingQueue() {        
-        super(DEFAULT_INITIAL_SIZE, new TimeCreatedComparator<E>());
+
+    private static class TimeCreatedComparator<E extends TrackCreated> implements Comparator<Node<E>> {
+
+        public int compare(Node<E> o1, Node<E> o2) {
+            if(o1.createdAt != o2.createdAt)
+                return o1.createdAt < o2.createdAt ? -1 : 1;
+            if(o1.sequence != o2.sequence)
+                return o1.sequence < o2.sequence ? -1 : 1;
+            return 0;
+        }
     }
-    
+
     public Long getOldestItemTime() {
         E elem = this.peek();
         if(elem != null)
@@ -36,25 +64,215 @@ public class TrackedPriorityBlockingQueue<E extends TrackCreated> extends Priori
 
     @Override
     public boolean offer(E e) {
-        boolean r = super.offer(e);
+        if(e == null)
+            throw new NullPointerException();
+        lock.lock();
+        try {
+            items.add(new Node<E>(e, sequence++));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
         lastAddedTime = System.currentTimeMillis();
-        return r;
+        return true;
+    }
+
+    public void put(E e) {
+        offer(e);
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
     }
 
     @Override
     public E poll() {
-        E e = super.poll();
+        E e;
+        lock.lock();
+        try {
+            e = dequeue();
+        } finally {
+            lock.unlock();
+        }
         lastRemovedTime = System.currentTimeMillis();
         return e;
     }
 
+    public E take() throws InterruptedException {
+        E e;
+        lock.lockInterruptibly();
+        try {
+            while(items.isEmpty())
+                notEmpty.await();
+            e = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return e;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E e;
+        lock.lockInterruptibly();
+        try {
+            while(items.isEmpty() && nanos > 0)
+                nanos = notEmpty.awaitNanos(nanos);
+            e = dequeue();
+        } finally {
+            lock.unlock();
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return e;
+    }
+
+    private E dequeue() {
+        Node<E> node = items.pollFirst();
+        return node == null ? null : node.item;
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            return items.isEmpty() ? null : items.first().item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return items.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
     @Override
     public boolean remove(Object o) {
-        boolean r = super.remove(o);
+        if(o == null)
+            return false;
+        boolean r = false;
+        lock.lock();
+        try {
+            Iterator<Node<E>> it = items.iterator();
+            while(it.hasNext()) {
+                if(o.equals(it.next().item)) {
+                    it.remove();
+                    r = true;
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
         lastRemovedTime = System.currentTimeMillis();
         return r;
     }
 
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            items.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if(c == null)
+            throw new NullPointerException();
+        if(c == this)
+            throw new IllegalArgumentException();
+        int n = 0;
+        lock.lock();
+        try {
+            while(n < maxElements && !items.isEmpty()) {
+                c.add(items.pollFirst().item);
+                n++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if(n > 0)
+            lastRemovedTime = System.currentTimeMillis();
+        return n;
+    }
+
+    public int drainNewestTo(Collection<? super E> c, int max) {
+        if(max <= 0)
+            return 0;
+        List<E> newest = new ArrayList<E>(Math.min(max, 16));
+        lock.lock();
+        try {
+            while(newest.size() < max && !items.isEmpty()) {
+                newest.add(items.pollLast().item);
+            }
+        } finally {
+            lock.unlock();
+        }
+        //they were taken newest first
+        for(int i=newest.size()-1; i>=0; i--) {
+            c.add(newest.get(i));
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return newest.size();
+    }
+
+    /**
+     * Iterates a snapshot of the queue in created order.  Removing through the iterator
+     * removes the item from the queue if it is still there.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final List<E> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<E>(items.size());
+            for(Node<E> node : items) {
+                snapshot.add(node.item);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return new Iterator<E>() {
+            private int index = 0;
+            private E last;
+
+            public boolean hasNext() {
+                return index < snapshot.size();
+            }
+
+            public E next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                last = snapshot.get(index++);
+                return last;
+            }
+
+            public void remove() {
+                if(last == null)
+                    throw new IllegalStateException();
+                TrackedPriorityBlockingQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
     public Long getLastAddedTime() {
         return lastAddedTime;
     }
@@ -4,7 +4,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -15,18 +18,23 @@ import java.util.concurrent.TimeoutException;
 
 import lombok.extern.slf4j.Slf4j;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.RateLimiter;
 import com.hazelcast.core.Member;
 import com.hazeltask.HazeltaskServiceListener;
 import com.hazeltask.HazeltaskTopology;
 import com.hazeltask.config.ExecutorConfig;
 import com.hazeltask.core.concurrent.collections.router.ListRouter;
+import com.hazeltask.core.concurrent.collections.router.ListRouterFactory;
+import com.hazeltask.core.concurrent.collections.router.WeightedRoundRobinRouter;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.MemberCapacityTimerTask;
 import com.hazeltask.executor.task.TaskIdAdapter;
 
 /**
@@ -39,6 +47,7 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
     private ExecutorConfig<GROUP> executorConfig;
     private final HazeltaskTopology<GROUP>        topology;
     private final ListRouter<Member>       memberRouter;
+    private final MemberCapacityTimerTask<GROUP> memberCapacities;
     
     private final LocalTaskExecutorService<GROUP> localExecutorService;
     
@@ -47,13 +56,20 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
     private CopyOnWriteArrayList<HazeltaskServiceListener<DistributedExecutorService<GROUP>>> listeners = new CopyOnWriteArrayList<HazeltaskServiceListener<DistributedExecutorService<GROUP>>>();
     
     private final IExecutorTopologyService<GROUP>  executorTopologyService;
+    //null unless wal group commit is enabled
+    private final WriteAheadLogBatcher<GROUP>      walBatcher;
     
     private Timer taskAddedTimer;
     private Meter tasksRejected;
     
     //max number of times to try and submit a work before giving up
     private final int MAX_SUBMIT_TRIES = 10;
-    private final int AWAIT_TERMINATION_POLL_INTERVAL = 100;
+    
+    private final RateLimiter recoveryRateLimiter;
+    private final Counter recoveredTasks;
+    private final Counter recoveryBatchFailures;
+    //only written by the recovery pass on the recovery timer thread
+    private volatile int recoveryBacklog;
     
     private boolean isStarted = false;
     private boolean isShutdown = false;
@@ -64,12 +80,22 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
                                       ExecutorConfig<GROUP>            executorConfig, 
                                       DistributedFutureTracker<GROUP>  futureTracker, 
                                       LocalTaskExecutorService<GROUP> localExecutorService,
+                                      WriteAheadLogBatcher<GROUP>     walBatcher,
                                       ExecutorMetrics metrics) {
         this.topology = hcTopology;
         this.executorConfig = executorConfig;
         this.executorTopologyService = executorTopologyService;
+        this.walBatcher = walBatcher;
         
-        this.memberRouter = executorConfig.getLoadBalancingConfig().getMemberRouterFactory().createRouter(new Callable<List<Member>>(){
+        ListRouterFactory<Member> routerFactory;
+        if(executorConfig.getLoadBalancingConfig().isCapacityWeightedRouting()) {
+            memberCapacities = new MemberCapacityTimerTask<GROUP>(executorTopologyService);
+            routerFactory = WeightedRoundRobinRouter.newFactory(memberCapacities);
+        } else {
+            memberCapacities = null;
+            routerFactory = executorConfig.getLoadBalancingConfig().getMemberRouterFactory();
+        }
+        this.memberRouter = routerFactory.createRouter(new Callable<List<Member>>(){
             public List<Member> call() throws Exception {
                 return topology.getReadyMembers();
             }
@@ -88,6 +114,23 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
                 return executorTopologyService.getLocalPendingTaskMapSize();
             }
         });
+        
+        recoveryRateLimiter = executorConfig.getRecoveryRate() > 0 ? RateLimiter.create(executorConfig.getRecoveryRate()) : null;
+        recoveredTasks = metrics.getRecoveredTaskCount().getMetric();
+        recoveryBatchFailures = metrics.getRecoveryBatchFailures().getMetric();
+        metrics.registerRecoveryBacklogGauge(new Gauge<Integer>(){
+            @Override
+            public Integer getValue() {
+                return recoveryBacklog;
+            }
+        });
+    }
+
+    /**
+     * @return null unless capacity weighted routing is enabled
+     */
+    public MemberCapacityTimerTask<GROUP> getMemberCapacities() {
+        return this.memberCapacities;
     }
 
     public ExecutorConfig<?> getExecutorConfig() {
@@ -98,7 +141,8 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
     public void execute(Runnable command) {
         Timer.Context ctx = taskAddedTimer.time();
         try {
-            submitHazeltaskTask(createHazeltaskTaskWrapper(command), false);
+            //a HazeltaskTask passed back in may already be in the write ahead log
+            submitHazeltaskTask(createHazeltaskTaskWrapper(command), false, !(command instanceof HazeltaskTask));
         } finally {
             ctx.stop();
         }
@@ -127,12 +171,18 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
             //TODO: is everything shutdown?
             List<HazeltaskTask<GROUP>> tasks = null;
             if(!executorConfig.isDisableWorkers()) {
-                if(shutdownNow)
+                if(shutdownNow) {
                     tasks = ((LocalTaskExecutorService<GROUP>)this.localExecutorService).shutdownNow();
-                else
+                } else {
+                    if(executorConfig.isShutdownDrainEnabled())
+                        drainLocalQueue();
                     this.localExecutorService.shutdown();
+                }
             }
             
+            if(walBatcher != null)
+                walBatcher.close();
+            
             for(HazeltaskServiceListener<DistributedExecutorService<GROUP>> listener : listeners)
                 listener.onEndShutdown(this);
             
@@ -141,6 +191,49 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
         return Collections.emptyList();
     }
 
+    /**
+     * Hand the tasks still queued on this member to the other ready members.  We have 
+     * already left the ready members, so each task is resubmitted through the normal 
+     * distribution path under a new epoch.  A task that can't be handed off stays in the 
+     * WAL under the member it was last sent to and is recovered from there, it is never 
+     * taken back here because that member may already be running it.  If no other member 
+     * is ready the tasks stay in the local queue.
+     */
+    private void drainLocalQueue() {
+        int batchSize = executorConfig.getShutdownDrainBatchSize();
+        int drained = 0;
+        int failed = 0;
+        List<HazeltaskTask<GROUP>> batch;
+        while(!(batch = localExecutorService.drainQueue(batchSize)).isEmpty()) {
+            if(topology.getReadyMembers().isEmpty()) {
+                log.warn("No other members are ready to take the remaining queued tasks");
+                requeueLocally(batch);
+                break;
+            }
+            
+            for(HazeltaskTask<GROUP> task : batch) {
+                try {
+                    if(submitHazeltaskTask(task, true))
+                        drained++;
+                    else
+                        failed++;
+                } catch (RuntimeException e) {
+                    log.error("Unable to hand off queued task "+task.getId(), e);
+                    failed++;
+                }
+            }
+        }
+        log.info("Handed off "+drained+" queued tasks to other members");
+        if(failed > 0)
+            log.warn(failed+" queued tasks could not be handed off, they will be recovered from the write ahead log");
+    }
+    
+    private void requeueLocally(List<HazeltaskTask<GROUP>> tasks) {
+        for(HazeltaskTask<GROUP> task : tasks) {
+            localExecutorService.execute(task);
+        }
+    }
+
     @Override
     public boolean isShutdown() {
         return isShutdown;
@@ -160,20 +253,7 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
         if(futureTracker == null)
             throw new IllegalStateException("FutureTracker is null");
 
-        long elapsed = 0;
-        long ms = unit.toMillis(timeout);
-        long interval = Math.min(AWAIT_TERMINATION_POLL_INTERVAL, ms);
-
-        do {
-            if(futureTracker.size() == 0) 
-                return true;
-
-            Thread.sleep(interval);
-            elapsed += interval;
-
-        } while(elapsed < ms);
-
-        return false;
+        return futureTracker.awaitEmpty(timeout, unit);
     }
 
     @Override
@@ -184,8 +264,9 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
                 throw new IllegalStateException("FutureTracker is null");
             
             HazeltaskTask<GROUP> taskWrapper = createHazeltaskTaskWrapper(task);
+            taskWrapper.setReplyRequired(true);
             DistributedFuture<GROUP, T> future = futureTracker.createFuture(taskWrapper);
-            if(!submitHazeltaskTask(taskWrapper, false)) {
+            if(!submitTrackedTask(taskWrapper, true)) {
                 //remove future from tracker, error out future with duplicate exception
                 //i hate this... it would be a cool feature to attach this future to the 
                 //work in progress.  its easier to just cancel it for now
@@ -215,23 +296,30 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
     @SuppressWarnings("unchecked")
     private HazeltaskTask<GROUP> createHazeltaskTaskWrapper(Runnable task){
         if(task instanceof HazeltaskTask) {
-            ((HazeltaskTask<GROUP>) task).updateCreatedTime();
-            return (HazeltaskTask<GROUP>) task;
+            HazeltaskTask<GROUP> hazeltaskTask = (HazeltaskTask<GROUP>) task;
+            hazeltaskTask.updateCreatedTime();
+            if(hazeltaskTask.getOrigin() == null)
+                hazeltaskTask.setOrigin(topology.getLocalMember().getUuid());
+            return hazeltaskTask;
         } else {
             validateTask(task);            
-            return new HazeltaskTask<GROUP>(UUID.randomUUID(), 
+            HazeltaskTask<GROUP> hazeltaskTask = new HazeltaskTask<GROUP>(UUID.randomUUID(), 
                                      taskIdAdapter.getTaskGroup(task), 
                                      taskIdAdapter.getTaskInfo(task),
                                      task);
+            hazeltaskTask.setOrigin(topology.getLocalMember().getUuid());
+            return hazeltaskTask;
         }
     }
     
     private HazeltaskTask<GROUP> createHazeltaskTaskWrapper(Callable<?> task) {
         validateTask(task); 
-        return new HazeltaskTask<GROUP>(UUID.randomUUID(), 
+        HazeltaskTask<GROUP> hazeltaskTask = new HazeltaskTask<GROUP>(UUID.randomUUID(), 
                                  taskIdAdapter.getTaskGroup(task), 
                                  taskIdAdapter.getTaskGroup(task),
                                  task);
+        hazeltaskTask.setOrigin(topology.getLocalMember().getUuid());
+        return hazeltaskTask;
     }
 
     @Override
@@ -252,15 +340,38 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
                 throw new IllegalStateException("FutureTracker is null");
             
             HazeltaskTask<GROUP> taskWrapper = createHazeltaskTaskWrapper(task);
+            taskWrapper.setReplyRequired(true);
             DistributedFuture<GROUP, ?> future = futureTracker.createFuture(taskWrapper);
-            submitHazeltaskTask(taskWrapper, false);
+            submitTrackedTask(taskWrapper, !(task instanceof HazeltaskTask));
             return future;
         } finally {
             ctx.stop();
         }
     }
     
-    public boolean submitHazeltaskTask(HazeltaskTask<GROUP> wrapper, boolean isResubmitting) {      
+    /**
+     * The caller never gets the future if the submit throws (ex: the write ahead log 
+     * batch failed), so it is failed and removed instead of waiting in the tracker until 
+     * it expires.
+     */
+    private boolean submitTrackedTask(HazeltaskTask<GROUP> taskWrapper, boolean isNewTaskId) {
+        try {
+            return submitHazeltaskTask(taskWrapper, false, isNewTaskId);
+        } catch (RuntimeException e) {
+            futureTracker.errorFuture(taskWrapper.getId(), e);
+            throw e;
+        }
+    }
+    
+    public boolean submitHazeltaskTask(HazeltaskTask<GROUP> wrapper, boolean isResubmitting) {
+        return submitHazeltaskTask(wrapper, isResubmitting, false);
+    }
+    
+    /**
+     * @param isNewTaskId - true if the task id was just generated so the task can't be in the 
+     *                      write ahead log yet.  Only these go through wal group commit.
+     */
+    private boolean submitHazeltaskTask(HazeltaskTask<GROUP> wrapper, boolean isResubmitting, boolean isNewTaskId) {      
         
         //WorkId workKey = wrapper.getWorkId();
         boolean executeTask = true;
@@ -271,15 +382,21 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
          */
         int tries = 0;
         while(++tries <= MAX_SUBMIT_TRIES) {
+            //the write ahead log records who we hand the task to so it can be recovered 
+            //as soon as that member leaves
+            Member m = memberRouter.next();
+            wrapper.setOwner(m == null ? null : m.getUuid());
             if(isResubmitting) {
                 wrapper.setSubmissionCount(wrapper.getSubmissionCount()+1);
                 executorTopologyService.addPendingTask(wrapper, true);
+            } else if(walBatcher != null && isNewTaskId) {
+                //blocks until the task's group is written
+                walBatcher.add(wrapper);
             } else {
                 executeTask = executorTopologyService.addPendingTask(wrapper, false);
             }
             
             if(executeTask) {
-                Member m = memberRouter.next();
                 if(m == null) {
                     log.warn("Work submitted to writeAheadLog but no members are online to do the work.");
                     tasksRejected.mark();
@@ -306,6 +423,89 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
         tasksRejected.mark();
         throw new RuntimeException("Unable to submit work to nodes. I tried "+MAX_SUBMIT_TRIES+" times.");
     }
+    
+    /**
+     * Hand lost tasks from our part of the write ahead log to new owners.  Each task is 
+     * reassigned in place on its partition, then the tasks are sent to their new owners 
+     * in batches.  If a batch can't be sent its tasks are resubmitted one at a time.
+     * <p>
+     * Tasks are reassigned no faster than the recovery rate.  The member router picks the 
+     * new owners so capacity weighted routing spreads them by capacity.
+     * 
+     * @param taskIds - tasks that may be lost
+     * @param createdBefore - only tasks created before this are lost
+     * @param liveOwners - uuid of each member still in the cluster -> the tasks it owns are 
+     *                     only lost if they were created before this
+     * @return the number of tasks recovered
+     */
+    public int recoverPendingTasks(Collection<UUID> taskIds, long createdBefore, Map<String, Long> liveOwners) {
+        Map<Member, List<HazeltaskTask<GROUP>>> batches = new HashMap<Member, List<HazeltaskTask<GROUP>>>();
+        int recoveryBatchSize = executorConfig.getRecoveryBatchSize();
+        int recovered = 0;
+        recoveryBacklog = taskIds.size();
+        try {
+            for(UUID taskId : taskIds) {
+                recoveryBacklog--;
+                if(recoveryRateLimiter != null)
+                    recoveryRateLimiter.acquire();
+                
+                Member member = memberRouter.next();
+                if(member == null) {
+                    log.warn("No members are online to take the recovered tasks");
+                    break;
+                }
+                
+                HazeltaskTask<GROUP> task;
+                try {
+                    task = executorTopologyService.reassignPendingTask(taskId, createdBefore, liveOwners, member);
+                } catch (RuntimeException e) {
+                    //still lost, the next pass tries again
+                    log.error("Unable to reassign task "+taskId, e);
+                    continue;
+                }
+                if(task == null)
+                    continue;
+                recovered++;
+                recoveredTasks.inc();
+                
+                List<HazeltaskTask<GROUP>> batch = batches.get(member);
+                if(batch == null) {
+                    batch = new ArrayList<HazeltaskTask<GROUP>>();
+                    batches.put(member, batch);
+                }
+                batch.add(task);
+                if(batch.size() >= recoveryBatchSize) {
+                    batches.remove(member);
+                    sendRecoveredTasks(batch, member);
+                }
+            }
+        } finally {
+            //these are reassigned already, nobody else recovers them while the new owner is up
+            recoveryBacklog = 0;
+            for(Entry<Member, List<HazeltaskTask<GROUP>>> batch : batches.entrySet()) {
+                sendRecoveredTasks(batch.getValue(), batch.getKey());
+            }
+        }
+        return recovered;
+    }
+    
+    private void sendRecoveredTasks(List<HazeltaskTask<GROUP>> batch, Member member) {
+        try {
+            executorTopologyService.sendRecoveredTasks(batch, member);
+        } catch (Exception e) {
+            //the write ahead log says the member owns these now, put them somewhere that works
+            recoveryBatchFailures.inc();
+            log.error("Unable to send "+batch.size()+" recovered tasks to "+member+", resubmitting them one at a time", e);
+            for(HazeltaskTask<GROUP> task : batch) {
+                try {
+                    submitHazeltaskTask(task, true);
+                } catch (RuntimeException e1) {
+                    //its owner doesn't hold it, so a later pass finds it lost again
+                    log.error("Unable to resubmit recovered task "+task.getId(), e1);
+                }
+            }
+        }
+    }
 
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
             throws InterruptedException {
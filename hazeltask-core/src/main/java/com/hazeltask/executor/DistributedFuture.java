@@ -19,6 +19,17 @@ public class DistributedFuture<GROUP extends Serializable, V> extends AbstractFu
     private final GROUP group;
     private final UUID taskId;
     
+    //links into the DistributedFutureTracker's timing wheel, guarded by the wheel
+    DistributedFuture<GROUP, ?> wheelPrev;
+    DistributedFuture<GROUP, ?> wheelNext;
+    long wheelTick = FutureTimingWheel.UNSCHEDULED;
+    
+    //links into the DistributedFutureTracker's partition index, guarded by the partition's lock
+    DistributedFuture<GROUP, ?> partitionPrev;
+    DistributedFuture<GROUP, ?> partitionNext;
+    boolean partitionLinked;
+    private int partitionId = -1;
+    
     public DistributedFuture(IExecutorTopologyService<GROUP> topologyService, GROUP group, UUID taskId) {
         createdTime = System.currentTimeMillis();
         this.group = group;
@@ -61,4 +72,15 @@ public class DistributedFuture<GROUP extends Serializable, V> extends AbstractFu
     UUID getTaskId() {
     	return this.taskId; 
     }
+    
+    /**
+     * @return the partition of the task's pending task entry or -1 if it is not known
+     */
+    int getPartitionId() {
+        return this.partitionId;
+    }
+    
+    void setPartitionId(int partitionId) {
+        this.partitionId = partitionId;
+    }
 }
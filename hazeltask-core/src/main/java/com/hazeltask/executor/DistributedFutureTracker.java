@@ -1,62 +1,94 @@
 package com.hazeltask.executor;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import lombok.extern.slf4j.Slf4j;
 
 import com.codahale.metrics.Histogram;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalCause;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import com.hazelcast.core.Message;
 import com.hazelcast.core.MessageListener;
 import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.core.concurrent.collections.ConcurrentUuidMap;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.hazelcast.HazelcastPartitionManager;
 import com.hazeltask.executor.metrics.LocalFuturesWaitingGauge;
 import com.hazeltask.executor.task.HazeltaskTask;
 import com.hazeltask.executor.task.TaskResponse;
 import com.hazeltask.executor.task.TaskResponse.Status;
 
+/**
+ * Tracks the futures of tasks submitted by this member until their response arrives.
+ * <p>
+ * Futures are kept in a ConcurrentUuidMap so finding the future for a response does not
+ * allocate.  No future waits longer than the maximumFutureWaitTime.  They are expired by 
+ * timing wheels that are advanced by the task from {@link #createExpiryTask()} once a tick, 
+ * and as futures are created, so expiring futures never requires a sweep over all of them.
+ * <p>
+ * When a HazelcastPartitionManager is given, futures are also indexed by the partition
+ * of their pending task entry so a lost partition only errors its own futures.
+ * 
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
 @Slf4j
 public class DistributedFutureTracker<GROUP extends Serializable> implements MessageListener<TaskResponse<Serializable>> {
-    private Cache<UUID, DistributedFuture<GROUP, Serializable>> futures;
+    private static final int WHEEL_STRIPES = 16;
+    private static final int WHEEL_SIZE = 512;
+    
+    private final ConcurrentUuidMap<DistributedFuture<GROUP, Serializable>> futures = new ConcurrentUuidMap<DistributedFuture<GROUP, Serializable>>();
+    private final FutureTimingWheel<GROUP>[] wheels;
+    private final long maximumFutureWaitTime;
+    private final AtomicLong nextExpireTime;
+    private final HazelcastPartitionManager partitionManager;
+    private final FuturePartitionIndex<GROUP> partitionIndex;
     
     private final Histogram futureWaitTimeHistogram;
     private final IExecutorTopologyService<GROUP> topologyService;
     
+    private final Lock emptyLock = new ReentrantLock();
+    private final Condition emptyCondition = emptyLock.newCondition();
+    
     /**
      * 
      * @param metrics (nullable)
      */
     public DistributedFutureTracker(final IExecutorTopologyService<GROUP> topologyService, ExecutorMetrics metrics, ExecutorConfig<GROUP> config) {
+        this(topologyService, metrics, config, null);
+    }
+    
+    /**
+     * 
+     * @param metrics (nullable)
+     * @param partitionManager (nullable) - futures are not indexed by partition without it
+     */
+    @SuppressWarnings("unchecked")
+    public DistributedFutureTracker(final IExecutorTopologyService<GROUP> topologyService, ExecutorMetrics metrics, ExecutorConfig<GROUP> config, HazelcastPartitionManager partitionManager) {
         this.topologyService = topologyService;
-        futures = CacheBuilder.newBuilder()
-                //no future will wait for more than this time
-                .expireAfterAccess(config.getMaximumFutureWaitTime(), TimeUnit.MILLISECONDS)
-                .removalListener(new RemovalListener<UUID, DistributedFuture<GROUP, Serializable>>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<UUID, DistributedFuture<GROUP, Serializable>> notification) {
-                        if(notification.getCause() == RemovalCause.EXPIRED) {
-                        	DistributedFuture<GROUP, Serializable> future = notification.getValue();
-                            long waitTimeMillis = System.currentTimeMillis() - future.getCreatedTime();
-                            notification.getValue().setException(new TimeoutException("Future timed out waiting.  Waited "+(TimeUnit.MILLISECONDS.toMinutes(waitTimeMillis))+" minutes"));
-                            
-                            topologyService.cancelTask(future.getGroup(), future.getTaskId()); 
-                            topologyService.removePendingTask(future.getTaskId());
-                        } else if(notification.getCause() == RemovalCause.COLLECTED) {
-                            //future was GC'd because we didn't want to track it
-                            log.debug("Future "+notification.getKey()+" was garabge collected and removed from the tracker");
-                        }
-                    }
-                 })
-                .build();
+        this.partitionManager = partitionManager;
+        this.partitionIndex = (partitionManager != null) ? new FuturePartitionIndex<GROUP>(partitionManager.getPartitionCount()) : null;
+        this.maximumFutureWaitTime = config.getMaximumFutureWaitTime();
+        
+        //no future will wait for more than maximumFutureWaitTime plus one tick
+        long tickMillis = Math.max(1, maximumFutureWaitTime / WHEEL_SIZE);
+        long now = System.currentTimeMillis();
+        wheels = new FutureTimingWheel[WHEEL_STRIPES];
+        for(int i=0; i<WHEEL_STRIPES; i++) {
+            wheels[i] = new FutureTimingWheel<GROUP>(tickMillis, WHEEL_SIZE, now);
+        }
+        nextExpireTime = new AtomicLong(now + tickMillis);
         
         if(metrics != null) {
             metrics.registerLocalFuturesWaitingGauge(new LocalFuturesWaitingGauge(this));
@@ -66,29 +98,122 @@ public class DistributedFutureTracker<GROUP extends Serializable> implements Mes
         }
     }
     
+    private FutureTimingWheel<GROUP> wheel(long most, long least) {
+        return wheels[(int) ConcurrentUuidMap.hash(most, least) & (WHEEL_STRIPES - 1)];
+    }
+    
     //It is required that T be Serializable
     @SuppressWarnings("unchecked")
     public <T> DistributedFuture<GROUP, T> createFuture(HazeltaskTask<GROUP> task) {
         DistributedFuture<GROUP, T> future = new DistributedFuture<GROUP, T>(topologyService, task.getGroup(), task.getId());
-        this.futures.put(task.getId(), (DistributedFuture<GROUP, Serializable>) future);
+        UUID id = task.getId();
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+        
+        //index before it goes in the map, a response that arrives right away finds it there 
+        //and unindexes it
+        if(partitionIndex != null) {
+            future.setPartitionId(partitionManager.getPartition(id).getPartitionId());
+            partitionIndex.add(future);
+        }
+        wheel(most, least).schedule(future, future.getCreatedTime() + maximumFutureWaitTime);
+        DistributedFuture<GROUP, Serializable> previous = this.futures.put(most, least, (DistributedFuture<GROUP, Serializable>) future);
+        if(previous != null)
+            unindex(previous);
+        
+        expireIfDue(future.getCreatedTime());
         return future;
     }
     
     protected DistributedFuture<GROUP, Serializable> remove(UUID id) {
-        DistributedFuture<GROUP, Serializable> f =futures.getIfPresent(id); 
-        futures.invalidate(id);
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+        DistributedFuture<GROUP, Serializable> f = futures.remove(most, least);
         
-       if(f != null) {
-         if(futureWaitTimeHistogram != null) {
-            futureWaitTimeHistogram.update(System.currentTimeMillis() - f.getCreatedTime());
-         }
-       }
-         
-         return f;
+        if(f != null) {
+            unindex(f);
+            if(futureWaitTimeHistogram != null) {
+                futureWaitTimeHistogram.update(System.currentTimeMillis() - f.getCreatedTime());
+            }
+            signalIfEmpty();
+        }
+        
+        return f;
+    }
+    
+    private void unindex(DistributedFuture<GROUP, ?> future) {
+        UUID id = future.getTaskId();
+        wheel(id.getMostSignificantBits(), id.getLeastSignificantBits()).cancel(future);
+        if(partitionIndex != null)
+            partitionIndex.remove(future);
     }
     
     public Set<UUID> getTrackedTaskIds() {
-        return new HashSet<UUID>(futures.asMap().keySet());
+        return new HashSet<UUID>(futures.keys());
+    }
+    
+    public long getTickMillis() {
+        return wheels[0].getTickMillis();
+    }
+    
+    /**
+     * Advances the timing wheels so futures expire on a member that stopped submitting tasks.  
+     * Schedule it every {@link #getTickMillis()}.
+     */
+    public BackoffTask createExpiryTask() {
+        return new BackoffTask() {
+            @Override
+            public boolean execute() {
+                try {
+                    expireIfDue(System.currentTimeMillis());
+                    return true;
+                } catch (Throwable t) {
+                    //catch all exceptions and swallow so it doesn't cancel our timer task
+                    log.error("Error expiring futures", t);
+                    return false;
+                }
+            }
+        };
+    }
+    
+    /**
+     * Only one caller advances the wheels each tick, the others carry on
+     */
+    private void expireIfDue(long now) {
+        long next = nextExpireTime.get();
+        if(now >= next && nextExpireTime.compareAndSet(next, now + wheels[0].getTickMillis())) {
+            expire(now);
+        }
+    }
+    
+    /**
+     * Error the futures that have waited longer than the maximumFutureWaitTime and stop 
+     * their tasks
+     */
+    @SuppressWarnings("unchecked")
+    void expire(long now) {
+        List<DistributedFuture<GROUP, ?>> expired = new ArrayList<DistributedFuture<GROUP, ?>>();
+        for(FutureTimingWheel<GROUP> wheel : wheels) {
+            wheel.expire(now, expired);
+        }
+        
+        for(DistributedFuture<GROUP, ?> future : expired) {
+            UUID taskId = future.getTaskId();
+            //it may have been completed while it was being expired
+            if(!futures.remove(taskId.getMostSignificantBits(), taskId.getLeastSignificantBits(), (DistributedFuture<GROUP, Serializable>) future))
+                continue;
+            if(partitionIndex != null)
+                partitionIndex.remove(future);
+            
+            long waitTimeMillis = now - future.getCreatedTime();
+            future.setException(new TimeoutException("Future timed out waiting.  Waited "+(TimeUnit.MILLISECONDS.toMinutes(waitTimeMillis))+" minutes"));
+            
+            topologyService.cancelTask(future.getGroup(), taskId); 
+            topologyService.removePendingTask(taskId);
+        }
+        
+        if(!expired.isEmpty())
+            signalIfEmpty();
     }
     
     @Override
@@ -120,8 +245,64 @@ public class DistributedFutureTracker<GROUP extends Serializable> implements Mes
         }
     }
     
+    /**
+     * Error the futures whose pending task entries were in a lost partition.  This only 
+     * visits the futures in that partition.
+     * 
+     * @return the number of futures that were errored
+     * @throws IllegalStateException if this tracker was created without a HazelcastPartitionManager
+     */
+    public int errorPartitionFutures(int partitionId, Exception e) {
+        if(partitionIndex == null)
+            throw new IllegalStateException("Futures are not indexed by partition");
+        int count = 0;
+        for(DistributedFuture<GROUP, ?> future : partitionIndex.get(partitionId)) {
+            DistributedFuture<GROUP, Serializable> removed = remove(future.getTaskId());
+            if(removed != null) {
+                removed.setException(e);
+                count++;
+            }
+        }
+        return count;
+    }
+    
     public int size() {
-    	return (int) futures.size();
+    	return futures.size();
+    }
+    
+    private void signalIfEmpty() {
+        if(futures.isEmpty()) {
+            emptyLock.lock();
+            try {
+                emptyCondition.signalAll();
+            } finally {
+                emptyLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Block until there are no more futures being tracked.  Waiters are woken up when the 
+     * last future is removed.
+     * 
+     * @return false if the timeout elapsed first
+     * @throws InterruptedException
+     */
+    public boolean awaitEmpty(long timeout, TimeUnit unit) throws InterruptedException {
+        //expire any futures that have waited too long
+        expire(System.currentTimeMillis());
+        long nanos = unit.toNanos(timeout);
+        emptyLock.lock();
+        try {
+            while(!futures.isEmpty()) {
+                if(nanos <= 0)
+                    return false;
+                nanos = emptyCondition.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            emptyLock.unlock();
+        }
     }
     
     
@@ -0,0 +1,89 @@
+package com.hazeltask.executor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Links each DistributedFuture into a list for the partition that owns its pending task
+ * entry, so when a partition is lost only its own futures have to be visited.
+ * <p>
+ * Like the FutureTimingWheel, the futures are linked through their own fields.  Each
+ * partition's list has its own lock.
+ *
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+class FuturePartitionIndex<GROUP extends Serializable> {
+    private final DistributedFuture<GROUP, ?>[] heads;
+    private final Object[] locks;
+
+    @SuppressWarnings("unchecked")
+    FuturePartitionIndex(int partitionCount) {
+        heads = new DistributedFuture[partitionCount];
+        locks = new Object[partitionCount];
+        for(int i=0; i<partitionCount; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private boolean isIndexed(int partitionId) {
+        return partitionId >= 0 && partitionId < heads.length;
+    }
+
+    void add(DistributedFuture<GROUP, ?> future) {
+        int partitionId = future.getPartitionId();
+        if(!isIndexed(partitionId))
+            return;
+        synchronized (locks[partitionId]) {
+            DistributedFuture<GROUP, ?> head = heads[partitionId];
+            future.partitionPrev = null;
+            future.partitionNext = head;
+            if(head != null)
+                head.partitionPrev = future;
+            heads[partitionId] = future;
+            future.partitionLinked = true;
+        }
+    }
+
+    void remove(DistributedFuture<GROUP, ?> future) {
+        int partitionId = future.getPartitionId();
+        if(!isIndexed(partitionId))
+            return;
+        synchronized (locks[partitionId]) {
+            if(!future.partitionLinked)
+                return;
+            DistributedFuture<GROUP, ?> prev = future.partitionPrev;
+            DistributedFuture<GROUP, ?> next = future.partitionNext;
+            if(prev == null) {
+                heads[partitionId] = next;
+            } else {
+                prev.partitionNext = next;
+            }
+            if(next != null)
+                next.partitionPrev = prev;
+
+            future.partitionPrev = null;
+            future.partitionNext = null;
+            future.partitionLinked = false;
+        }
+    }
+
+    /**
+     * @return a copy of the futures linked to the partition
+     */
+    List<DistributedFuture<GROUP, ?>> get(int partitionId) {
+        List<DistributedFuture<GROUP, ?>> result = new ArrayList<DistributedFuture<GROUP, ?>>();
+        if(!isIndexed(partitionId))
+            return result;
+        synchronized (locks[partitionId]) {
+            DistributedFuture<GROUP, ?> future = heads[partitionId];
+            while(future != null) {
+                result.add(future);
+                future = future.partitionNext;
+            }
+        }
+        return result;
+    }
+}
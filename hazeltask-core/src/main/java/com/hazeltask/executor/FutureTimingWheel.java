@@ -0,0 +1,109 @@
+package com.hazeltask.executor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A hashed timing wheel that expires DistributedFutures.  The futures are linked into
+ * the wheel's buckets through their own fields, so scheduling does not allocate and a
+ * future that completes is unlinked in constant time.
+ * <p>
+ * The wheel does not have its own thread.  It is advanced by calling expire, which only
+ * walks the buckets for the ticks that passed since the last call.  A future whose
+ * deadline is more than one revolution away stays in its bucket until its tick is
+ * reached.
+ *
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+class FutureTimingWheel<GROUP extends Serializable> {
+    //wheelTick of a future that is not in a bucket
+    static final long UNSCHEDULED = 0;
+
+    private final long tickMillis;
+    private final DistributedFuture<GROUP, ?>[] buckets;
+    private final int mask;
+    private long processedTick;
+
+    /**
+     * @param tickMillis - the expiration precision
+     * @param wheelSize - the number of buckets, must be a power of two
+     * @param now
+     */
+    @SuppressWarnings("unchecked")
+    FutureTimingWheel(long tickMillis, int wheelSize, long now) {
+        if(tickMillis < 1)
+            throw new IllegalArgumentException("tickMillis must be at least 1");
+        if(wheelSize < 1 || Integer.bitCount(wheelSize) != 1)
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+        this.tickMillis = tickMillis;
+        this.buckets = new DistributedFuture[wheelSize];
+        this.mask = wheelSize - 1;
+        this.processedTick = now / tickMillis;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    synchronized void schedule(DistributedFuture<GROUP, ?> future, long deadline) {
+        long tick = (deadline + tickMillis - 1) / tickMillis;
+        if(tick <= processedTick)
+            tick = processedTick + 1;
+
+        int index = (int) (tick & mask);
+        DistributedFuture<GROUP, ?> head = buckets[index];
+        future.wheelTick = tick;
+        future.wheelPrev = null;
+        future.wheelNext = head;
+        if(head != null)
+            head.wheelPrev = future;
+        buckets[index] = future;
+    }
+
+    synchronized void cancel(DistributedFuture<GROUP, ?> future) {
+        if(future.wheelTick != UNSCHEDULED)
+            unlink(future);
+    }
+
+    private void unlink(DistributedFuture<GROUP, ?> future) {
+        DistributedFuture<GROUP, ?> prev = future.wheelPrev;
+        DistributedFuture<GROUP, ?> next = future.wheelNext;
+        if(prev == null) {
+            buckets[(int) (future.wheelTick & mask)] = next;
+        } else {
+            prev.wheelNext = next;
+        }
+        if(next != null)
+            next.wheelPrev = prev;
+
+        future.wheelPrev = null;
+        future.wheelNext = null;
+        future.wheelTick = UNSCHEDULED;
+    }
+
+    /**
+     * Unlink every future whose deadline is at or before now and add it to expired
+     */
+    synchronized void expire(long now, List<DistributedFuture<GROUP, ?>> expired) {
+        long nowTick = now / tickMillis;
+        if(nowTick <= processedTick)
+            return;
+
+        //after a long pause every bucket only needs to be visited once
+        long lastTick = Math.min(nowTick, processedTick + buckets.length);
+        for(long tick = processedTick + 1; tick <= lastTick; tick++) {
+            DistributedFuture<GROUP, ?> future = buckets[(int) (tick & mask)];
+            while(future != null) {
+                DistributedFuture<GROUP, ?> next = future.wheelNext;
+                if(future.wheelTick <= nowTick) {
+                    unlink(future);
+                    expired.add(future);
+                }
+                future = next;
+            }
+        }
+        processedTick = nowTick;
+    }
+}
@@ -0,0 +1,160 @@
+package com.hazeltask.executor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+/**
+ * Queue sizes by group, from one member or added up across members.  On the wire the
+ * groups and sizes are written as two columns.  String, Long and Integer groups are
+ * written as primitives so a map of 200k groups doesn't pay for java serialization of
+ * every key and boxed size.
+ * <p>
+ * If a member only sent its largest groups this is truncated.  The sizes are then lower
+ * bounds, a group may have more tasks on members where it wasn't one of the largest.
+ *
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public class GroupSizes<GROUP> implements DataSerializable {
+    private static final byte OBJECT  = 0;
+    private static final byte STRING  = 1;
+    private static final byte LONG    = 2;
+    private static final byte INTEGER = 3;
+
+    private static final Comparator<Entry<?, Integer>> LARGEST_FIRST = new Comparator<Entry<?, Integer>>() {
+        public int compare(Entry<?, Integer> o1, Entry<?, Integer> o2) {
+            return o2.getValue().compareTo(o1.getValue());
+        }
+    };
+
+    private Map<GROUP, Integer> sizes;
+    private boolean truncated;
+
+    public GroupSizes() {
+        this(new HashMap<GROUP, Integer>(), false);
+    }
+
+    public GroupSizes(Map<GROUP, Integer> sizes, boolean truncated) {
+        this.sizes = sizes;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Add another member's sizes into this one
+     */
+    public GroupSizes<GROUP> merge(GroupSizes<GROUP> other) {
+        for(Entry<GROUP, Integer> entry : other.sizes.entrySet()) {
+            Integer size = sizes.get(entry.getKey());
+            sizes.put(entry.getKey(), size == null ? entry.getValue() : size + entry.getValue());
+        }
+        truncated |= other.truncated;
+        return this;
+    }
+
+    /**
+     * @return the limit largest groups, largest first
+     */
+    public GroupSizes<GROUP> largest(int limit) {
+        List<Entry<GROUP, Integer>> entries = new ArrayList<Entry<GROUP, Integer>>(sizes.entrySet());
+        Collections.sort(entries, LARGEST_FIRST);
+        Map<GROUP, Integer> result = new LinkedHashMap<GROUP, Integer>();
+        for(Entry<GROUP, Integer> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return new GroupSizes<GROUP>(result, truncated || entries.size() > limit);
+    }
+
+    public Map<GROUP, Integer> asMap() {
+        return Collections.unmodifiableMap(sizes);
+    }
+
+    public int size() {
+        return sizes.size();
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeBoolean(truncated);
+        out.writeInt(sizes.size());
+        byte type = getType();
+        out.writeByte(type);
+        int[] sizeColumn = new int[sizes.size()];
+        int i = 0;
+        for(Entry<GROUP, Integer> entry : sizes.entrySet()) {
+            GROUP group = entry.getKey();
+            switch(type) {
+                case STRING:  out.writeUTF((String) group); break;
+                case LONG:    out.writeLong((Long) group); break;
+                case INTEGER: out.writeInt((Integer) group); break;
+                default:      out.writeObject(group);
+            }
+            sizeColumn[i++] = entry.getValue();
+        }
+        out.writeIntArray(sizeColumn);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void readData(ObjectDataInput in) throws IOException {
+        truncated = in.readBoolean();
+        int count = in.readInt();
+        byte type = in.readByte();
+        List<Object> groups = new ArrayList<Object>(count);
+        for(int i=0; i<count; i++) {
+            switch(type) {
+                case STRING:  groups.add(in.readUTF()); break;
+                case LONG:    groups.add(in.readLong()); break;
+                case INTEGER: groups.add(in.readInt()); break;
+                default:      groups.add(in.readObject());
+            }
+        }
+        int[] sizeColumn = in.readIntArray();
+        //keep the order, largest groups arrive largest first
+        sizes = new LinkedHashMap<GROUP, Integer>(count * 4 / 3 + 1);
+        for(int i=0; i<count; i++) {
+            sizes.put((GROUP) groups.get(i), sizeColumn[i]);
+        }
+    }
+
+    /**
+     * The column type if every group is the same primitive friendly class
+     */
+    private byte getType() {
+        byte type = -1;
+        for(GROUP group : sizes.keySet()) {
+            byte groupType;
+            if(group instanceof String)
+                groupType = STRING;
+            else if(group instanceof Long)
+                groupType = LONG;
+            else if(group instanceof Integer)
+                groupType = INTEGER;
+            else
+                return OBJECT;
+
+            if(type != -1 && type != groupType)
+                return OBJECT;
+            type = groupType;
+        }
+        return type == -1 ? OBJECT : type;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupSizes [sizes=" + sizes + ", truncated=" + truncated + "]";
+    }
+}
@@ -3,12 +3,13 @@ package com.hazeltask.executor;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
@@ -24,27 +25,48 @@ import lombok.extern.slf4j.Slf4j;
 
 import com.google.common.base.Predicate;
 import com.hazelcast.config.ExecutorConfig;
-import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.InMemoryFormat;
 import com.hazelcast.config.MapIndexConfig;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.ExecutionCallback;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.ILock;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import com.hazelcast.core.Message;
 import com.hazelcast.core.MessageListener;
+import com.hazelcast.query.Predicates;
 import com.hazelcast.query.SqlPredicate;
 import com.hazeltask.HazeltaskTopology;
 import com.hazeltask.clusterop.CancelTaskOp;
 import com.hazeltask.clusterop.ClearGroupQueueOp;
+import com.hazeltask.clusterop.DeliverTaskResponseOp;
+import com.hazeltask.clusterop.GetCapacityWeightOp;
 import com.hazeltask.clusterop.GetLocalGroupQueueSizesOp;
 import com.hazeltask.clusterop.GetLocalQueueSizesOp;
+import com.hazeltask.clusterop.GetMemberLoadOp;
 import com.hazeltask.clusterop.GetOldestTimestampOp;
 import com.hazeltask.clusterop.GetThreadPoolSizesOp;
+import com.hazeltask.clusterop.ReclaimPendingTasksOp;
+import com.hazeltask.clusterop.RemovePendingTasksOp;
 import com.hazeltask.clusterop.StealTasksOp;
 import com.hazeltask.clusterop.SubmitTaskOp;
+import com.hazeltask.clusterop.SubmitTasksOp;
+import com.hazeltask.clusterop.TaskCompletionBatchOp;
 import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.core.concurrent.collections.grouped.ItemCallback;
+import com.hazeltask.executor.steal.MemberLoad;
+import com.hazeltask.executor.steal.StolenTaskChunk;
+import com.hazeltask.executor.task.FencedRemoveProcessor;
 import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.PendingTaskEntry;
+import com.hazeltask.executor.task.ReassignTaskProcessor;
+import com.hazeltask.executor.task.ReclaimTaskProcessor;
 import com.hazeltask.executor.task.TaskResponse;
 import com.hazeltask.hazelcast.MemberTasks;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
@@ -60,14 +82,31 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
     private final IExecutorService communicationExecutorService;
 
     private final IExecutorService taskDistributor;
+    private final IExecutorService recoveryDistributor;
     //private final CopyOnWriteArrayListSet<Member> readyMembers;
-    private final IMap<UUID, HazeltaskTask<GROUP>>                            pendingTask;
+    //the write ahead log is split, small entries that are queried and updated and the
+    //serialized tasks that are only read when a task is sent again
+    private final IMap<UUID, PendingTaskEntry<GROUP>>                         pendingTask;
+    private final IMap<UUID, HazeltaskTask<GROUP>>                            pendingTaskPayloads;
     private final ILock rebalanceTasksLock;
+    //victim member uuid -> uuid of the member stealing from it
+    private final IMap<String, String> stealLeases;
+    //member uuid -> time it shut down with its queue in a snapshot, expires after the grace period
+    private final IMap<String, Long> cleanShutdowns;
     private final ITopic<TaskResponse<Serializable>>      taskResponseTopic;
+    //uuids of the members with TaskResponseListeners
+    private final IMap<String, Boolean> responseListenerMembers;
+    private volatile boolean publishTaskResponses;
+    private final List<MessageListener<TaskResponse<Serializable>>> taskResponseHandlers = new CopyOnWriteArrayList<MessageListener<TaskResponse<Serializable>>>();
     private final HazelcastInstance hazelcast;
     
     private final Executor asyncTaskDistributorExecutor;
     
+    private final int stealChunkSize;
+    private final long stealChunkTimeout;
+    
+    private static final long SEND_TASKS_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    
     public HazelcastExecutorTopologyService(HazeltaskConfig<GROUP> hazeltaskConfig, HazeltaskTopology<GROUP> topology) {
         com.hazeltask.config.ExecutorConfig<GROUP> executorConfig = hazeltaskConfig.getExecutorConfig();
         topologyName = hazeltaskConfig.getTopologyName();
@@ -86,6 +125,15 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
             );
         
         taskDistributor =  hazelcast.getExecutorService(taskDistributorName);
+        
+        //recovered tasks get their own thread so a recovery wave doesn't delay sending new tasks
+        String recoveryDistributorName = name("task-recovery");
+        hazelcast.getConfig()
+            .addExecutorConfig(new ExecutorConfig()
+                .setName(recoveryDistributorName)
+                .setPoolSize(1)
+            );
+        recoveryDistributor = hazelcast.getExecutorService(recoveryDistributorName);
         //readyMembers = new CopyOnWriteArrayListSet<Member>();
         
         if(hazeltaskConfig.getExecutorConfig().isAsyncronousTaskDistribution())
@@ -98,15 +146,43 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
             asyncTaskDistributorExecutor = null;
         
         String pendingTaskMapName = name("pending-tasks");
+        //recovery looks for tasks created before a time, a range query needs an ordered index.
+        //getMapConfig keeps any config the user already has for this map
+        hazelcast.getConfig()
+            .getMapConfig(pendingTaskMapName)
+            .addMapIndexConfig(new MapIndexConfig("createdAtMillis", true))
+            .addMapIndexConfig(new MapIndexConfig("owner", false));
+        
+        String pendingTaskPayloadMapName = name("pending-task-payloads");
         hazelcast.getConfig()
-        .addMapConfig(new MapConfig()
-            .setName(taskDistributorName)
-            .addMapIndexConfig(new MapIndexConfig("createdAtMillis", false)));
+            .getMapConfig(pendingTaskPayloadMapName)
+            .setInMemoryFormat(InMemoryFormat.BINARY);
         
         pendingTask = hazelcast.getMap(pendingTaskMapName);
+        pendingTaskPayloads = hazelcast.getMap(pendingTaskPayloadMapName);
         taskResponseTopic = hazelcast.getTopic(name("task-response"));
+        //only fan out every response if a member anywhere in the cluster wants to see them all
+        responseListenerMembers = hazelcast.getMap(name("response-listeners"));
+        responseListenerMembers.addEntryListener(new EntryListener<String, Boolean>() {
+            public void entryAdded(EntryEvent<String, Boolean> event) { publishTaskResponses = true; }
+            public void entryRemoved(EntryEvent<String, Boolean> event) { refreshResponsePublishing(); }
+            public void entryUpdated(EntryEvent<String, Boolean> event) {}
+            public void entryEvicted(EntryEvent<String, Boolean> event) { refreshResponsePublishing(); }
+        }, false);
+        hazelcast.getCluster().addMembershipListener(new MembershipListener() {
+            public void memberAdded(MembershipEvent event) {}
+            public void memberRemoved(MembershipEvent event) {
+                //a member that crashed can't remove itself
+                responseListenerMembers.remove(event.getMember().getUuid());
+            }
+        });
+        refreshResponsePublishing();
         
         rebalanceTasksLock = hazelcast.getLock(name("task-balance"));
+        stealLeases = hazelcast.getMap(name("steal-leases"));
+        cleanShutdowns = hazelcast.getMap(name("clean-shutdowns"));
+        stealChunkSize = executorConfig.getLoadBalancingConfig().getStealChunkSize();
+        stealChunkTimeout = executorConfig.getLoadBalancingConfig().getStealChunkTimeout();
     }
     
     private String name(String name) {
@@ -122,6 +198,23 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
         }
     }
     
+    public void sendRecoveredTasks(Collection<HazeltaskTask<GROUP>> tasks, Member member) throws TimeoutException {
+        sendTasks(recoveryDistributor, tasks, member);
+    }
+    
+    private void sendTasks(IExecutorService distributor, Collection<HazeltaskTask<GROUP>> tasks, Member member) throws TimeoutException {
+        SubmitTasksOp<GROUP> distTask = new SubmitTasksOp<GROUP>(tasks, topologyName);
+        try {
+            //wait for the member to accept the batch so we don't flood it
+            distributor.submitToMember(distTask, member).get(SEND_TASKS_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sending tasks to "+member, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to send tasks to "+member, e.getCause());
+        }
+    }
+    
     @RequiredArgsConstructor
     private static class $SendTaskToWorker implements Runnable {
         private final IExecutorService taskDistributor;
@@ -135,53 +228,336 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
     }
 
     /**
-     * Add to the write ahead log (hazelcast IMap) that tracks all the outstanding tasks
+     * Add to the write ahead log (hazelcast IMap) that tracks all the outstanding tasks.  The
+     * payload is always written before the entry so an entry we can see has a payload.
      */
     public boolean addPendingTask(HazeltaskTask<GROUP> task, boolean replaceIfExists) {
-        if(!replaceIfExists)
-            return pendingTask.putIfAbsent(task.getId(), task) == null;
+        if(!replaceIfExists) {
+            if(pendingTaskPayloads.putIfAbsent(task.getId(), task) != null)
+                return false;
+        } else if(!pendingTask.containsKey(task.getId())) {
+            pendingTaskPayloads.set(task.getId(), task);
+        }
         
-        pendingTask.put(task.getId(), task);
+        pendingTask.set(task.getId(), new PendingTaskEntry<GROUP>(task));
         return true;
     }
-    
-    /**
-     * Asynchronously put the work into the pending map so we can work on submitting it to the worker
-     * if we wanted.  Could possibly cause duplicate work if we execute the work, then add to the map.
-     * @param task
-     * @return
-     */
-    public Future<HazeltaskTask<GROUP>> addPendingTaskAsync(HazeltaskTask<GROUP> task) {
-        return pendingTask.putAsync(task.getId(), task);
-    }
 
     public boolean removePendingTask(HazeltaskTask<GROUP> task) {
-        return removePendingTask(task.getId());
+        return removePendingTask(task.getId(), task.getSubmissionCount());
     }
     
+    private boolean removePendingTask(UUID taskId, int epoch) {
+        boolean removed = (Boolean) pendingTask.executeOnKey(taskId, new FencedRemoveProcessor<GROUP>(epoch));
+        if(removed)
+            pendingTaskPayloads.delete(taskId);
+        return removed;
+    }
+    
+    /**
+     * Removes the entry first, then its payload, like the fenced removal, so an entry we 
+     * can see always has a payload
+     */
     public boolean removePendingTask(UUID taskId) {
-    	pendingTask.removeAsync(taskId);
-    	return true;
+        boolean removed = pendingTask.remove(taskId) != null;
+        pendingTaskPayloads.delete(taskId);
+        return removed;
     }
 
-    public void broadcastTaskCompletion(UUID taskId, Serializable response, Serializable taskInfo) {
-        TaskResponse<Serializable> message = new TaskResponse<Serializable>(me, taskId, taskInfo, response, TaskResponse.Status.SUCCESS);
-        taskResponseTopic.publish(message);
+    public void sendTaskCompletion(HazeltaskTask<GROUP> task, Serializable response) {
+        sendTaskResponse(task, new TaskResponse<Serializable>(me, task.getId(), task.getTaskInfo(), response, TaskResponse.Status.SUCCESS));
     }
 
-    public void broadcastTaskCancellation(UUID taskId, Serializable taskInfo) {
-        TaskResponse<Serializable> message = new TaskResponse<Serializable>(me, taskId, taskInfo, null, TaskResponse.Status.CANCELLED);
-        taskResponseTopic.publish(message);
+    public void sendTaskCancellation(HazeltaskTask<GROUP> task) {
+        sendTaskResponse(task, new TaskResponse<Serializable>(me, task.getId(), task.getTaskInfo(), null, TaskResponse.Status.CANCELLED));
     }
 
-    public void broadcastTaskError(UUID taskId, Throwable exception, Serializable taskInfo) {
-        TaskResponse<Serializable> message = new TaskResponse<Serializable>(me, taskId, taskInfo, exception);
-        taskResponseTopic.publish(message);
+    public void sendTaskError(HazeltaskTask<GROUP> task, Throwable exception) {
+        sendTaskResponse(task, new TaskResponse<Serializable>(me, task.getId(), task.getTaskInfo(), exception));
+    }
+    
+    private void sendTaskResponse(HazeltaskTask<GROUP> task, TaskResponse<Serializable> response) {
+        if(publishTaskResponses)
+            taskResponseTopic.publish(response);
+        
+        String origin = task.getOrigin();
+        if(origin == null || !task.isReplyRequired()) {
+            //nobody is waiting on a future for this task
+            return;
+        } else if(origin.equals(me.getUuid())) {
+            dispatchTaskResponse(response);
+        } else {
+            deliverTaskResponse(response, origin, true);
+        }
+    }
+    
+    /**
+     * The delivery is async.  A failed delivery is sent once more if the origin is still
+     * in the cluster, otherwise its future would wait until it expires.
+     */
+    private void deliverTaskResponse(final TaskResponse<Serializable> response, final String originUuid, final boolean retry) {
+        final Member origin = getMember(originUuid);
+        if(origin == null) {
+            //if the origin left, its futures went with it
+            log.debug("The origin "+originUuid+" of task "+response.getTaskId()+" is no longer in the cluster.  Dropping its response.");
+            return;
+        }
+        
+        try {
+            communicationExecutorService.submitToMember(new DeliverTaskResponseOp<GROUP>(response, topologyName), origin, new ExecutionCallback<Boolean>() {
+                public void onResponse(Boolean delivered) {}
+                public void onFailure(Throwable t) {
+                    if(retry) {
+                        log.info("Unable to send the response for task "+response.getTaskId()+" to "+origin+".  Trying again.", t);
+                        deliverTaskResponse(response, originUuid, false);
+                    } else {
+                        log.warn("Unable to send the response for task "+response.getTaskId()+" to "+origin, t);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to send the response for task "+response.getTaskId()+" to "+origin, e);
+        }
+    }
+    
+    /**
+     * @return the member with this uuid or null if it is not in the cluster
+     */
+    private Member getMember(String uuid) {
+        for(Member member : hazelcast.getCluster().getMembers()) {
+            if(member.getUuid().equals(uuid))
+                return member;
+        }
+        return null;
+    }
+    
+    public void sendTaskCompletions(final String originUuid, final Map<UUID, Integer> completedTasks, List<TaskResponse<Serializable>> responses) {
+        if(publishTaskResponses) {
+            for(TaskResponse<Serializable> response : responses) {
+                taskResponseTopic.publish(response);
+            }
+        }
+        
+        if(originUuid.equals(me.getUuid())) {
+            handleTaskCompletions(completedTasks, responses);
+            return;
+        }
+        
+        final Member origin = getMember(originUuid);
+        if(origin == null) {
+            log.warn("The origin "+originUuid+" of "+completedTasks.size()+" task completions is no longer in the cluster.  Removing them from the write ahead log here.");
+            removeCompletedTasks(completedTasks);
+            return;
+        }
+        
+        try {
+            //the send is async, an origin that left only shows up in the callback
+            communicationExecutorService.submitToMember(new TaskCompletionBatchOp<GROUP>(completedTasks, responses, topologyName), origin, new ExecutionCallback<Boolean>() {
+                public void onResponse(Boolean response) {}
+                public void onFailure(Throwable t) {
+                    //the origin's futures are gone but the tasks are still done
+                    log.warn("Unable to send "+completedTasks.size()+" task completions to "+origin+".  Removing them from the write ahead log here.", t);
+                    removeCompletedTasks(completedTasks);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to send "+completedTasks.size()+" task completions to "+origin+".  Removing them from the write ahead log here.", e);
+            removeCompletedTasks(completedTasks);
+        }
+    }
+    
+    public void handleTaskCompletions(Map<UUID, Integer> completedTasks, List<TaskResponse<Serializable>> responses) {
+        removeCompletedTasks(completedTasks);
+        for(TaskResponse<Serializable> response : responses) {
+            dispatchTaskResponse(response);
+        }
+    }
+    
+    /**
+     * Hazelcast can't run an entry processor on a set of keys, so the removals are sent to 
+     * the members that own their partitions as one message each
+     */
+    private void removeCompletedTasks(Map<UUID, Integer> completedTasks) {
+        for(Map.Entry<Member, Map<UUID, Integer>> owned : groupByPartitionOwner(completedTasks).entrySet()) {
+            final Map<UUID, Integer> tasks = owned.getValue();
+            if(owned.getKey().equals(me)) {
+                removePendingTasks(tasks);
+                continue;
+            }
+            try {
+                communicationExecutorService.submitToMember(new RemovePendingTasksOp<GROUP>(tasks, topologyName), owned.getKey(), new ExecutionCallback<Boolean>() {
+                    public void onResponse(Boolean response) {}
+                    public void onFailure(Throwable t) {
+                        //the partitions moved or the owner left, remove them one at a time
+                        removePendingTasks(tasks);
+                    }
+                });
+            } catch (RuntimeException e) {
+                removePendingTasks(tasks);
+            }
+        }
+    }
+    
+    /**
+     * @param tasks - task id to epoch
+     * @return the tasks split up by the member that owns their partition
+     */
+    private Map<Member, Map<UUID, Integer>> groupByPartitionOwner(Map<UUID, Integer> tasks) {
+        Map<Member, Map<UUID, Integer>> byOwner = new HashMap<Member, Map<UUID, Integer>>();
+        for(Map.Entry<UUID, Integer> task : tasks.entrySet()) {
+            Member owner = hazelcast.getPartitionService().getPartition(task.getKey()).getOwner();
+            //migrating, running it from here still works
+            if(owner == null)
+                owner = me;
+            Map<UUID, Integer> owned = byOwner.get(owner);
+            if(owned == null) {
+                owned = new HashMap<UUID, Integer>();
+                byOwner.put(owner, owned);
+            }
+            owned.put(task.getKey(), task.getValue());
+        }
+        return byOwner;
+    }
+    
+    public void removePendingTasks(Map<UUID, Integer> completedTasks) {
+        for(Map.Entry<UUID, Integer> completed : completedTasks.entrySet()) {
+            try {
+                removePendingTask(completed.getKey(), completed.getValue());
+            } catch (RuntimeException e) {
+                //it is still pending, recovery runs it again
+                log.warn("Unable to remove completed task "+completed.getKey()+" from the write ahead log", e);
+            }
+        }
+    }
+    
+    public void dispatchTaskResponse(TaskResponse<Serializable> response) {
+        Message<TaskResponse<Serializable>> message = new Message<TaskResponse<Serializable>>(taskResponseTopic.getName(), response, System.currentTimeMillis(), response.getFrom());
+        for(MessageListener<TaskResponse<Serializable>> handler : taskResponseHandlers) {
+            try {
+                handler.onMessage(message);
+            } catch (RuntimeException e) {
+                log.error("An error occurred while handling the response for task "+response.getTaskId(), e);
+            }
+        }
     }
 
     public Collection<HazeltaskTask<GROUP>> getLocalPendingTasks(String predicate) {
         Set<UUID> keys = pendingTask.localKeySet(new SqlPredicate(predicate));
-        return pendingTask.getAll(keys).values();
+        Map<UUID, PendingTaskEntry<GROUP>> entries = pendingTask.getAll(keys);
+        Map<UUID, HazeltaskTask<GROUP>> payloads = pendingTaskPayloads.getAll(entries.keySet());
+        List<HazeltaskTask<GROUP>> tasks = new ArrayList<HazeltaskTask<GROUP>>(payloads.size());
+        for(PendingTaskEntry<GROUP> entry : entries.values()) {
+            HazeltaskTask<GROUP> task = payloads.get(entry.getId());
+            if(task != null)
+                tasks.add(entry.applyTo(task));
+        }
+        return tasks;
+    }
+    
+    public Set<UUID> getLocalPendingTaskIds(long createdBefore) {
+        return pendingTask.localKeySet(Predicates.lessThan("createdAtMillis", createdBefore));
+    }
+    
+    public Set<UUID> getLocalPendingTaskIdsOwnedBy(String memberUuid) {
+        return pendingTask.localKeySet(Predicates.equal("owner", memberUuid));
+    }
+    
+    @SuppressWarnings("unchecked")
+    public HazeltaskTask<GROUP> reassignPendingTask(UUID taskId, long createdBefore, Map<String, Long> liveOwners, Member newOwner) {
+        //most candidates belong to members that still hold them, only read payloads we send
+        PendingTaskEntry<GROUP> entry = (PendingTaskEntry<GROUP>) pendingTask.executeOnKey(taskId, new ReassignTaskProcessor<GROUP>(createdBefore, liveOwners, newOwner.getUuid()));
+        if(entry == null)
+            return null;
+        
+        HazeltaskTask<GROUP> task = pendingTaskPayloads.get(taskId);
+        if(task == null) {
+            /*
+             * A payload is written before its entry and removed after it, so the entry we 
+             * just reassigned has no payload and can never run.  The new owner would look 
+             * alive and nobody would recover it, so drop it under the epoch we gave it.
+             */
+            if(removePendingTask(taskId, entry.getSubmissionCount()))
+                log.warn("Removed task "+taskId+" from the write ahead log, its payload is gone");
+            return null;
+        }
+        return entry.applyTo(task);
+    }
+    
+    public void addPendingTasks(Collection<HazeltaskTask<GROUP>> tasks) {
+        Map<UUID, HazeltaskTask<GROUP>> payloads = new HashMap<UUID, HazeltaskTask<GROUP>>(tasks.size());
+        for(HazeltaskTask<GROUP> task : tasks) {
+            payloads.put(task.getId(), task);
+        }
+        pendingTaskPayloads.putAll(payloads);
+        updatePendingTasks(tasks);
+    }
+    
+    public void updatePendingTasks(Collection<HazeltaskTask<GROUP>> tasks) {
+        Map<UUID, PendingTaskEntry<GROUP>> entries = new HashMap<UUID, PendingTaskEntry<GROUP>>(tasks.size());
+        for(HazeltaskTask<GROUP> task : tasks) {
+            entries.put(task.getId(), new PendingTaskEntry<GROUP>(task));
+        }
+        pendingTask.putAll(entries);
+    }
+    
+    /**
+     * The messages to every partition owner are sent at once.  If one fails its tasks are
+     * reclaimed from here instead.
+     */
+    public Map<UUID, Integer> reclaimPendingTasks(Map<UUID, Integer> tasks) {
+        Map<UUID, Integer> reclaimed = new HashMap<UUID, Integer>(tasks.size() * 4 / 3 + 1);
+        List<Map<UUID, Integer>> sent = new ArrayList<Map<UUID, Integer>>();
+        List<Future<Map<UUID, Integer>>> futures = new ArrayList<Future<Map<UUID, Integer>>>();
+        for(Map.Entry<Member, Map<UUID, Integer>> owned : groupByPartitionOwner(tasks).entrySet()) {
+            if(owned.getKey().equals(me)) {
+                reclaimed.putAll(reclaimPendingTasks(owned.getValue(), me.getUuid()));
+                continue;
+            }
+            try {
+                futures.add(communicationExecutorService.submitToMember(new ReclaimPendingTasksOp<GROUP>(owned.getValue(), me.getUuid(), topologyName), owned.getKey()));
+                sent.add(owned.getValue());
+            } catch (RuntimeException e) {
+                reclaimed.putAll(reclaimPendingTasks(owned.getValue(), me.getUuid()));
+            }
+        }
+        
+        for(int i=0; i<futures.size(); i++) {
+            try {
+                reclaimed.putAll(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while reclaiming tasks", e);
+            } catch (ExecutionException e) {
+                //the partitions moved or the owner left, reclaim them one at a time
+                reclaimed.putAll(reclaimPendingTasks(sent.get(i), me.getUuid()));
+            }
+        }
+        return reclaimed;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public Map<UUID, Integer> reclaimPendingTasks(Map<UUID, Integer> tasks, String newOwner) {
+        Map<UUID, Integer> reclaimed = new HashMap<UUID, Integer>(tasks.size() * 4 / 3 + 1);
+        for(Map.Entry<UUID, Integer> task : tasks.entrySet()) {
+            try {
+                PendingTaskEntry<GROUP> entry = (PendingTaskEntry<GROUP>) pendingTask.executeOnKey(task.getKey(), new ReclaimTaskProcessor<GROUP>(task.getValue(), newOwner));
+                if(entry != null)
+                    reclaimed.put(task.getKey(), entry.getSubmissionCount());
+            } catch (RuntimeException e) {
+                //it stays with the member we were before the restart, recovery picks it up
+                log.warn("Unable to reclaim task "+task.getKey(), e);
+            }
+        }
+        return reclaimed;
+    }
+    
+    public void publishCleanShutdown(long gracePeriod) {
+        //the marker expires on its own if we don't come back
+        cleanShutdowns.set(me.getUuid(), System.currentTimeMillis(), gracePeriod, TimeUnit.MILLISECONDS);
+    }
+    
+    public Set<String> getCleanShutdownMembers() {
+        return cleanShutdowns.keySet();
     }
 
     public Collection<MemberResponse<Long>> getMemberQueueSizes() {
@@ -194,17 +570,35 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
     
 
 
-    @Override
-    public Collection<MemberResponse<Map<GROUP, Integer>>> getMemberGroupSizes() {
+    public Collection<MemberResponse<MemberLoad>> getMemberLoads() {
         return MemberTasks.executeOptimistic(
                 communicationExecutorService, 
                 topology.getReadyMembers(),
-                new GetLocalGroupQueueSizesOp<GROUP>(topology.getName())
+                new GetMemberLoadOp<GROUP>(topology.getName())
         );
     }
 
+    @Override
+    public Collection<MemberResponse<Map<GROUP, Integer>>> getMemberGroupSizes() {
+        return getGroupSizes((Predicate<GROUP>) null);
+    }
+
     public void addTaskResponseMessageHandler(MessageListener<TaskResponse<Serializable>> listener) {
+        taskResponseHandlers.add(listener);
+    }
+    
+    public void addTaskResponseListener(TaskResponseListener listener) {
         taskResponseTopic.addMessageListener(listener);
+        publishTaskResponses = true;
+        responseListenerMembers.put(me.getUuid(), Boolean.TRUE);
+    }
+    
+    public boolean isTaskResponsePublishingEnabled() {
+        return publishTaskResponses;
+    }
+    
+    private void refreshResponsePublishing() {
+        publishTaskResponses = !responseListenerMembers.isEmpty();
     }
 
     
@@ -215,35 +609,99 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
         return rebalanceTasksLock;
     }
 
-    public Collection<HazeltaskTask<GROUP>> stealTasks(List<MemberValuePair<Long>> numToTake) {
-        Collection<HazeltaskTask<GROUP>> result = new LinkedList<HazeltaskTask<GROUP>>();
-        Collection<Future<Collection<HazeltaskTask<GROUP>>>> futures = new ArrayList<Future<Collection<HazeltaskTask<GROUP>>>>(numToTake.size());
-        for(MemberValuePair<Long> entry : numToTake) {    	
-        	futures.add(communicationExecutorService
-        					.submitToMember(
-        							new StealTasksOp<GROUP>(topology.getName(), entry.getValue()), 
-        							entry.getMember()
-        					)
-        				);
+    public boolean tryAcquireStealLease(Member victim, long leaseTime) {
+        String holder = stealLeases.putIfAbsent(victim.getUuid(), me.getUuid(), leaseTime, TimeUnit.MILLISECONDS);
+        return holder == null || holder.equals(me.getUuid());
+    }
+    
+    public void releaseStealLease(Member victim) {
+        stealLeases.remove(victim.getUuid(), me.getUuid());
+    }
+
+    public long stealTasks(List<MemberValuePair<Long>> numToTake, ItemCallback<GROUP, HazeltaskTask<GROUP>> callback) {
+        return stealTasks(numToTake, Long.MAX_VALUE, callback);
+    }
+    
+    public long stealTasks(List<MemberValuePair<Long>> numToTake, long deadline, ItemCallback<GROUP, HazeltaskTask<GROUP>> callback) {
+        long total = 0;
+        for(MemberValuePair<Long> entry : numToTake) {
+            total += stealTasks(entry.getMember(), entry.getValue(), deadline, callback);
+            if(Thread.currentThread().isInterrupted())
+                break;
         }
-        
-        for(Future<Collection<HazeltaskTask<GROUP>>> f : futures) {
+        return total;
+    }
+    
+    /**
+     * Ask the victim for one chunk at a time.  Each request acknowledges the chunk before 
+     * it, so if we give up the victim still has the unacknowledged chunk and puts it back 
+     * in its own queue once the chunk timeout passes.
+     * <p>
+     * No chunk is asked for after the deadline, and no request waits past it.  Once it 
+     * passes we ask for an empty chunk, which only acknowledges the last one.
+     */
+    private long stealTasks(Member victim, long numberOfTasks, long deadline, ItemCallback<GROUP, HazeltaskTask<GROUP>> callback) {
+        UUID stealId = UUID.randomUUID();
+        long taken = 0;
+        int ack = 0;
+        while(true) {
+            long left = deadline - System.currentTimeMillis();
+            if(left <= 0 && ack == 0)
+                return taken;
+            int chunkSize = left > 0 ? stealChunkSize : 0;
+            long timeout = left > 0 ? Math.min(stealChunkTimeout, left) : stealChunkTimeout;
+            
+            Future<StolenTaskChunk<GROUP>> f = communicationExecutorService.submitToMember(
+                    new StealTasksOp<GROUP>(topology.getName(), stealId, numberOfTasks, chunkSize, ack), 
+                    victim);
+            StolenTaskChunk<GROUP> chunk;
             try {
-                Collection<HazeltaskTask<GROUP>> task = f.get(3, TimeUnit.MINUTES);//wait at most 3 minutes
-                result.addAll(task);
+                chunk = f.get(timeout, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
-                log.error("Unable to take tasks. I was interrupted.  We may have pulled work out of another member... it will need to be recovered", e);
+                log.error("Unable to take tasks from "+victim+". I was interrupted.  The last chunk will be put back on that member", e);
                 Thread.currentThread().interrupt();
-                return result;
+                return taken;
             } catch (ExecutionException e) {
-                log.error("Unable to take tasks. I got an exception.  We may have pulled work out of another member... it will need to be recovered", e);
-                continue;
+                log.error("Unable to take tasks from "+victim+". I got an exception.  The last chunk will be put back on that member", e);
+                return taken;
             } catch (TimeoutException e) {
-                log.error("Unable to take tasks within 3 minutes.  We may have pulled work out of another member... it will need to be recovered");
-                continue;
-            } 
+                log.error("Unable to take tasks from "+victim+" within "+timeout+"ms.  The last chunk will be put back on that member");
+                return taken;
+            }
+            
+            //a resent chunk we already have keeps the same sequence
+            if(chunk.getSequence() != ack) {
+                takeOwnership(chunk.getTasks());
+                for(HazeltaskTask<GROUP> task : chunk.getTasks()) {
+                    callback.onItem(task);
+                }
+                taken += chunk.getTasks().size();
+                ack = chunk.getSequence();
+            }
+            
+            if(chunk.isDone())
+                return taken;
+        }
+    }
+
+    /**
+     * Record ourselves as the owner of stolen tasks under a new epoch.  If the victim leaves 
+     * they aren't recovered from under us, and if the victim also runs a chunk it took back 
+     * its completion is fenced.
+     */
+    private void takeOwnership(List<HazeltaskTask<GROUP>> tasks) {
+        if(tasks.isEmpty())
+            return;
+        for(HazeltaskTask<GROUP> task : tasks) {
+            task.setOwner(me.getUuid());
+            task.setSubmissionCount(task.getSubmissionCount()+1);
+        }
+        try {
+            updatePendingTasks(tasks);
+        } catch (RuntimeException e) {
+            //we still have the tasks, if the victim leaves they may run twice
+            log.warn("Unable to record ownership of "+tasks.size()+" stolen tasks", e);
         }
-        return result;
     }
 
     public int getLocalPendingTaskMapSize() {
@@ -258,6 +716,15 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
         );
     }
     
+    @Override
+    public Collection<MemberResponse<Double>> getCapacityWeights() {
+        return MemberTasks.executeOptimistic(
+                communicationExecutorService, 
+                topology.getReadyMembers(),
+                new GetCapacityWeightOp<GROUP>(topology.getName())
+        );
+    }
+
     @Override
     public Collection<MemberResponse<Integer>> getThreadPoolSizes() {
         return MemberTasks.executeOptimistic(
@@ -269,16 +736,53 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
 
     @Override
     public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes(Predicate<GROUP> predicate) {
-        if(predicate != null && !(predicate instanceof Serializable)) {
-            //using illegalargument instead of notserializable because its dumb to have a checked exception here
-            throw new IllegalArgumentException(predicate.getClass().getName()+" is not serializable");
-        }
+        checkSerializable(predicate);
         
-        return MemberTasks.executeOptimistic(
+        Collection<MemberResponse<GroupSizes<GROUP>>> responses = MemberTasks.executeOptimistic(
                 communicationExecutorService, 
                 topology.getReadyMembers(),
                 new GetLocalGroupQueueSizesOp<GROUP>(topology.getName(), predicate)
         );
+        List<MemberResponse<Map<GROUP, Integer>>> result = new ArrayList<MemberResponse<Map<GROUP, Integer>>>(responses.size());
+        for(MemberResponse<GroupSizes<GROUP>> response : responses) {
+            result.add(new MemberResponse<Map<GROUP, Integer>>(response.getMember(), response.getValue().asMap()));
+        }
+        return result;
+    }
+    
+    @Override
+    public GroupSizes<GROUP> getTotalGroupSizes(Predicate<GROUP> predicate) {
+        checkSerializable(predicate);
+        return mergeGroupSizes(new GetLocalGroupQueueSizesOp<GROUP>(topology.getName(), predicate));
+    }
+    
+    @Override
+    public GroupSizes<GROUP> getLargestGroups(int limit, Predicate<GROUP> predicate) {
+        checkSerializable(predicate);
+        return mergeGroupSizes(new GetLocalGroupQueueSizesOp<GROUP>(topology.getName(), predicate, limit)).largest(limit);
+    }
+    
+    @Override
+    public GroupSizes<GROUP> getGroupSizes(Collection<GROUP> groups) {
+        return mergeGroupSizes(new GetLocalGroupQueueSizesOp<GROUP>(topology.getName(), groups));
+    }
+    
+    /**
+     * Fold each member's sizes into one result so we never hold a map per member
+     */
+    private GroupSizes<GROUP> mergeGroupSizes(GetLocalGroupQueueSizesOp<GROUP> op) {
+        GroupSizes<GROUP> total = new GroupSizes<GROUP>();
+        for(MemberResponse<GroupSizes<GROUP>> response : MemberTasks.executeOptimistic(communicationExecutorService, topology.getReadyMembers(), op)) {
+            total.merge(response.getValue());
+        }
+        return total;
+    }
+    
+    private void checkSerializable(Predicate<GROUP> predicate) {
+        if(predicate != null && !(predicate instanceof Serializable)) {
+            //using illegalargument instead of notserializable because its dumb to have a checked exception here
+            throw new IllegalArgumentException(predicate.getClass().getName()+" is not serializable");
+        }
     }
 
     @Override
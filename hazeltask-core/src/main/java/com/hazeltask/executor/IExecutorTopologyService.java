@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
@@ -11,6 +12,8 @@ import java.util.concurrent.locks.Lock;
 import com.google.common.base.Predicate;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MessageListener;
+import com.hazeltask.core.concurrent.collections.grouped.ItemCallback;
+import com.hazeltask.executor.steal.MemberLoad;
 import com.hazeltask.executor.task.HazeltaskTask;
 import com.hazeltask.executor.task.TaskResponse;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
@@ -29,15 +32,39 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
     
     public void sendTask(HazeltaskTask<GROUP> task, Member member) throws TimeoutException;
     
+    /**
+     * Send a batch of recovered tasks to a member and wait for it to accept them.  These go 
+     * through a separate executor so new tasks aren't sent behind them.  Once they arrive 
+     * they are queued by their created time like any other task.
+     * @param tasks
+     * @param member
+     * @throws TimeoutException
+     */
+    public void sendRecoveredTasks(Collection<HazeltaskTask<GROUP>> tasks, Member member) throws TimeoutException;
+    
     
     /**
-     * 
+     * Log the task in the write ahead log.  When replacing a task that is already logged 
+     * only its entry is rewritten, the payload is left as it is.
      * @param task
      * @param replaceIfExists
      * @return
      */
     public boolean addPendingTask(HazeltaskTask<GROUP> task, boolean replaceIfExists);
     
+    /**
+     * Add or replace all of the tasks in the pending task map
+     * @param tasks
+     */
+    public void addPendingTasks(Collection<HazeltaskTask<GROUP>> tasks);
+    
+    /**
+     * Rewrite the epoch and owner of tasks that are already in the pending task map.  The
+     * payloads are not sent.
+     * @param tasks
+     */
+    public void updatePendingTasks(Collection<HazeltaskTask<GROUP>> tasks);
+    
     /**
      * Retrive the hazeltasks in the local pending task map with the predicate restriction
      * @param predicate
@@ -45,6 +72,65 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
      */
     public Collection<HazeltaskTask<GROUP>> getLocalPendingTasks(String predicate);
     
+    /**
+     * The ids of the tasks in the local pending task map created before this time.  This
+     * uses the ordered createdAtMillis index so it only touches the stale tasks.
+     * @param createdBefore
+     * @return
+     */
+    public Set<UUID> getLocalPendingTaskIds(long createdBefore);
+    
+    /**
+     * The ids of the tasks in the local pending task map that were handed to this member.
+     * This uses the owner index.
+     * @param memberUuid
+     * @return
+     */
+    public Set<UUID> getLocalPendingTaskIdsOwnedBy(String memberUuid);
+    
+    /**
+     * Hand a lost task to a new owner under a new epoch.  This runs on the partition so 
+     * the task is only read once and never written back through the map.  An entry 
+     * without a payload can't be recovered and is removed instead.
+     * 
+     * @see com.hazeltask.executor.task.ReassignTaskProcessor
+     * @return the reassigned task, or null if the task is no longer lost
+     */
+    public HazeltaskTask<GROUP> reassignPendingTask(UUID taskId, long createdBefore, Map<String, Long> liveOwners, Member newOwner);
+    
+    /**
+     * Take back tasks we held before a restart under a new epoch.  This is fenced on each
+     * task's epoch so a task that completed or was recovered since is left alone.  The 
+     * tasks are sent to the members that own their partitions as one message each.
+     * 
+     * @see com.hazeltask.executor.task.ReclaimTaskProcessor
+     * @param tasks - task id to the epoch we held it under
+     * @return the ids of the tasks now owned by this member and their new epochs
+     */
+    public Map<UUID, Integer> reclaimPendingTasks(Map<UUID, Integer> tasks);
+    
+    /**
+     * Reclaim tasks for newOwner one at a time.  This is what a member runs for the 
+     * partitions it owns.
+     * 
+     * @see #reclaimPendingTasks(Map)
+     */
+    public Map<UUID, Integer> reclaimPendingTasks(Map<UUID, Integer> tasks, String newOwner);
+    
+    /**
+     * Tell the other members this member is stopping with its queued tasks in a snapshot 
+     * and will restore them when it restarts.  Task recovery treats the tasks it owns as 
+     * owned by a live member until gracePeriod has passed.
+     * 
+     * @param gracePeriod - millis to wait for this member to come back
+     */
+    public void publishCleanShutdown(long gracePeriod);
+    
+    /**
+     * @return uuids of the members that shut down cleanly and are still in their grace period
+     */
+    public Set<String> getCleanShutdownMembers();
+    
     /**
      * Get the local queue sizes for each member
      * 
@@ -53,6 +139,13 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
      */
     public Collection<MemberResponse<Long>> getMemberQueueSizes();
     
+    /**
+     * Get the queue size and estimated work of each member for the TaskStealPolicy
+     * 
+     * @return
+     */
+    public Collection<MemberResponse<MemberLoad>> getMemberLoads();
+    
     /**
      * Get the local queue sizes for each group on each member
      * 
@@ -71,25 +164,145 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
     public Collection<MemberResponse<Long>> getOldestTaskTimestamps();
     
     /**
+     * Remove a task that ran.  The task is left alone if it was handed to a new owner 
+     * after this copy was, see HazeltaskTask.getSubmissionCount()
      * 
      * @param task
-     * @return true if removed, false it did not exist
+     * @return true if removed, false it did not exist or was owned by a newer epoch
      */
     public boolean removePendingTask(HazeltaskTask<GROUP> task);
+    
+    /**
+     * Remove a task whatever epoch it is at
+     * 
+     * @return true if the task was pending
+     */
     public boolean removePendingTask(UUID taskId);
     
-    public void broadcastTaskCompletion(UUID taskId, Serializable response, Serializable taskInfo);
-    public void broadcastTaskCancellation(UUID taskId, Serializable taskInfo);
-    public void broadcastTaskError(UUID taskId, Throwable exception, Serializable taskInfo);
+    /*
+     * Responses are sent directly to the task's origin member and handed to its message 
+     * handlers.  They are only published to every member if there are TaskResponseListeners.
+     */
+    public void sendTaskCompletion(HazeltaskTask<GROUP> task, Serializable response);
+    public void sendTaskCancellation(HazeltaskTask<GROUP> task);
+    public void sendTaskError(HazeltaskTask<GROUP> task, Throwable exception);
+    
+    /**
+     * Send a batch of completed tasks to the member that submitted them.  It removes them
+     * from the pending task map and handles the responses.  If the member can't be reached, 
+     * now or when the message arrives, the tasks are removed from the pending task map by 
+     * this member.
+     * 
+     * @param origin - the uuid of the member
+     * @param completedTasks - task id to the epoch it ran under
+     * @param responses - may be smaller than completedTasks if some tasks don't need a response
+     */
+    public void sendTaskCompletions(String origin, Map<UUID, Integer> completedTasks, List<TaskResponse<Serializable>> responses);
+    
+    /**
+     * Remove the completed tasks from the pending task map and handle their responses on 
+     * this member
+     * @param completedTasks - task id to the epoch it ran under
+     * @param responses
+     */
+    public void handleTaskCompletions(Map<UUID, Integer> completedTasks, List<TaskResponse<Serializable>> responses);
+    
+    /**
+     * Remove completed tasks from the pending task map, each one fenced on the epoch it ran 
+     * under.  This is sent to the member that owns their partitions.
+     * @param completedTasks - task id to the epoch it ran under
+     */
+    public void removePendingTasks(Map<UUID, Integer> completedTasks);
+    
+    /**
+     * Handle a response on this member with the local message handlers
+     * @param response
+     */
+    public void dispatchTaskResponse(TaskResponse<Serializable> response);
+    
+    /**
+     * Receive the responses for tasks submitted by this member
+     * @param listener
+     */
     public void addTaskResponseMessageHandler(MessageListener<TaskResponse<Serializable>> listener);
     
+    /**
+     * Receive the responses for all tasks in the cluster
+     * @param listener
+     */
+    /**
+     * Register a listener for every task response in the cluster.  Once any member has one, 
+     * every member publishes its responses.
+     */
+    public void addTaskResponseListener(TaskResponseListener listener);
+    
+    /**
+     * @return true if some member in the cluster has TaskResponseListeners, so responses 
+     *         are published even for tasks nobody holds a future for
+     */
+    public boolean isTaskResponsePublishingEnabled();
+    
     public Lock getRebalanceTaskClusterLock();
     
-    public Collection<HazeltaskTask<GROUP>> stealTasks(List<MemberValuePair<Long>> numToTake);
+    /**
+     * Take tasks from other members.  Tasks arrive in chunks and each task is handed to the 
+     * callback as soon as its chunk arrives, so they can be queued while the rest are still 
+     * in flight.  A chunk is only let go of by the victim once the next one is asked for.
+     * 
+     * @param numToTake
+     * @param callback
+     * @return the number of tasks taken
+     */
+    public long stealTasks(List<MemberValuePair<Long>> numToTake, ItemCallback<GROUP, HazeltaskTask<GROUP>> callback);
+    
+    /**
+     * Take tasks from other members, but ask for no chunk after the deadline.  Once it 
+     * passes the last chunk is acknowledged and the steal stops, so it can be bounded by 
+     * a steal lease.
+     * 
+     * @param numToTake
+     * @param deadline - millis, no chunk is asked for after this
+     * @param callback
+     * @return the number of tasks taken
+     */
+    public long stealTasks(List<MemberValuePair<Long>> numToTake, long deadline, ItemCallback<GROUP, HazeltaskTask<GROUP>> callback);
+    
+    /**
+     * Become the only member allowed to steal from the victim.  The lease expires on its 
+     * own after leaseTime in case this member dies while holding it.
+     * 
+     * @param victim
+     * @param leaseTime
+     * @return false if another member holds the lease
+     */
+    public boolean tryAcquireStealLease(Member victim, long leaseTime);
+    public void releaseStealLease(Member victim);
     //public boolean addTaskToLocalQueue(HazelcastWork task);
     
     public Collection<MemberResponse<Integer>> getThreadPoolSizes();
+    
+    /**
+     * @see com.hazeltask.config.ExecutorLoadBalancingConfig#withCapacityWeight
+     * @return the capacity weight of every ready member
+     */
+    public Collection<MemberResponse<Double>> getCapacityWeights();
     public Collection<MemberResponse<Map<GROUP, Integer>>> getGroupSizes(Predicate<GROUP> predicate);
+    
+    /**
+     * Every member's group sizes added up into one result
+     */
+    public GroupSizes<GROUP> getTotalGroupSizes(Predicate<GROUP> predicate);
+    
+    /**
+     * Each member only sends its limit largest groups
+     * @see GroupSizes#isTruncated()
+     */
+    public GroupSizes<GROUP> getLargestGroups(int limit, Predicate<GROUP> predicate);
+    
+    /**
+     * Members look these groups up directly instead of scanning every group
+     */
+    public GroupSizes<GROUP> getGroupSizes(Collection<GROUP> groups);
     public void clearGroupQueue(GROUP group);
     
     public boolean cancelTask(GROUP group, UUID taskId);
@@ -0,0 +1,139 @@
+package com.hazeltask.executor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * Group commit for the write ahead log.  New tasks are buffered and written together 
+ * when maxBatchSize tasks are waiting, or by a background thread every flushInterval.  
+ * The thread that fills a batch writes it.
+ * <p>
+ * add() blocks until the task's batch is written so the submitting thread only sends the
+ * task, and returns its future, once the task can be recovered.  If the batch can't be
+ * written every task in it gets the exception.
+ * <p>
+ * After close() tasks are written right away since nothing will flush them.
+ *
+ * @author jclawson
+ *
+ */
+@Slf4j
+public class WriteAheadLogBatcher<GROUP extends Serializable> {
+    private final IExecutorTopologyService<GROUP> executorTopologyService;
+    private final int maxBatchSize;
+    private final Timer commitTimer;
+    private final Histogram batchSizeHistogram;
+    private final ScheduledExecutorService flusher;
+    //guarded by this
+    private Batch batch = new Batch();
+    private volatile boolean closed;
+
+    public WriteAheadLogBatcher(IExecutorTopologyService<GROUP> executorTopologyService, long flushInterval, int maxBatchSize,
+                                ThreadFactory threadFactory, Timer commitTimer, Histogram batchSizeHistogram) {
+        this.executorTopologyService = executorTopologyService;
+        this.maxBatchSize = maxBatchSize;
+        this.commitTimer = commitTimer;
+        this.batchSizeHistogram = batchSizeHistogram;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    //don't let this cancel the flusher
+                    log.error("An error occurred while writing to the write ahead log", t);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a new task to the write ahead log.  Only use this for tasks that can't already be
+     * in the log, a group is written with putAll so duplicates aren't rejected.
+     *
+     * @throws RuntimeException if the task's batch couldn't be written
+     */
+    public void add(HazeltaskTask<GROUP> task) {
+        Batch full = null;
+        Batch current;
+        synchronized (this) {
+            current = batch;
+            current.tasks.add(task);
+            if(current.tasks.size() >= maxBatchSize || closed) {
+                full = current;
+                batch = new Batch();
+            }
+        }
+        if(full != null)
+            commit(full);
+        current.await();
+    }
+
+    /**
+     * Write everything that is buffered
+     */
+    public void flush() {
+        Batch full;
+        synchronized (this) {
+            if(batch.tasks.isEmpty())
+                return;
+            full = batch;
+            batch = new Batch();
+        }
+        commit(full);
+    }
+
+    private void commit(Batch batch) {
+        batchSizeHistogram.update(batch.tasks.size());
+        Timer.Context ctx = commitTimer.time();
+        try {
+            executorTopologyService.addPendingTasks(batch.tasks);
+        } catch (RuntimeException e) {
+            log.error("Unable to write "+batch.tasks.size()+" tasks to the write ahead log", e);
+            batch.error = e;
+        } finally {
+            ctx.stop();
+            batch.written.countDown();
+        }
+    }
+
+    /**
+     * Stop the background flush and write anything that is buffered
+     */
+    public void close() {
+        closed = true;
+        flusher.shutdown();
+        flush();
+    }
+
+    private class Batch {
+        private final List<HazeltaskTask<GROUP>> tasks = new ArrayList<HazeltaskTask<GROUP>>();
+        private final CountDownLatch written = new CountDownLatch(1);
+        private volatile RuntimeException error;
+
+        void await() {
+            try {
+                written.await();
+            } catch (InterruptedException e) {
+                //the batch may still be written and the task recovered later
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the write ahead log", e);
+            }
+            if(error != null)
+                throw new RuntimeException("Unable to write the task to the write ahead log", error);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hazeltask.executor.local;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.hazeltask.executor.ExecutorListener;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * Keeps an exponentially weighted moving average of how long tasks in each group take 
+ * to run.  Used to estimate how long the local queue will take to drain.
+ * <p>
+ * Groups that haven't run a task yet are assumed to take the average of all groups.  If
+ * nothing has run yet every task is assumed to take 1 milli, so the estimate falls back 
+ * to counting tasks.
+ * 
+ * @author jclawson
+ *
+ * @param <G>
+ */
+public class GroupExecutionTimes<G extends Serializable> implements ExecutorListener<G> {
+    private static final double ALPHA = 0.2;
+    private static final double DEFAULT_TIME = 1;
+    
+    private final ConcurrentMap<G, Ewma> groupTimes = new ConcurrentHashMap<G, Ewma>();
+    private final Ewma allTimes = new Ewma();
+    //listeners are called on the worker thread that runs the task
+    private final ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+    
+    public void beforeExecute(HazeltaskTask<G> runnable) {
+        startTime.set(System.nanoTime());
+    }
+
+    public void afterExecute(HazeltaskTask<G> runnable, Throwable exception) {
+        Long start = startTime.get();
+        if(start == null)
+            return;
+        startTime.remove();
+        
+        double millis = (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        G group = runnable.getGroup();
+        Ewma ewma = groupTimes.get(group);
+        if(ewma == null) {
+            ewma = new Ewma();
+            Ewma existing = groupTimes.putIfAbsent(group, ewma);
+            if(existing != null)
+                ewma = existing;
+        }
+        ewma.update(millis);
+        allTimes.update(millis);
+    }
+    
+    /**
+     * @return the average execution millis of a task in this group
+     */
+    public double getExecutionTime(G group) {
+        Ewma ewma = groupTimes.get(group);
+        if(ewma != null && ewma.get() >= 0)
+            return ewma.get();
+        double all = allTimes.get();
+        return all > 0 ? all : DEFAULT_TIME;
+    }
+    
+    /**
+     * @param groupSizes - the number of queued tasks in each group
+     * @return the estimated millis of one thread's time to run all of them
+     */
+    public double getEstimatedWork(Map<G, Integer> groupSizes) {
+        double work = 0;
+        for(Entry<G, Integer> entry : groupSizes.entrySet()) {
+            work += entry.getValue() * getExecutionTime(entry.getKey());
+        }
+        return work;
+    }
+    
+    private static class Ewma {
+        private double value = -1;
+        
+        synchronized void update(double sample) {
+            value = (value < 0) ? sample : value + ALPHA * (sample - value);
+        }
+        
+        synchronized double get() {
+            return value;
+        }
+    }
+}
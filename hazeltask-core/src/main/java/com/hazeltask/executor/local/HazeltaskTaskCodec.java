@@ -0,0 +1,91 @@
+package com.hazeltask.executor.local;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.UUID;
+
+import com.codahale.metrics.Timer;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.instance.HazelcastInstanceImpl;
+import com.hazelcast.instance.HazelcastInstanceProxy;
+import com.hazelcast.nio.BufferObjectDataInput;
+import com.hazelcast.nio.BufferObjectDataOutput;
+import com.hazelcast.nio.serialization.SerializationService;
+import com.hazeltask.core.concurrent.collections.tracked.ItemCodec;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * Serializes HazeltaskTasks with the serialization service of the hazelcast member so 
+ * anything that can be sent to a member can be stored locally as bytes.  The service
+ * belongs to the member, it is destroyed when the member shuts down.
+ * <p>
+ * Decoded tasks get their transient state (hazelcast instance, execution timer) 
+ * restored since it doesn't survive serialization.
+ * 
+ * @author jclawson
+ *
+ * @param <G>
+ */
+public class HazeltaskTaskCodec<G extends Serializable> implements ItemCodec<HazeltaskTask<G>> {
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    
+    private final SerializationService serializationService;
+    private final HazelcastInstance hazelcast;
+    private final Timer taskExecutedTimer;
+    
+    public HazeltaskTaskCodec(HazelcastInstance hazelcast, Timer taskExecutedTimer) {
+        this.serializationService = getSerializationService(hazelcast);
+        this.hazelcast = hazelcast;
+        this.taskExecutedTimer = taskExecutedTimer;
+    }
+    
+    private static SerializationService getSerializationService(HazelcastInstance hazelcast) {
+        if(hazelcast instanceof HazelcastInstanceProxy)
+            return ((HazelcastInstanceProxy) hazelcast).getSerializationService();
+        if(hazelcast instanceof HazelcastInstanceImpl)
+            return ((HazelcastInstanceImpl) hazelcast).getSerializationService();
+        throw new IllegalArgumentException("Tasks can only be stored as bytes on a hazelcast member, not "+hazelcast.getClass().getName());
+    }
+
+    @Override
+    public UUID getId(HazeltaskTask<G> item) {
+        return item.getId();
+    }
+
+    @Override
+    public byte[] encode(HazeltaskTask<G> item) {
+        BufferObjectDataOutput out = serializationService.createObjectDataOutput(INITIAL_BUFFER_SIZE);
+        try {
+            out.writeObject(item);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to serialize task "+item.getId(), e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public HazeltaskTask<G> decode(byte[] bytes) {
+        BufferObjectDataInput in = serializationService.createObjectDataInput(bytes);
+        try {
+            HazeltaskTask<G> task = (HazeltaskTask<G>) in.readObject();
+            task.setHazelcastInstance(hazelcast);
+            task.setExecutionTimer(taskExecutedTimer);
+            return task;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to deserialize task", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+    
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            //ignore
+        }
+    }
+}
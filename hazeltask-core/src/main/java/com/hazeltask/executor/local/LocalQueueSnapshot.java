@@ -0,0 +1,105 @@
+package com.hazeltask.executor.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.hazeltask.core.concurrent.collections.tracked.ItemCodec;
+
+/**
+ * Writes the local queue to a file on graceful shutdown so it can be reloaded on the
+ * next startup.
+ * <p>
+ * File layout: [int magic][int version][int count] followed by count records of
+ * [int length][codec bytes]
+ * <p>
+ * The snapshot is written to a temp file and renamed so a crash while writing never
+ * leaves a partial snapshot behind.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+class LocalQueueSnapshot<E> {
+    private static final int MAGIC = 0x48545153; //HTQS
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final ItemCodec<E> codec;
+
+    LocalQueueSnapshot(File file, ItemCodec<E> codec) {
+        this.file = file;
+        this.codec = codec;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public void write(Collection<E> items) throws IOException {
+        File tmp = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(items.size());
+            for(E item : items) {
+                byte[] bytes = codec.encode(item);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+
+        if(file.exists() && !file.delete())
+            throw new IOException("Unable to replace snapshot "+file);
+        if(!tmp.renameTo(file))
+            throw new IOException("Unable to rename "+tmp+" to "+file);
+    }
+
+    /**
+     * @return an empty list if there is no snapshot
+     * @throws IOException if the snapshot is corrupt or from an unknown version
+     */
+    public List<E> read() throws IOException {
+        if(!file.exists())
+            return new ArrayList<E>(0);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if(in.readInt() != MAGIC)
+                throw new IOException(file+" is not a queue snapshot");
+            int version = in.readInt();
+            if(version != VERSION)
+                throw new IOException("Unsupported queue snapshot version "+version);
+
+            int count = in.readInt();
+            List<E> items = new ArrayList<E>(count);
+            for(int i=0; i<count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                items.add(codec.decode(bytes));
+            }
+            return items;
+        } finally {
+            in.close();
+        }
+    }
+
+    public void delete() {
+        file.delete();
+    }
+}
@@ -1,9 +1,12 @@
 package com.hazeltask.executor.local;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -12,24 +15,36 @@ import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import lombok.extern.slf4j.Slf4j;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazeltask.config.ExecutorConfig;
 import com.hazeltask.core.concurrent.NamedThreadFactory;
+import com.hazeltask.core.concurrent.collections.grouped.GroupQueueFactory;
 import com.hazeltask.core.concurrent.collections.grouped.GroupedPriorityQueueLocking;
+import com.hazeltask.core.concurrent.collections.offheap.OffHeapSlabAllocator;
+import com.hazeltask.core.concurrent.collections.offheap.OffHeapTrackedQueue;
+import com.hazeltask.core.concurrent.collections.spill.SpillStore;
+import com.hazeltask.core.concurrent.collections.spill.SpillableTrackedQueue;
 import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
+import com.hazeltask.core.concurrent.collections.tracked.TrackedPriorityBlockingQueue;
 import com.hazeltask.executor.ExecutorListener;
+import com.hazeltask.executor.GroupSizes;
 import com.hazeltask.executor.IExecutorTopologyService;
 import com.hazeltask.executor.metrics.CollectionSizeGauge;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.hazeltask.executor.metrics.TaskThroughputGauge;
+import com.hazeltask.executor.steal.MemberLoad;
+import com.hazeltask.executor.steal.StolenTaskChunk;
 import com.hazeltask.executor.task.HazeltaskTask;
 
 /**
@@ -39,6 +54,8 @@ import com.hazeltask.executor.task.HazeltaskTask;
  */
 @Slf4j
 public class LocalTaskExecutorService<G extends Serializable> {
+    //tasks reclaimed per round when restoring a queue snapshot
+    private static final int RESTORE_BATCH_SIZE = 1000;
 
 	private final HazeltaskThreadPoolExecutor localExecutorPool;
 	private final GroupedPriorityQueueLocking<HazeltaskTask<G>, G> taskQueue;
@@ -46,6 +63,15 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	private final HazelcastInstance hazelcast;
 	private final IExecutorTopologyService<G> executorTopologyService;
 	private final ExecutorConfig<G> executorConfig;
+	private final LocalQueueSnapshot<HazeltaskTask<G>> queueSnapshot;
+	private final TaskCompletionBatcher<G> completionBatcher;
+	private final GroupExecutionTimes<G> groupExecutionTimes;
+	private final StealSessions<G> stealSessions;
+	private final WorkerPoolController workerPoolController;
+	private final NamedThreadFactory stealSessionThreadFactory;
+	//started by the first steal from us, guarded by stealSessionThreadFactory
+	private ScheduledExecutorService stealSessionReaper;
+	private boolean stealSessionReaperStopped;
 	
 	private final Timer taskSubmittedTimer;
 	private final Timer taskExecutedTimer;
@@ -61,10 +87,29 @@ public class LocalTaskExecutorService<G extends Serializable> {
     public LocalTaskExecutorService(HazelcastInstance hazelcast, ExecutorConfig<G> executorConfig, NamedThreadFactory namedThreadFactory, IExecutorTopologyService<G> executorTopologyService, ExecutorMetrics metrics) {
 		this.hazelcast = hazelcast;
 		
-		taskQueue = new GroupedPriorityQueueLocking<HazeltaskTask<G>, G>(metrics, executorConfig.getLoadBalancingConfig().getGroupPrioritizer());
-
 		taskSubmittedTimer = metrics.getLocalTaskSubmitTimer().getMetric();
 		taskExecutedTimer = metrics.getTaskExecutionTimer().getMetric();
+		
+		HazeltaskTaskCodec<G> codec = null;
+		if(executorConfig.isOffHeapTaskQueueEnabled() || executorConfig.isLocalQueueSpillEnabled() || executorConfig.isLocalQueueSnapshotEnabled())
+		    codec = new HazeltaskTaskCodec<G>(hazelcast, taskExecutedTimer);
+		
+		if(executorConfig.isOffHeapTaskQueueEnabled() || executorConfig.isLocalQueueSpillEnabled()) {
+		    GroupQueueFactory<HazeltaskTask<G>, G> queueFactory = executorConfig.isOffHeapTaskQueueEnabled()
+		            ? createOffHeapQueueFactory(codec, executorConfig, metrics)
+		            : createHeapQueueFactory();
+		    if(executorConfig.isLocalQueueSpillEnabled())
+		        queueFactory = createSpillQueueFactory(queueFactory, codec, executorConfig, metrics);
+		    taskQueue = new GroupedPriorityQueueLocking<HazeltaskTask<G>, G>(metrics, executorConfig.getLoadBalancingConfig().getGroupPrioritizer(), queueFactory);
+		} else {
+		    taskQueue = new GroupedPriorityQueueLocking<HazeltaskTask<G>, G>(metrics, executorConfig.getLoadBalancingConfig().getGroupPrioritizer());
+		}
+		
+		if(executorConfig.isLocalQueueSnapshotEnabled())
+		    queueSnapshot = new LocalQueueSnapshot<HazeltaskTask<G>>(executorConfig.getLocalQueueSnapshotFile(), codec);
+		else
+		    queueSnapshot = null;
+		
 		getGroupSizesTimer = metrics.getGetGroupSizesTimer().getMetric();
 		getOldestTaskTimeTimer = metrics.getGetOldestTaskTimeTimer().getMetric();
 		getQueueSizeTimer = metrics.getGetQueueSizeTimer().getMetric();
@@ -85,20 +130,102 @@ public class LocalTaskExecutorService<G extends Serializable> {
 		        TimeUnit.MILLISECONDS, 
 		        blockingQueue, 
 		        namedThreadFactory.named("worker"), 
-		        new AbortPolicy());
-		
-		if(executorConfig.isFutureSupportEnabled())
-		    localExecutorPool.addListener(new ResponseExecutorListener<G>(executorTopologyService, taskFinishedNotificationTimer));
+		        new ReleaseOwnershipPolicy<G>(executorTopologyService, metrics.getLocalQueueRejections().getMetric()));
 		
-		localExecutorPool.addListener(new TaskCompletionExecutorListener<G>(executorTopologyService, taskErrorsMeter, removeFromWriteAheadLogTimer));
+		if(executorConfig.isCompletionBatchingEnabled()) {
+		    completionBatcher = new TaskCompletionBatcher<G>(executorTopologyService, hazelcast.getCluster().getLocalMember(), 
+		            executorConfig.isFutureSupportEnabled(), executorConfig.getCompletionBatchInterval(), executorConfig.getCompletionBatchSize(), 
+		            namedThreadFactory.named("completions"), taskErrorsMeter, taskFinishedNotificationTimer);
+		    localExecutorPool.addListener(completionBatcher);
+		} else {
+		    completionBatcher = null;
+    		if(executorConfig.isFutureSupportEnabled())
+    		    localExecutorPool.addListener(new ResponseExecutorListener<G>(executorTopologyService, taskFinishedNotificationTimer));
+    		
+    		localExecutorPool.addListener(new TaskCompletionExecutorListener<G>(executorTopologyService, taskErrorsMeter, removeFromWriteAheadLogTimer));
+		}
 		
 		tasksInProgressTracker = new TasksInProgressTracker();
 		localExecutorPool.addListener(tasksInProgressTracker);
 		
+		groupExecutionTimes = new GroupExecutionTimes<G>();
+		localExecutorPool.addListener(groupExecutionTimes);
+		
+		if(executorConfig.isAdaptiveThreadCountEnabled())
+		    workerPoolController = new WorkerPoolController(localExecutorPool, taskQueue, executorConfig, metrics);
+		else
+		    workerPoolController = null;
+		
+		stealSessionThreadFactory = namedThreadFactory.named("steal-sessions");
+		
 		this.executorTopologyService = executorTopologyService;
 		this.executorConfig = executorConfig;
+		stealSessions = new StealSessions<G>(getStealSessionTimeout());
 	}
 	
+    private GroupQueueFactory<HazeltaskTask<G>, G> createHeapQueueFactory() {
+        return new GroupQueueFactory<HazeltaskTask<G>, G>() {
+            public ITrackedQueue<HazeltaskTask<G>> createQueue(G group) {
+                return new TrackedPriorityBlockingQueue<HazeltaskTask<G>>();
+            }
+        };
+    }
+    
+    private GroupQueueFactory<HazeltaskTask<G>, G> createOffHeapQueueFactory(final HazeltaskTaskCodec<G> codec, ExecutorConfig<G> executorConfig, ExecutorMetrics metrics) {
+        final OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(executorConfig.getOffHeapTaskQueueCapacity(), executorConfig.getOffHeapTaskQueueSlabSize());
+        
+        metrics.registerOffHeapQueueGauges(
+            new Gauge<Long>() {
+                public Long getValue() { return allocator.getUsedBytes(); }
+            }, 
+            new Gauge<Long>() {
+                public Long getValue() { return allocator.getReservedBytes(); }
+            }, 
+            new Gauge<Long>() {
+                public Long getValue() { return allocator.getCapacityBytes(); }
+            });
+        
+        return new GroupQueueFactory<HazeltaskTask<G>, G>() {
+            public ITrackedQueue<HazeltaskTask<G>> createQueue(G group) {
+                return new OffHeapTrackedQueue<HazeltaskTask<G>>(allocator, codec);
+            }
+        };
+    }
+    
+    private GroupQueueFactory<HazeltaskTask<G>, G> createSpillQueueFactory(final GroupQueueFactory<HazeltaskTask<G>, G> headFactory, HazeltaskTaskCodec<G> codec, ExecutorConfig<G> executorConfig, ExecutorMetrics metrics) {
+        final SpillStore<HazeltaskTask<G>> store = new SpillStore<HazeltaskTask<G>>(
+                executorConfig.getLocalQueueSpillDirectory(), 
+                codec, 
+                executorConfig.getLocalQueueSpillSegmentSize(), 
+                executorConfig.getLocalQueueSpillThreshold(), 
+                executorConfig.getLocalQueueSpillHeapUsage(), 
+                executorConfig.getLocalQueueSpillMinGroupSize());
+        
+        metrics.registerSpillGauges(
+            new Gauge<Long>() {
+                public Long getValue() { return store.getInMemoryItems(); }
+            }, 
+            new Gauge<Long>() {
+                public Long getValue() { return store.getSpilledItems(); }
+            }, 
+            new Gauge<Long>() {
+                public Long getValue() { return store.getSpilledBytes(); }
+            });
+        
+        return new GroupQueueFactory<HazeltaskTask<G>, G>() {
+            public ITrackedQueue<HazeltaskTask<G>> createQueue(G group) {
+                return new SpillableTrackedQueue<HazeltaskTask<G>>(headFactory.createQueue(group), store);
+            }
+        };
+    }
+	
+	/**
+     * @return null unless the adaptive thread count is enabled
+     */
+    public WorkerPoolController getWorkerPoolController() {
+        return workerPoolController;
+    }
+    
 	/**
      * This is not thread safe
      * @param listener
@@ -212,11 +339,32 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	}
 	
 	public Map<G, Integer> getGroupSizes() {
-	    return getGroupSizes(null);
+	    return getGroupSizes((Predicate<G>) null);
+	}
+	
+	/**
+	 * The queue size and the estimated time for our threads to run everything queued
+	 * @return
+	 */
+	public MemberLoad getMemberLoad() {
+	    int threadCount = Math.max(1, localExecutorPool.getCorePoolSize());
+	    double capacity = getCapacityWeight();
+	    double work = groupExecutionTimes.getEstimatedWork(getGroupSizes());
+	    return new MemberLoad(taskQueue.size(), threadCount, work / capacity, capacity);
+	}
+	
+	/**
+	 * @see com.hazeltask.config.ExecutorLoadBalancingConfig#withCapacityWeight
+	 */
+	public double getCapacityWeight() {
+	    double weight = executorConfig.getLoadBalancingConfig().getCapacityWeight();
+	    if(weight > 0)
+	        return weight;
+	    return Math.max(1, localExecutorPool.getCorePoolSize());
 	}
 	
 	/**
-	 * TODO: should we index this predicate somehow?
+	 * This tests every group.  If you know the groups you want use getGroupSizes(Collection)
 	 * 
 	 * @param predicate
 	 * @return
@@ -229,6 +377,29 @@ public class LocalTaskExecutorService<G extends Serializable> {
             ctx.stop();
         }
     }
+	
+	public Map<G, Integer> getGroupSizes(Collection<G> groups) {
+	    Timer.Context ctx = getGroupSizesTimer.time();
+	    try {
+	        return this.taskQueue.getGroupSizes(groups);
+	    } finally {
+	        ctx.stop();
+	    }
+	}
+	
+	/**
+	 * @return the limit largest groups, truncated if there were more non-empty groups
+	 */
+	public GroupSizes<G> getLargestGroups(int limit, Predicate<G> predicate) {
+	    Timer.Context ctx = getGroupSizesTimer.time();
+	    try {
+	        //ask for one extra to find out if there were more
+	        GroupSizes<G> largest = new GroupSizes<G>(this.taskQueue.getLargestGroups(limit + 1, predicate), false);
+	        return largest.largest(limit);
+	    } finally {
+	        ctx.stop();
+	    }
+	}
     
     public void clearGroup(G group) {
         Queue<HazeltaskTask<G>> q = taskQueue.getQueueByGroup(group);
@@ -237,7 +408,7 @@ public class LocalTaskExecutorService<G extends Serializable> {
             try {
                 HazeltaskTask<G> next = queueIterator.next();
                 if(executorConfig.isFutureSupportEnabled())
-                    executorTopologyService.broadcastTaskCancellation(next.getId(), next.getTaskInfo());
+                    executorTopologyService.sendTaskCancellation(next);
                 executorTopologyService.removePendingTask(next);
                 queueIterator.remove();            
             } catch (NoSuchElementException e) {
@@ -266,7 +437,9 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	}
 	
 	public Collection<HazeltaskTask<G>> stealTasks(long numberOfTasks) {
-	    if(!this.localExecutorPool.isShutdown()) {
+	    if(!this.localExecutorPool.isShutdown() && executorConfig.getLoadBalancingConfig().isGroupPreservingSteal()) {
+	        return stealGroups(numberOfTasks);
+	    } else if(!this.localExecutorPool.isShutdown()) {
     	    long totalSize = taskQueue.size();
     	    ArrayList<HazeltaskTask<G>> result = new ArrayList<HazeltaskTask<G>>((int)numberOfTasks);
     	    for(G group : this.taskQueue.getGroups()) {
@@ -297,16 +470,224 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	    }
 	}
 
+	/**
+	 * Hand the next chunk of a steal to the member stealing from us.  The chunk before it 
+	 * is acknowledged by ack and is let go of here.
+	 * 
+	 * @see StealSessions
+	 */
+	public StolenTaskChunk<G> stealChunk(UUID stealId, long numberOfTasks, int chunkSize, int ack) {
+	    if(this.localExecutorPool.isShutdown()) {
+	        log.warn("Cannot steal "+numberOfTasks+" tasks.  The executor threads are shutdown.");
+	        return StolenTaskChunk.done(ack);
+	    }
+	    startStealSessionReaper();
+	    return stealSessions.next(stealId, numberOfTasks, chunkSize, ack, new StealSessions.TaskSource<G>() {
+	        public Collection<HazeltaskTask<G>> take(long numberOfTasks) {
+	            return stealTasks(numberOfTasks);
+	        }
+	    });
+	}
+	
+	/**
+	 * Most members are never stolen from so the thread that times out steal sessions is 
+	 * only started once there is a session to time out
+	 */
+	private void startStealSessionReaper() {
+	    synchronized (stealSessionThreadFactory) {
+	        if(stealSessionReaper != null || stealSessionReaperStopped)
+	            return;
+	        long stealSessionTimeout = getStealSessionTimeout();
+	        stealSessionReaper = Executors.newSingleThreadScheduledExecutor(stealSessionThreadFactory);
+	        stealSessionReaper.scheduleWithFixedDelay(new Runnable() {
+	            public void run() {
+	                try {
+	                    reclaimExpiredSteals();
+	                } catch (Throwable t) {
+	                    log.error("Unable to reclaim tasks from expired steals", t);
+	                }
+	            }
+	        }, stealSessionTimeout, Math.max(1, stealSessionTimeout / 2), TimeUnit.MILLISECONDS);
+	    }
+	}
+	
+	/**
+	 * A thief waits up to the steal chunk timeout for each chunk and then takes ownership 
+	 * of it before asking for the next.  We hold its unacknowledged chunk for twice that.
+	 */
+	private long getStealSessionTimeout() {
+	    return 2 * executorConfig.getLoadBalancingConfig().getStealChunkTimeout();
+	}
+	
+	private void stopStealSessionReaper() {
+	    synchronized (stealSessionThreadFactory) {
+	        stealSessionReaperStopped = true;
+	        if(stealSessionReaper != null)
+	            stealSessionReaper.shutdownNow();
+	    }
+	}
+	
+	/**
+	 * Put the unacknowledged chunks of thieves that went quiet back in our queue
+	 */
+	private void reclaimExpiredSteals() {
+	    List<HazeltaskTask<G>> tasks = stealSessions.removeExpired();
+	    if(tasks.isEmpty())
+	        return;
+	    if(this.localExecutorPool.isShutdown()) {
+	        //they are still in the WAL so task recovery will pick them up
+	        log.warn("Unable to reclaim "+tasks.size()+" unacknowledged stolen tasks.  The executor threads are shutdown.");
+	        return;
+	    }
+	    for(HazeltaskTask<G> task : tasks) {
+	        execute(task);
+	    }
+	    log.info("Reclaimed "+tasks.size()+" unacknowledged stolen tasks");
+	}
+
+	/**
+	 * Steal whole groups where they fit, largest first, then the newest tail of the 
+	 * largest group that is left.  At most one group is split and the tasks of every 
+	 * group that remain here are its oldest.
+	 */
+	private Collection<HazeltaskTask<G>> stealGroups(long numberOfTasks) {
+	    final Map<G, Integer> groupSizes = getGroupSizes();
+	    List<G> groups = new ArrayList<G>(groupSizes.keySet());
+	    Collections.sort(groups, new Comparator<G>() {
+	        public int compare(G o1, G o2) {
+	            return groupSizes.get(o2).compareTo(groupSizes.get(o1));
+	        }
+	    });
+	    
+	    int remaining = (int) Math.min(Integer.MAX_VALUE, numberOfTasks);
+	    List<HazeltaskTask<G>> result = new ArrayList<HazeltaskTask<G>>(Math.min(remaining, taskQueue.size()));
+	    for(Iterator<G> it = groups.iterator(); it.hasNext() && remaining > 0;) {
+	        G group = it.next();
+	        int size = groupSizes.get(group);
+	        if(size > 0 && size <= remaining) {
+	            remaining -= taskQueue.drainNewestTo(group, result, size);
+	            it.remove();
+	        }
+	    }
+	    
+	    for(G group : groups) {
+	        if(remaining <= 0)
+	            break;
+	        remaining -= taskQueue.drainNewestTo(group, result, remaining);
+	    }
+	    return result;
+	}
+
 	//TODO: time how long it takes to shutdown
 	public void shutdown() {
+	    stopStealSessionReaper();
 	    localExecutorPool.shutdown();
+	    //unacknowledged stolen tasks go back in the queue so they are snapshotted with the rest
+	    for(HazeltaskTask<G> task : stealSessions.removeAll()) {
+	        taskQueue.offer(task);
+	    }
+	    if(queueSnapshot != null)
+	        writeQueueSnapshot();
+	    if(completionBatcher != null)
+	        completionBatcher.close();
+	}
+	
+	/**
+	 * Take up to max tasks out of the local queue without running them
+	 * @param max
+	 * @return
+	 */
+	public List<HazeltaskTask<G>> drainQueue(int max) {
+	    List<HazeltaskTask<G>> tasks = new ArrayList<HazeltaskTask<G>>(Math.min(max, taskQueue.size()));
+	    taskQueue.drainTo(tasks, max);
+	    return tasks;
+	}
+	
+	/**
+	 * Move everything still queued into the snapshot file.  Tasks in progress are left 
+	 * to finish.  The WAL entries are left alone, restoreQueueSnapshot uses them to make 
+	 * sure a task wasn't recovered by another member while we were down.  The other 
+	 * members are told so they don't recover the tasks as soon as we leave.
+	 */
+	private void writeQueueSnapshot() {
+	    List<HazeltaskTask<G>> tasks = drainQueue(Integer.MAX_VALUE);
+	    try {
+	        queueSnapshot.write(tasks);
+	        log.info("Wrote "+tasks.size()+" queued tasks to "+queueSnapshot.getFile());
+	    } catch (IOException e) {
+	        //they are still in the WAL so task recovery will pick them up
+	        log.error("Unable to write queue snapshot to "+queueSnapshot.getFile()+". "+tasks.size()+" tasks will be recovered from the write ahead log", e);
+	        return;
+	    }
+	    if(tasks.isEmpty())
+	        return;
+	    try {
+	        executorTopologyService.publishCleanShutdown(executorConfig.getLocalQueueSnapshotGracePeriod());
+	    } catch (RuntimeException e) {
+	        //the snapshot is still good for the tasks nobody recovers before we are back
+	        log.warn("Unable to publish our clean shutdown.  Our tasks will be recovered as soon as we leave", e);
+	    }
+	}
+	
+	/**
+	 * Re-enqueue the tasks from a snapshot written on the last graceful shutdown.  This 
+	 * should be called before this member is marked ready.
+	 * <p>
+	 * A task is only reclaimed if its WAL entry still exists with the same submission 
+	 * count, and it is taken over under the next epoch in the same step.  Otherwise it 
+	 * already completed or was resubmitted by task recovery while we were down.  Tasks are
+	 * reclaimed in batches, one message per partition owner each, so a large snapshot is 
+	 * back in our queue well within the grace period.
+	 * 
+	 * @return the number of tasks reclaimed
+	 */
+	public int restoreQueueSnapshot() {
+	    if(queueSnapshot == null || !queueSnapshot.exists())
+	        return 0;
+	    
+	    List<HazeltaskTask<G>> tasks;
+	    try {
+	        tasks = queueSnapshot.read();
+	    } catch (IOException e) {
+	        log.error("Unable to read queue snapshot "+queueSnapshot.getFile()+". Its tasks will be recovered from the write ahead log", e);
+	        queueSnapshot.delete();
+	        return 0;
+	    }
+	    
+	    String me = hazelcast.getCluster().getLocalMember().getUuid();
+	    int reclaimed = 0;
+	    for(List<HazeltaskTask<G>> batch : Lists.partition(tasks, RESTORE_BATCH_SIZE)) {
+	        //we have a new member uuid, the entries still name the one we shut down as
+	        Map<UUID, Integer> held = new HashMap<UUID, Integer>(batch.size() * 4 / 3 + 1);
+	        for(HazeltaskTask<G> task : batch) {
+	            held.put(task.getId(), task.getSubmissionCount());
+	        }
+	        Map<UUID, Integer> owned = executorTopologyService.reclaimPendingTasks(held);
+	        for(HazeltaskTask<G> task : batch) {
+	            Integer epoch = owned.get(task.getId());
+	            if(epoch != null) {
+	                task.setSubmissionCount(epoch);
+	                task.setOwner(me);
+	                execute(task);
+	                reclaimed++;
+	            }
+	        }
+	    }
+	    queueSnapshot.delete();
+	    log.info("Reclaimed "+reclaimed+" of "+tasks.size()+" tasks from queue snapshot "+queueSnapshot.getFile());
+	    return reclaimed;
 	}
 	
 	//TODO: time how long it takes to shutdown
 	//SuppressWarnings I really want to return HazeltaskTasks instead of Runnable
 	@SuppressWarnings({ "unchecked", "rawtypes" })
     public List<HazeltaskTask<G>> shutdownNow() {
-	    return (List<HazeltaskTask<G>>) (List) localExecutorPool.shutdownNow();
+	    stopStealSessionReaper();
+	    List<HazeltaskTask<G>> tasks = (List<HazeltaskTask<G>>) (List) localExecutorPool.shutdownNow();
+	    tasks.addAll(stealSessions.removeAll());
+	    if(completionBatcher != null)
+	        completionBatcher.close();
+	    return tasks;
 	}
 
 	public boolean isShutdown() {
@@ -321,7 +702,7 @@ public class LocalTaskExecutorService<G extends Serializable> {
                 HazeltaskTask<G> task = it.next();
                 if(task.getId().equals(taskId)) {
                     if(executorConfig.isFutureSupportEnabled())
-                        executorTopologyService.broadcastTaskCancellation(taskId, task.getTaskInfo());                
+                        executorTopologyService.sendTaskCancellation(task);                
                     it.remove();
                     return true;
                 }
@@ -0,0 +1,47 @@
+package com.hazeltask.executor.local;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.codahale.metrics.Counter;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * Handles tasks the worker pool can't take, usually because the off heap queue is out of
+ * capacity.  Instead of throwing back at whoever sent the task we leave it in the write
+ * ahead log with no owner.  Task recovery treats a task without a live owner as lost and
+ * hands it out again once it is older than the recovery cutoff.
+ *
+ * @author jclawson
+ *
+ * @param <G>
+ */
+@Slf4j
+class ReleaseOwnershipPolicy<G extends Serializable> implements RejectedExecutionHandler {
+    private final IExecutorTopologyService<G> executorTopologyService;
+    private final Counter rejectedCounter;
+
+    ReleaseOwnershipPolicy(IExecutorTopologyService<G> executorTopologyService, Counter rejectedCounter) {
+        this.executorTopologyService = executorTopologyService;
+        this.rejectedCounter = rejectedCounter;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        rejectedCounter.inc();
+        HazeltaskTask<G> task = (HazeltaskTask<G>) r;
+        log.warn("The local queue is full, leaving task "+task.getId()+" in the write ahead log for recovery");
+        task.setOwner(null);
+        try {
+            executorTopologyService.updatePendingTasks(Collections.singletonList(task));
+        } catch (RuntimeException e) {
+            //the entry still names us, it will be recovered if we leave
+            log.error("Unable to release ownership of task "+task.getId(), e);
+        }
+    }
+}
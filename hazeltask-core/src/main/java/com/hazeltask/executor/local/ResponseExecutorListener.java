@@ -23,6 +23,12 @@ public class ResponseExecutorListener< G extends Serializable> implements Execut
     public void afterExecute(HazeltaskTask<G> runnable, Throwable exception) {
         //we finished this work... lets tell everyone about it!
         HazeltaskTask<G> task = (HazeltaskTask<G>)runnable;
+        //TaskResponseListeners anywhere in the cluster want responses nobody holds a future for
+        if(!task.isReplyRequired() && !service.isTaskResponsePublishingEnabled()) {
+            //fire and forget, nobody is listening
+            return;
+        }
+        
         boolean success = exception == null && task.getException() == null;
         
         Timer.Context ctx = null;
@@ -32,17 +38,17 @@ public class ResponseExecutorListener< G extends Serializable> implements Execut
         try {
             //Member me = topology.getHazelcast().getCluster().getLocalMember();
             if(success) {
-                service.broadcastTaskCompletion(task.getId(), (Serializable)task.getResult(), task.getTaskInfo());
+                service.sendTaskCompletion(task, (Serializable)task.getResult());
                 //response = new WorkResponse(me, work.getUniqueIdentifier(), (Serializable)work.getResult(), WorkResponse.Status.SUCCESS);
             } else {
                 Throwable resolvedException = (task.getException() != null) ? task.getException() : exception;
-                service.broadcastTaskError(task.getId(), resolvedException, task.getTaskInfo());
+                service.sendTaskError(task, resolvedException);
                 //response = new WorkResponse(me, work.getUniqueIdentifier(), work.getException());
             }
             //TODO: handle work cancellation
             
             //topology.getWorkResponseTopic().publish(response);
-            //service.broadcastTaskCompletion(response);
+            //service.sendTaskCompletion(response);
         } catch(RuntimeException e) {
             log.error("An error occurred while attempting to notify members of completed task", e);
         } finally {
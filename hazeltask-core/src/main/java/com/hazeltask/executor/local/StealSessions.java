@@ -0,0 +1,132 @@
+package com.hazeltask.executor.local;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.hazeltask.executor.steal.StolenTaskChunk;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * The victim's side of a chunked steal.  A chunk that was sent stays here until the 
+ * thief acknowledges it by asking for the next chunk.  If the thief goes quiet for longer 
+ * than the lease time its unacknowledged chunk is put back in the local queue.  The lease 
+ * time has to be longer than the thief waits for a chunk, or we could put a chunk back 
+ * that the thief is still going to get.
+ * <p>
+ * If the acknowledgement is lost after the thief queued a chunk, the chunk is put back 
+ * here too and those tasks run twice.  That is the same guarantee task recovery gives.
+ * 
+ * @author jclawson
+ *
+ * @param <G>
+ */
+class StealSessions<G extends Serializable> {
+    private final Map<UUID, Session<G>> sessions = new HashMap<UUID, Session<G>>();
+    private final long leaseTime;
+    
+    StealSessions(long leaseTime) {
+        this.leaseTime = leaseTime;
+    }
+    
+    /**
+     * Takes tasks out of the local queue
+     */
+    static interface TaskSource<G extends Serializable> {
+        public Collection<HazeltaskTask<G>> take(long numberOfTasks);
+    }
+    
+    /**
+     * @param stealId - identifies the thief's steal
+     * @param numberOfTasks - the total the thief wants
+     * @param ack - the sequence of the last chunk the thief received, 0 for none
+     */
+    StolenTaskChunk<G> next(UUID stealId, long numberOfTasks, int chunkSize, int ack, TaskSource<G> source) {
+        Session<G> session;
+        long take;
+        synchronized (this) {
+            session = sessions.get(stealId);
+            if(session == null) {
+                session = new Session<G>(numberOfTasks);
+                sessions.put(stealId, session);
+            }
+            session.touched = System.currentTimeMillis();
+            
+            if(session.pending != null) {
+                if(ack != session.sequence) {
+                    //the thief didn't get the last chunk, send it again
+                    return new StolenTaskChunk<G>(session.sequence, session.pending);
+                }
+                session.pending = null;
+            }
+            
+            take = chunkSize > 0 ? Math.min(chunkSize, session.remaining) : 0;
+            session.remaining -= take;
+        }
+        
+        //the queue is drained without holding up the other thieves.  A thief asks for one 
+        //chunk at a time so nothing else changes this session meanwhile
+        List<HazeltaskTask<G>> tasks = new ArrayList<HazeltaskTask<G>>();
+        if(take > 0)
+            tasks.addAll(source.take(take));
+        
+        synchronized (this) {
+            if(tasks.isEmpty()) {
+                sessions.remove(stealId);
+                return StolenTaskChunk.done(session.sequence);
+            }
+            
+            session.remaining += take - tasks.size();
+            session.sequence++;
+            session.pending = tasks;
+            session.touched = System.currentTimeMillis();
+            //don't lose the chunk if the session expired while we drained
+            sessions.put(stealId, session);
+            return new StolenTaskChunk<G>(session.sequence, tasks);
+        }
+    }
+    
+    /**
+     * @return the unacknowledged tasks of thieves that went quiet
+     */
+    synchronized List<HazeltaskTask<G>> removeExpired() {
+        return remove(System.currentTimeMillis() - leaseTime);
+    }
+    
+    /**
+     * @return every unacknowledged task
+     */
+    synchronized List<HazeltaskTask<G>> removeAll() {
+        return remove(Long.MAX_VALUE);
+    }
+    
+    private List<HazeltaskTask<G>> remove(long touchedBefore) {
+        List<HazeltaskTask<G>> tasks = new ArrayList<HazeltaskTask<G>>();
+        Iterator<Session<G>> it = sessions.values().iterator();
+        while(it.hasNext()) {
+            Session<G> session = it.next();
+            if(session.touched < touchedBefore) {
+                if(session.pending != null)
+                    tasks.addAll(session.pending);
+                it.remove();
+            }
+        }
+        return tasks;
+    }
+    
+    private static class Session<G extends Serializable> {
+        private long remaining;
+        private int sequence;
+        private List<HazeltaskTask<G>> pending;
+        private long touched;
+        
+        Session(long remaining) {
+            this.remaining = remaining;
+        }
+    }
+}
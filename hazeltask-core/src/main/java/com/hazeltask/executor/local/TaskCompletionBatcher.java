@@ -0,0 +1,171 @@
+package com.hazeltask.executor.local;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.hazelcast.core.Member;
+import com.hazeltask.executor.ExecutorListener;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.TaskResponse;
+
+/**
+ * Replaces the ResponseExecutorListener and the per task write ahead log removal when
+ * completion batching is enabled.
+ * <p>
+ * Completed tasks are buffered per origin member.  A buffer is sent as one message when
+ * it reaches maxBatchSize, or by a background thread every flushInterval.  The origin
+ * removes the tasks from the write ahead log and hands the responses to its futures.
+ * <p>
+ * After close() completions are sent right away since nothing will flush them.
+ *
+ * @author jclawson
+ *
+ */
+@Slf4j
+public class TaskCompletionBatcher<G extends Serializable> implements ExecutorListener<G> {
+    private final IExecutorTopologyService<G> executorTopologyService;
+    private final Member localMember;
+    private final boolean sendResponses;
+    private final int maxBatchSize;
+    private final Meter taskErrorsMeter;
+    private final Timer taskFinishedNotificationTimer;
+    //by origin member uuid
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<String, Batch>();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param sendResponses - false if future support is disabled
+     */
+    public TaskCompletionBatcher(IExecutorTopologyService<G> executorTopologyService, Member localMember, boolean sendResponses,
+                                 long flushInterval, int maxBatchSize, ThreadFactory threadFactory,
+                                 Meter taskErrorsMeter, Timer taskFinishedNotificationTimer) {
+        this.executorTopologyService = executorTopologyService;
+        this.localMember = localMember;
+        this.sendResponses = sendResponses;
+        this.maxBatchSize = maxBatchSize;
+        this.taskErrorsMeter = taskErrorsMeter;
+        this.taskFinishedNotificationTimer = taskFinishedNotificationTimer;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    //don't let this cancel the flusher
+                    log.error("An error occurred while sending task completions", t);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void beforeExecute(HazeltaskTask<G> runnable) {}
+
+    public void afterExecute(HazeltaskTask<G> task, Throwable exception) {
+        if(exception != null) {
+            taskErrorsMeter.mark();
+        }
+
+        TaskResponse<Serializable> response = null;
+        //TaskResponseListeners anywhere in the cluster want responses nobody holds a future for
+        if(sendResponses && (task.isReplyRequired() || executorTopologyService.isTaskResponsePublishingEnabled())) {
+            if(exception == null && task.getException() == null) {
+                response = new TaskResponse<Serializable>(localMember, task.getId(), task.getTaskInfo(), (Serializable)task.getResult(), TaskResponse.Status.SUCCESS);
+            } else {
+                Throwable resolvedException = (task.getException() != null) ? task.getException() : exception;
+                response = new TaskResponse<Serializable>(localMember, task.getId(), task.getTaskInfo(), resolvedException);
+            }
+        }
+
+        //without an origin nobody has a future, but we still have to clean up the WAL
+        String origin = task.getOrigin() != null ? task.getOrigin() : localMember.getUuid();
+        Batch batch = getBatch(origin);
+        if(batch.add(task.getId(), task.getSubmissionCount(), response) >= maxBatchSize || closed) {
+            send(origin, batch);
+        }
+    }
+
+    private Batch getBatch(String origin) {
+        Batch batch = batches.get(origin);
+        if(batch == null) {
+            batch = new Batch();
+            Batch existing = batches.putIfAbsent(origin, batch);
+            if(existing != null)
+                batch = existing;
+        }
+        return batch;
+    }
+
+    /**
+     * Send everything that is buffered
+     */
+    public void flush() {
+        for(Entry<String, Batch> entry : batches.entrySet()) {
+            send(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void send(String origin, Batch batch) {
+        Map<UUID, Integer> completedTasks;
+        List<TaskResponse<Serializable>> responses;
+        synchronized (batch) {
+            if(batch.completedTasks.isEmpty())
+                return;
+            completedTasks = batch.completedTasks;
+            responses = batch.responses;
+            batch.completedTasks = new HashMap<UUID, Integer>();
+            batch.responses = new ArrayList<TaskResponse<Serializable>>();
+        }
+
+        Timer.Context ctx = taskFinishedNotificationTimer.time();
+        try {
+            executorTopologyService.sendTaskCompletions(origin, completedTasks, responses);
+        } catch (RuntimeException e) {
+            log.error("An error occurred while attempting to send "+completedTasks.size()+" completed tasks to "+origin, e);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    /**
+     * Stop the background flush and send anything that is buffered
+     */
+    public void close() {
+        closed = true;
+        flusher.shutdown();
+        flush();
+    }
+
+    private static class Batch {
+        //task id -> the epoch it ran under
+        private Map<UUID, Integer> completedTasks = new HashMap<UUID, Integer>();
+        private List<TaskResponse<Serializable>> responses = new ArrayList<TaskResponse<Serializable>>();
+
+        /**
+         * @return the size of the batch
+         */
+        synchronized int add(UUID taskId, int epoch, TaskResponse<Serializable> response) {
+            completedTasks.put(taskId, epoch);
+            if(response != null)
+                responses.add(response);
+            return completedTasks.size();
+        }
+    }
+}
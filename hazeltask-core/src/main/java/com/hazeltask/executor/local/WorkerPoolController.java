@@ -0,0 +1,176 @@
+package com.hazeltask.executor.local;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+
+/**
+ * Resizes the worker pool between the configured bounds.  The queue is unbounded so a
+ * ThreadPoolExecutor never grows past its core size by itself, this moves the core size.
+ * <p>
+ * Queue wait is estimated with Little's law from the queue size and the throughput since
+ * the last check.  While it is above the target we add one thread per check.  If the
+ * thread we just added didn't raise throughput the tasks are limited by something other
+ * than threads, so we take it back and don't try again for a while.  No completions at all
+ * counts as no gain, more threads won't help tasks that are all stuck.  We never grow while
+ * this process keeps the CPUs saturated.  An empty queue shrinks the pool by a quarter per check.
+ *
+ * @author jclawson
+ *
+ */
+@Slf4j
+public class WorkerPoolController extends BackoffTask {
+    //throughput has to rise this much for a new thread to count as helping
+    private static final double MIN_GAIN = 0.05;
+    private static final double CPU_LIMIT = 0.9;
+    //checks to wait after a thread didn't help before growing again
+    private static final int COOLDOWN = 5;
+
+    private final HazeltaskThreadPoolExecutor pool;
+    private final Collection<?> queue;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final int minThreads;
+    private final int maxThreads;
+    private final long targetWait;
+    private final Counter growCounter;
+    private final Counter shrinkCounter;
+
+    private volatile int size;
+    private volatile long estimatedWait;
+
+    //only used by the timer thread
+    private long lastCompleted;
+    private long lastCheck;
+    private long lastCpuTime;
+    private double lastThroughput;
+    private boolean lastGrew;
+    private int cooldown;
+
+    WorkerPoolController(HazeltaskThreadPoolExecutor pool, Collection<?> queue, ExecutorConfig<?> config, ExecutorMetrics metrics) {
+        this.pool = pool;
+        this.queue = queue;
+        this.minThreads = config.getThreadCount();
+        this.maxThreads = config.getMaxThreadPoolSize();
+        this.targetWait = config.getAdaptiveThreadTargetWait();
+        this.size = pool.getCorePoolSize();
+        this.lastCompleted = pool.getCompletedTaskCount();
+        this.lastCheck = System.currentTimeMillis();
+        this.lastCpuTime = getProcessCpuTime();
+
+        growCounter = metrics.getWorkerPoolGrowCount().getMetric();
+        shrinkCounter = metrics.getWorkerPoolShrinkCount().getMetric();
+        metrics.registerWorkerPoolGauges(
+            new Gauge<Integer>() {
+                public Integer getValue() { return size; }
+            },
+            new Gauge<Long>() {
+                public Long getValue() { return estimatedWait; }
+            });
+    }
+
+    @Override
+    public boolean execute() {
+        try {
+            if(pool.isShutdown())
+                return false;
+
+            long now = System.currentTimeMillis();
+            long completed = pool.getCompletedTaskCount();
+            long cpuTime = getProcessCpuTime();
+            int next = adjust(completed - lastCompleted, queue.size(), getCpuLoad(cpuTime, now - lastCheck), now - lastCheck);
+            lastCompleted = completed;
+            lastCheck = now;
+            lastCpuTime = cpuTime;
+
+            if(next != pool.getCorePoolSize()) {
+                log.debug("Resizing worker pool from "+pool.getCorePoolSize()+" to "+next+" threads, estimated queue wait is "+estimatedWait+"ms");
+                pool.setCorePoolSize(next);
+            }
+            return false;
+        } catch (Throwable t) {
+            //catch all exceptions and swallow so it doens't cancel our timer task
+            log.error("Error resizing the worker pool", t);
+            return true;
+        }
+    }
+
+    /**
+     * @param completed - tasks completed since the last check
+     * @param queued - tasks waiting in the queue now
+     * @param cpuLoad - 0 to 1, or negative if unknown
+     * @param elapsed - millis since the last check
+     * @return the pool size to use
+     */
+    int adjust(long completed, int queued, double cpuLoad, long elapsed) {
+        double throughput = elapsed > 0 ? completed * 1000.0 / elapsed : 0;
+        if(queued == 0)
+            estimatedWait = 0;
+        else if(throughput > 0)
+            estimatedWait = (long) (queued * 1000 / throughput);
+        else
+            estimatedWait = Long.MAX_VALUE;
+
+        int next = size;
+        boolean grew = false;
+        if(cooldown > 0)
+            cooldown--;
+
+        if(queued == 0) {
+            next = Math.max(minThreads, size - Math.max(1, size / 4));
+        } else if(estimatedWait > targetWait) {
+            if(lastGrew && throughput < lastThroughput * (1 + MIN_GAIN)) {
+                next = Math.max(minThreads, size - 1);
+                cooldown = COOLDOWN;
+            } else if(cooldown == 0 && throughput > 0 && cpuLoad < CPU_LIMIT && size < maxThreads) {
+                next = size + 1;
+                grew = true;
+            }
+        }
+
+        if(next > size)
+            growCounter.inc();
+        else if(next < size)
+            shrinkCounter.inc();
+
+        lastGrew = grew;
+        lastThroughput = throughput;
+        size = next;
+        return next;
+    }
+
+    /**
+     * The CPU this process used since the last check, spread over the processors.  Other 
+     * processes on the box don't stop us from growing, only our own threads do.
+     */
+    private double getCpuLoad(long cpuTime, long elapsed) {
+        if(cpuTime < 0 || lastCpuTime < 0 || elapsed <= 0)
+            return -1;
+        return (cpuTime - lastCpuTime) / (TimeUnit.MILLISECONDS.toNanos(elapsed) * (double) os.getAvailableProcessors());
+    }
+    
+    /**
+     * @return the nanos of CPU this process used, or -1 if the JVM doesn't tell us
+     */
+    private long getProcessCpuTime() {
+        if(os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        return -1;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getEstimatedWait() {
+        return estimatedWait;
+    }
+}
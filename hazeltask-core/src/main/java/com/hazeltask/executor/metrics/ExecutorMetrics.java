@@ -6,6 +6,7 @@ import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.hazeltask.ClusterService;
 import com.hazeltask.HazeltaskTopologyService;
 import com.hazeltask.config.HazeltaskConfig;
 import com.hazeltask.core.metrics.Metric;
@@ -72,6 +73,16 @@ public class ExecutorMetrics {
 	private final Metric<Timer> findFailedFuturesTimer;
 	private final Metric<Counter> failedFuturesCount;
 
+	private final Metric<Counter> workerPoolGrowCount;
+	private final Metric<Counter> workerPoolShrinkCount;
+	private final Metric<Counter> localQueueRejections;
+
+	private final Metric<Counter> recoveredTaskCount;
+	private final Metric<Counter> recoveryBatchFailures;
+
+	private final Metric<Timer> walCommitTimer;
+	private final Metric<Histogram> walBatchSizeHistogram;
+
 	public ExecutorMetrics(HazeltaskConfig<?> config) {
 		this.topologyName = config.getTopologyName();
 		this.metrics = config.getMetricsRegistry();
@@ -168,6 +179,30 @@ public class ExecutorMetrics {
 		name = createMetricName(DistributedFutureTracker.class,
 				"failed-futures-count");
 		failedFuturesCount = new Metric<Counter>(name, metrics.counter(name));
+
+		name = createMetricName(LocalTaskExecutorService.class,
+				"worker-pool-grow-count");
+		workerPoolGrowCount = new Metric<Counter>(name, metrics.counter(name));
+
+		name = createMetricName(LocalTaskExecutorService.class,
+				"worker-pool-shrink-count");
+		workerPoolShrinkCount = new Metric<Counter>(name, metrics.counter(name));
+
+		name = createMetricName(LocalTaskExecutorService.class,
+				"queue-full-rejections");
+		localQueueRejections = new Metric<Counter>(name, metrics.counter(name));
+
+		name = createMetricName(TaskRecoveryTimerTask.class, "recovered-count");
+		recoveredTaskCount = new Metric<Counter>(name, metrics.counter(name));
+
+		name = createMetricName(TaskRecoveryTimerTask.class, "batch-failures");
+		recoveryBatchFailures = new Metric<Counter>(name, metrics.counter(name));
+
+		name = createMetricName(DistributedExecutorService.class, "wal-commit-time");
+		walCommitTimer = new Metric<Timer>(name, metrics.timer(name));
+
+		name = createMetricName(DistributedExecutorService.class, "wal-batch-size");
+		walBatchSizeHistogram = new Metric<Histogram>(name, metrics.histogram(name));
 	}
 
 	public Metric<Timer> getRecoveryTimer() {
@@ -255,6 +290,45 @@ public class ExecutorMetrics {
 		metrics.register(name, gauge);
 	}
 
+	/**
+	 * Bytes held by queued tasks stored off heap, the direct memory reserved
+	 * for them, and the configured limit
+	 */
+	public void registerOffHeapQueueGauges(Gauge<Long> usedBytes, Gauge<Long> reservedBytes, Gauge<Long> capacityBytes) {
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "offheap-used-bytes"), usedBytes);
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "offheap-reserved-bytes"), reservedBytes);
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "offheap-capacity-bytes"), capacityBytes);
+	}
+
+	public void registerSpillGauges(Gauge<Long> inMemoryTasks, Gauge<Long> spilledTasks, Gauge<Long> spilledBytes) {
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "spill-in-memory-tasks"), inMemoryTasks);
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "spill-spilled-tasks"), spilledTasks);
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "spill-spilled-bytes"), spilledBytes);
+	}
+
+	/**
+	 * The size the adaptive worker pool was last set to and the queue wait time
+	 * it was estimated from
+	 */
+	public void registerWorkerPoolGauges(Gauge<Integer> poolSize, Gauge<Long> estimatedQueueWait) {
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "worker-pool-size"), poolSize);
+		metrics.register(createMetricName(LocalTaskExecutorService.class, "estimated-queue-wait"), estimatedQueueWait);
+	}
+
+	/**
+	 * Tasks left in the recovery pass that is running, 0 between passes
+	 */
+	public void registerRecoveryBacklogGauge(Gauge<Integer> backlog) {
+		metrics.register(createMetricName(TaskRecoveryTimerTask.class, "backlog"), backlog);
+	}
+
+	/**
+	 * Millis since a ClusterService statistic snapshot was fetched
+	 */
+	public void registerStatisticsSnapshotAgeGauge(String statistic, Gauge<Long> age) {
+		metrics.register(createMetricName(ClusterService.class, statistic+"-snapshot-age"), age);
+	}
+
 	public void registerLocalWriteAheadLogSizeGauge(Gauge<Integer> gauge) {
 		String name = createMetricName(DistributedExecutorService.class,
 				"write-ahead-log-size");
@@ -305,4 +379,44 @@ public class ExecutorMetrics {
 		return failedFuturesCount;
 	}
 
+	public Metric<Counter> getWorkerPoolGrowCount() {
+		return workerPoolGrowCount;
+	}
+
+	public Metric<Counter> getWorkerPoolShrinkCount() {
+		return workerPoolShrinkCount;
+	}
+
+	public Metric<Counter> getRecoveredTaskCount() {
+		return recoveredTaskCount;
+	}
+
+	/**
+	 * Recovered batches that couldn't be sent and were resubmitted one task at a time
+	 */
+	/**
+	 * Tasks the local queue had no room for, left in the write ahead log for recovery
+	 */
+	public Metric<Counter> getLocalQueueRejections() {
+		return localQueueRejections;
+	}
+
+	public Metric<Counter> getRecoveryBatchFailures() {
+		return recoveryBatchFailures;
+	}
+
+	/**
+	 * How long each group commit of the write ahead log takes
+	 */
+	public Metric<Timer> getWalCommitTimer() {
+		return walCommitTimer;
+	}
+
+	/**
+	 * How many tasks each group commit of the write ahead log writes
+	 */
+	public Metric<Histogram> getWalBatchSizeHistogram() {
+		return walBatchSizeHistogram;
+	}
+
 }
@@ -0,0 +1,78 @@
+package com.hazeltask.executor.steal;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of how much work a member has queued
+ * 
+ * @author jclawson
+ *
+ */
+public class MemberLoad implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final long queueSize;
+    private final int threadCount;
+    private final double estimatedDrainTime;
+    private final double capacity;
+    
+    /**
+     * @param queueSize - tasks in the local queue
+     * @param threadCount - worker threads
+     * @param estimatedDrainTime - estimated millis for the worker threads to run everything
+     *                             in the queue
+     */
+    public MemberLoad(long queueSize, int threadCount, double estimatedDrainTime) {
+        this(queueSize, threadCount, estimatedDrainTime, threadCount);
+    }
+    
+    /**
+     * @param capacity - the capacity weight of the member, estimatedDrainTime must be the 
+     *                   queued work divided by this
+     */
+    public MemberLoad(long queueSize, int threadCount, double estimatedDrainTime, double capacity) {
+        this.queueSize = queueSize;
+        this.threadCount = threadCount;
+        this.estimatedDrainTime = estimatedDrainTime;
+        this.capacity = capacity;
+    }
+
+    public long getQueueSize() {
+        return queueSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * How much work this member can do compared to the others.  This is the thread count 
+     * unless a capacity weight was configured.
+     */
+    public double getCapacity() {
+        //members from before capacity weights were added send 0
+        return capacity > 0 ? capacity : threadCount;
+    }
+
+    /**
+     * This is the sum of queue size times the average execution time of each group, 
+     * divided by the capacity
+     */
+    public double getEstimatedDrainTime() {
+        return estimatedDrainTime;
+    }
+    
+    /**
+     * @return the estimated millis of one thread's time to run an average queued task
+     */
+    public double getEstimatedTaskTime() {
+        if(queueSize == 0)
+            return 0;
+        return estimatedDrainTime * getCapacity() / queueSize;
+    }
+    
+    @Override
+    public String toString() {
+        return "MemberLoad [queueSize=" + queueSize + ", threadCount=" + threadCount + ", estimatedDrainTime=" + estimatedDrainTime + ", capacity=" + capacity + "]";
+    }
+}
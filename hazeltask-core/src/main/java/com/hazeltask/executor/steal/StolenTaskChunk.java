@@ -0,0 +1,71 @@
+package com.hazeltask.executor.steal;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * One chunk of tasks handed from a victim to the member stealing from it.  An empty chunk 
+ * means the steal is done.
+ * 
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public class StolenTaskChunk<GROUP extends Serializable> implements DataSerializable {
+    private int sequence;
+    private List<HazeltaskTask<GROUP>> tasks;
+    
+    //hazelcast dataserializable requires a default constructor
+    @SuppressWarnings("unused")
+    private StolenTaskChunk(){}
+    
+    public StolenTaskChunk(int sequence, List<HazeltaskTask<GROUP>> tasks) {
+        this.sequence = sequence;
+        this.tasks = tasks;
+    }
+    
+    public static <GROUP extends Serializable> StolenTaskChunk<GROUP> done(int sequence) {
+        return new StolenTaskChunk<GROUP>(sequence, Collections.<HazeltaskTask<GROUP>>emptyList());
+    }
+    
+    /**
+     * Send this back to acknowledge the chunk
+     */
+    public int getSequence() {
+        return sequence;
+    }
+    
+    public List<HazeltaskTask<GROUP>> getTasks() {
+        return tasks;
+    }
+    
+    public boolean isDone() {
+        return tasks.isEmpty();
+    }
+
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(sequence);
+        out.writeInt(tasks.size());
+        for(HazeltaskTask<GROUP> task : tasks) {
+            out.writeObject(task);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void readData(ObjectDataInput in) throws IOException {
+        sequence = in.readInt();
+        int size = in.readInt();
+        tasks = new ArrayList<HazeltaskTask<GROUP>>(size);
+        for(int i=0; i<size; i++) {
+            tasks.add((HazeltaskTask<GROUP>) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.hazeltask.executor.steal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.hazeltask.hazelcast.MemberValuePair;
+
+/**
+ * The original rebalance policy.  It only looks at queue sizes.  Each member's fair share of
+ * the queued tasks is in proportion to its capacity.  If this member has fewer than 
+ * threshold times its share, it takes enough tasks to get to its share from the members 
+ * that are above theirs.
+ * 
+ * @author jclawson
+ *
+ */
+public class TaskCountStealPolicy implements TaskStealPolicy {
+    private final double threshold;
+    
+    public TaskCountStealPolicy() {
+        this(0.30);
+    }
+    
+    /**
+     * @param threshold - steal if our queue is smaller than this fraction of the average
+     */
+    public TaskCountStealPolicy(double threshold) {
+        this.threshold = threshold;
+    }
+    
+    public List<MemberValuePair<Long>> getTasksToSteal(Member localMember, Collection<MemberResponse<MemberLoad>> loads) {
+        MemberLoad local = null;
+        long totalSize = 0;
+        double totalCapacity = 0;
+        for(MemberResponse<MemberLoad> response : loads) {
+            totalSize += response.getValue().getQueueSize();
+            totalCapacity += response.getValue().getCapacity();
+            if(response.getMember().equals(localMember))
+                local = response.getValue();
+        }
+        
+        if(local == null || totalCapacity <= 0)
+            return Collections.emptyList();
+        
+        final double sizePerCapacity = totalSize / totalCapacity;
+        final long optimalSize = Math.round(sizePerCapacity * local.getCapacity());
+        if(local.getQueueSize() >= optimalSize * threshold)
+            return Collections.emptyList();
+        
+        //take a share of what we need from each member according to how far it is above its share
+        long totalExceedingIdeal = 0;
+        for(MemberResponse<MemberLoad> response : loads) {
+            if(response.getValue().getQueueSize() > sizePerCapacity * response.getValue().getCapacity())
+                totalExceedingIdeal += response.getValue().getQueueSize();
+        }
+        
+        final long needToTake = optimalSize - local.getQueueSize();
+        List<MemberValuePair<Long>> numToTake = new LinkedList<MemberValuePair<Long>>();
+        for(MemberResponse<MemberLoad> response : loads) {
+            long size = response.getValue().getQueueSize();
+            if(size > sizePerCapacity * response.getValue().getCapacity()) {
+                double percent = ((double)size / (double)totalExceedingIdeal);
+                numToTake.add(new MemberValuePair<Long>(response.getMember(), Math.round(needToTake * percent)));
+            }
+        }
+        return numToTake;
+    }
+}
@@ -0,0 +1,28 @@
+package com.hazeltask.executor.steal;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.hazeltask.hazelcast.MemberValuePair;
+
+/**
+ * Decides when and how much work the rebalance task should take from other members.  It 
+ * runs periodically on every member, so a policy should only steal when this member is 
+ * clearly under loaded or members will pass tasks back and forth.
+ * 
+ * @see WorkEstimateStealPolicy
+ * @see TaskCountStealPolicy
+ * @author jclawson
+ *
+ */
+public interface TaskStealPolicy {
+    /**
+     * 
+     * @param localMember
+     * @param loads - the load of every ready member, including this member
+     * @return the number of tasks to take from each member.  Empty if nothing should be taken.
+     */
+    public List<MemberValuePair<Long>> getTasksToSteal(Member localMember, Collection<MemberResponse<MemberLoad>> loads);
+}
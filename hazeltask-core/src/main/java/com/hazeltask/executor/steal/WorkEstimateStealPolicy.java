@@ -0,0 +1,92 @@
+package com.hazeltask.executor.steal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.hazeltask.hazelcast.MemberValuePair;
+
+/**
+ * The default rebalance policy.  It balances the estimated time for each member to drain 
+ * its queue instead of task counts, so a member with a few slow tasks, or a member with
+ * more capacity, is treated fairly.
+ * <p>
+ * It uses a hysteresis band around the cluster average.  We only steal when our drain time
+ * is more than band below the average, and only from members that are more than band above 
+ * it.  We take just enough to reach the average.  That leaves both sides inside the band, 
+ * so neither is picked again until the load really changes and tasks don't bounce between 
+ * members.
+ * 
+ * @author jclawson
+ *
+ */
+public class WorkEstimateStealPolicy implements TaskStealPolicy {
+    private final double band;
+    
+    public WorkEstimateStealPolicy() {
+        this(0.30);
+    }
+    
+    /**
+     * @param band - fraction of the average drain time a member must be away from it to
+     *               steal or be stolen from
+     */
+    public WorkEstimateStealPolicy(double band) {
+        if(band < 0 || band >= 1)
+            throw new IllegalArgumentException("band must be between 0 and 1");
+        this.band = band;
+    }
+    
+    public List<MemberValuePair<Long>> getTasksToSteal(Member localMember, Collection<MemberResponse<MemberLoad>> loads) {
+        MemberLoad local = null;
+        double totalDrainTime = 0;
+        for(MemberResponse<MemberLoad> response : loads) {
+            totalDrainTime += response.getValue().getEstimatedDrainTime();
+            if(response.getMember().equals(localMember))
+                local = response.getValue();
+        }
+        
+        if(local == null || totalDrainTime <= 0)
+            return Collections.emptyList();
+        
+        double average = totalDrainTime / loads.size();
+        if(local.getEstimatedDrainTime() >= average * (1 - band))
+            return Collections.emptyList();
+        
+        //work is measured in thread millis so members with different capacities compare
+        double neededWork = (average - local.getEstimatedDrainTime()) * local.getCapacity();
+        double availableWork = 0;
+        for(MemberResponse<MemberLoad> response : loads) {
+            availableWork += getExcessWork(response.getValue(), average);
+        }
+        if(availableWork <= 0)
+            return Collections.emptyList();
+        
+        List<MemberValuePair<Long>> numToTake = new LinkedList<MemberValuePair<Long>>();
+        for(MemberResponse<MemberLoad> response : loads) {
+            MemberLoad load = response.getValue();
+            double excess = getExcessWork(load, average);
+            if(excess <= 0 || load.getEstimatedTaskTime() <= 0)
+                continue;
+            
+            double work = Math.min(excess, neededWork * excess / availableWork);
+            long tasks = Math.round(work / load.getEstimatedTaskTime());
+            if(tasks > 0)
+                numToTake.add(new MemberValuePair<Long>(response.getMember(), tasks));
+        }
+        return numToTake;
+    }
+    
+    /**
+     * @return the thread millis of work a member has above the average, or 0 if it is 
+     *         inside the band
+     */
+    private double getExcessWork(MemberLoad load, double average) {
+        if(load.getEstimatedDrainTime() <= average * (1 + band))
+            return 0;
+        return (load.getEstimatedDrainTime() - average) * load.getCapacity();
+    }
+}
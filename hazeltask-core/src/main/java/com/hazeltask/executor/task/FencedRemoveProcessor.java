@@ -0,0 +1,40 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+/**
+ * Removes a task from the write ahead log unless it was handed to a new owner since the
+ * executor got it.  A stale executor finishing late must not remove the entry the new 
+ * owner is running under, or the task can't be recovered if the new owner dies.
+ * 
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public class FencedRemoveProcessor<GROUP extends Serializable> extends AbstractEntryProcessor<UUID, PendingTaskEntry<GROUP>> {
+    private static final long serialVersionUID = 1L;
+    
+    private final int epoch;
+    
+    /**
+     * @param epoch - the submission count of the task that ran
+     */
+    public FencedRemoveProcessor(int epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return true if the entry was removed
+     */
+    public Object process(Entry<UUID, PendingTaskEntry<GROUP>> entry) {
+        PendingTaskEntry<GROUP> task = entry.getValue();
+        if(task == null || task.getSubmissionCount() > epoch)
+            return false;
+        entry.setValue(null);
+        return true;
+    }
+}
@@ -32,6 +32,9 @@ public class HazeltaskTask< G extends Serializable>
 	private Serializable taskInfo;
 	
 	private int submissionCount;
+	private String owner;
+	private String origin;
+	private boolean replyRequired;
 	private transient HazelcastInstance hazelcastInstance;
 	private transient Timer taskExecutedTimer;
 	
@@ -63,13 +66,53 @@ public class HazeltaskTask< G extends Serializable>
 	    this.submissionCount = submissionCount;
 	}
 	
+	/**
+	 * This is bumped every time the task is handed to a new owner so it is also the 
+	 * ownership epoch.  An executor holding a lower epoch than the write ahead log is stale.
+	 */
 	public int getSubmissionCount(){
 	    return this.submissionCount;
 	}
 	
+	/**
+	 * @return the uuid of the member the task was handed to, or null if it was never sent
+	 */
+	public String getOwner() {
+	    return owner;
+	}
+	
+	public void setOwner(String owner) {
+	    this.owner = owner;
+	}
+	
 	public void updateCreatedTime(){
 	    this.createdAtMillis = System.currentTimeMillis();
 	}
+	
+	/**
+	 * Only the uuid is sent with the task, the member is looked up in the cluster when 
+	 * the response is sent.
+	 * 
+	 * @return the uuid of the member that submitted this task and holds its future, or null if unknown
+	 */
+	public String getOrigin() {
+	    return origin;
+	}
+	
+	public void setOrigin(String origin) {
+	    this.origin = origin;
+	}
+	
+	/**
+	 * @return true if the origin holds a future for this task and needs its response
+	 */
+	public boolean isReplyRequired() {
+	    return replyRequired;
+	}
+	
+	public void setReplyRequired(boolean replyRequired) {
+	    this.replyRequired = replyRequired;
+	}
 
 	public G getGroup() {
 		return group;
@@ -137,9 +180,13 @@ public class HazeltaskTask< G extends Serializable>
         out.writeObject(group);
         out.writeObject(runTask);
         out.writeObject(callTask);
+        out.writeObject(taskInfo);
+        out.writeObject(origin);
+        out.writeBoolean(replyRequired);
         
         out.writeLong(createdAtMillis);
         out.writeInt(submissionCount);
+        out.writeObject(owner);
     }
 
     @SuppressWarnings("unchecked")
@@ -152,9 +199,13 @@ public class HazeltaskTask< G extends Serializable>
         group = (G) in.readObject();
         runTask = (Runnable) in.readObject();
         callTask = (Callable<?>) in.readObject();
+        taskInfo = (Serializable) in.readObject();
+        origin = (String) in.readObject();
+        replyRequired = in.readBoolean();
         
         createdAtMillis = in.readLong();
         submissionCount = in.readInt();
+        owner = (String) in.readObject();
     }
 
     public void setExecutionTimer(Timer taskExecutedTimer) {
@@ -0,0 +1,210 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.hazelcast.core.Member;
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.core.concurrent.collections.grouped.ItemCallback;
+import com.hazeltask.executor.ExecutorListener;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.hazeltask.hazelcast.MemberValuePair;
+
+/**
+ * Pull based work stealing that replaces the TaskRebalanceTimerTask when idle stealing
+ * is enabled.
+ * <p>
+ * After each task completes, and periodically when nothing is completing, we check if
+ * the local queue is below the low water mark.  If it is, a background thread takes
+ * chunks of tasks from the most loaded members until we are back above it.  Members are
+ * picked using cached queue sizes so an idle member doesn't fan out on every check.
+ * <p>
+ * There is no cluster wide lock.  A thief must hold the victim's steal lease while it
+ * steals, so two idle members never drain the same member at once based on the same
+ * stale queue sizes.  If the lease is taken we move on to the next member.  The lease 
+ * expires on its own, so we ask for no more chunks once it would have.
+ *
+ * @author jclawson
+ */
+@Slf4j
+public class IdleTaskStealer<GROUP extends Serializable> extends BackoffTask implements ExecutorListener<GROUP> {
+    private final Member localMember;
+    private final LocalTaskExecutorService<GROUP> localSvc;
+    private final IExecutorTopologyService<GROUP> executorTopologyService;
+    private final int lowWaterMark;
+    private final int chunkSize;
+    private final long leaseTime;
+    private final long statsMaxAge;
+
+    private final ExecutorService stealExecutor;
+    private final ItemCallback<GROUP, HazeltaskTask<GROUP>> enqueue;
+    private final AtomicBoolean stealing = new AtomicBoolean();
+
+    //only used by the steal thread
+    private Map<Member, Long> cachedQueueSizes = new HashMap<Member, Long>();
+    private long cachedQueueSizesTime = 0;
+
+    private final Histogram histogram;
+    private final Timer stealTimer;
+
+    public IdleTaskStealer(HazeltaskTopology<GROUP> topology, final LocalTaskExecutorService<GROUP> localSvc, IExecutorTopologyService<GROUP> executorTopologyService,
+                           ExecutorLoadBalancingConfig<GROUP> config, ThreadFactory threadFactory, ExecutorMetrics metrics) {
+        this.localMember = topology.getLocalMember();
+        this.localSvc = localSvc;
+        this.executorTopologyService = executorTopologyService;
+        this.lowWaterMark = config.getIdleStealLowWaterMark();
+        this.chunkSize = config.getIdleStealChunkSize();
+        this.leaseTime = config.getIdleStealLeaseTime();
+        this.statsMaxAge = config.getIdleStealStatsMaxAge();
+        this.stealExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        this.enqueue = new ItemCallback<GROUP, HazeltaskTask<GROUP>>() {
+            public void onItem(HazeltaskTask<GROUP> task) {
+                localSvc.execute(task);
+            }
+        };
+
+        histogram = metrics.getTaskBalanceHistogram().getMetric();
+        stealTimer = metrics.getTaskBalanceTimer().getMetric();
+    }
+
+    /**
+     * Periodic check for when no tasks are completing
+     */
+    @Override
+    public boolean execute() {
+        try {
+            checkIdle();
+            return false;
+        } catch (Throwable t) {
+            //catch all exceptions and swallow so it doens't cancel our timer task
+            log.error("Error checking if we should steal tasks", t);
+            return true;
+        }
+    }
+
+    public void beforeExecute(HazeltaskTask<GROUP> runnable) {}
+
+    public void afterExecute(HazeltaskTask<GROUP> runnable, Throwable exception) {
+        checkIdle();
+    }
+
+    /**
+     * Start stealing in the background if our queue is below the low water mark and we
+     * aren't already stealing
+     */
+    public void checkIdle() {
+        if(localSvc.isShutdown() || localSvc.getQueueSize() >= lowWaterMark)
+            return;
+        if(!stealing.compareAndSet(false, true))
+            return;
+
+        try {
+            stealExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        steal();
+                    } catch (Throwable t) {
+                        log.error("Error stealing tasks", t);
+                    } finally {
+                        stealing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //we are shutting down
+            stealing.set(false);
+        }
+    }
+
+    int steal() {
+        Timer.Context ctx = stealTimer.time();
+        try {
+            Map<Member, Long> queueSizes = getQueueSizes();
+            long localSize = localSvc.getQueueSize();
+
+            List<Entry<Member, Long>> victims = new ArrayList<Entry<Member, Long>>(queueSizes.entrySet());
+            Collections.sort(victims, new Comparator<Entry<Member, Long>>() {
+                public int compare(Entry<Member, Long> o1, Entry<Member, Long> o2) {
+                    return o2.getValue().compareTo(o1.getValue());
+                }
+            });
+
+            int stolen = 0;
+            for(Entry<Member, Long> victim : victims) {
+                if(localSize >= lowWaterMark || localSvc.isShutdown())
+                    break;
+                if(victim.getKey().equals(localMember))
+                    continue;
+
+                //leave both of us with about the same amount of work
+                long take = Math.min(chunkSize, (victim.getValue() - localSize) / 2);
+                if(take < 1)
+                    break; //members are sorted, nobody else has enough to share
+
+                //the lease runs from when it is put, so we end no later than it does
+                long leaseExpires = System.currentTimeMillis() + leaseTime;
+                if(!executorTopologyService.tryAcquireStealLease(victim.getKey(), leaseTime)) {
+                    log.debug("Another member is stealing from "+victim.getKey());
+                    continue;
+                }
+
+                try {
+                    //BOUNDED: stealTasks asks for no chunk after the lease expires
+                    long taken = executorTopologyService.stealTasks(
+                            Collections.singletonList(new MemberValuePair<Long>(victim.getKey(), take)), 
+                            leaseExpires, enqueue);
+                    stolen += taken;
+                    localSize += taken;
+                    //keep the cache honest until it is refreshed
+                    victim.setValue(Math.max(0, victim.getValue() - taken));
+                    log.debug("Stole "+taken+" tasks from "+victim.getKey());
+                } finally {
+                    executorTopologyService.releaseStealLease(victim.getKey());
+                }
+            }
+
+            histogram.update(stolen);
+            return stolen;
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    private Map<Member, Long> getQueueSizes() {
+        long now = System.currentTimeMillis();
+        if(now - cachedQueueSizesTime >= statsMaxAge) {
+            //BOUNDED: MemberTasks.executeOptimistic waits a max of 60 seconds
+            Map<Member, Long> queueSizes = new HashMap<Member, Long>();
+            for(MemberResponse<Long> response : executorTopologyService.getMemberQueueSizes()) {
+                queueSizes.put(response.getMember(), response.getValue());
+            }
+            cachedQueueSizes = queueSizes;
+            cachedQueueSizesTime = now;
+        }
+        return cachedQueueSizes;
+    }
+
+    public void shutdown() {
+        stealExecutor.shutdownNow();
+    }
+}
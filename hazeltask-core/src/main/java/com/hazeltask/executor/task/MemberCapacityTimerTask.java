@@ -0,0 +1,62 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.core.concurrent.collections.router.RouteWeigher;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+/**
+ * Keeps the capacity weight of every ready member for capacity weighted routing.  Routing
+ * reads the cached weights so submitting a task never waits on the cluster.  A member we 
+ * don't have a weight for yet gets the average so it isn't starved or flooded.
+ * 
+ * @author jclawson
+ *
+ */
+@Slf4j
+public class MemberCapacityTimerTask<GROUP extends Serializable> extends BackoffTask implements RouteWeigher<Member> {
+    private final IExecutorTopologyService<GROUP> executorTopologyService;
+    private volatile Map<Member, Double> capacities = Collections.emptyMap();
+    private volatile double averageCapacity = 1;
+    
+    public MemberCapacityTimerTask(IExecutorTopologyService<GROUP> executorTopologyService) {
+        this.executorTopologyService = executorTopologyService;
+    }
+    
+    @Override
+    public boolean execute() {
+        try {
+            //BOUNDED: MemberTasks.executeOptimistic waits a max of 60 seconds
+            Map<Member, Double> capacities = new HashMap<Member, Double>();
+            double total = 0;
+            for(MemberResponse<Double> response : executorTopologyService.getCapacityWeights()) {
+                if(response.getValue() > 0) {
+                    capacities.put(response.getMember(), response.getValue());
+                    total += response.getValue();
+                }
+            }
+            
+            if(!capacities.isEmpty())
+                averageCapacity = total / capacities.size();
+            this.capacities = capacities;
+            return false;
+        } catch (Throwable t) {
+            //catch all exceptions and swallow so it doens't cancel our timer task
+            log.error("Error fetching member capacity weights", t);
+            return true;
+        }
+    }
+    
+    public double getWeight(Member member) {
+        Double capacity = capacities.get(member);
+        return capacity != null ? capacity : averageCapacity;
+    }
+}
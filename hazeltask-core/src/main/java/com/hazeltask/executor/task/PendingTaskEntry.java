@@ -0,0 +1,106 @@
+package com.hazeltask.executor.task;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.UUID;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+/**
+ * What the write ahead log keeps about a pending task.  The task itself, with its
+ * runnable or callable, is kept in a separate payload map that is only read when the
+ * task has to be sent somewhere again.  Recovery scans, epoch fencing and ownership
+ * changes only read and write this.
+ *
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public class PendingTaskEntry<GROUP extends Serializable> implements DataSerializable {
+    private UUID id;
+    private GROUP group;
+    private long createdAtMillis;
+    private int submissionCount;
+    private String owner;
+
+    //hazelcast dataserializable requires a default constructor
+    private PendingTaskEntry() {}
+
+    public PendingTaskEntry(HazeltaskTask<GROUP> task) {
+        this(task.getId(), task.getGroup(), task.getTimeCreated(), task.getSubmissionCount(), task.getOwner());
+    }
+
+    public PendingTaskEntry(UUID id, GROUP group, long createdAtMillis, int submissionCount, String owner) {
+        this.id = id;
+        this.group = group;
+        this.createdAtMillis = createdAtMillis;
+        this.submissionCount = submissionCount;
+        this.owner = owner;
+    }
+
+    /**
+     * @return a copy handed to the new owner under the next epoch
+     */
+    public PendingTaskEntry<GROUP> reassignTo(String newOwner) {
+        return new PendingTaskEntry<GROUP>(id, group, createdAtMillis, submissionCount+1, newOwner);
+    }
+
+    /**
+     * Copy the epoch and owner onto the task read from the payload map.  The copy of them
+     * in the payload is from when the task was first logged.
+     */
+    public HazeltaskTask<GROUP> applyTo(HazeltaskTask<GROUP> task) {
+        task.setSubmissionCount(submissionCount);
+        task.setOwner(owner);
+        return task;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public GROUP getGroup() {
+        return group;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    /**
+     * @see HazeltaskTask#getSubmissionCount()
+     */
+    public int getSubmissionCount() {
+        return submissionCount;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        out.writeObject(group);
+        out.writeLong(createdAtMillis);
+        out.writeInt(submissionCount);
+        out.writeObject(owner);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void readData(ObjectDataInput in) throws IOException {
+        id = new UUID(in.readLong(), in.readLong());
+        group = (GROUP) in.readObject();
+        createdAtMillis = in.readLong();
+        submissionCount = in.readInt();
+        owner = (String) in.readObject();
+    }
+
+    @Override
+    public String toString() {
+        return "PendingTaskEntry [id=" + id + ", group=" + group + ", createdAtMillis=" + createdAtMillis
+                + ", submissionCount=" + submissionCount + ", owner=" + owner + "]";
+    }
+}
@@ -0,0 +1,56 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+/**
+ * Hands a lost task to a new owner in place, on the partition that holds it.  The task is 
+ * lost if it was created before the cutoff and its owner isn't a live member, or its owner 
+ * is live but said it holds nothing as old as the task.  The owner is recorded before the 
+ * task is sent, so a task that never got there names a member that never heard of it.  
+ * Whether it is lost is checked again here, under the partition, so a task that completed or was 
+ * recovered by someone else since we found it is left alone.
+ * 
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public class ReassignTaskProcessor<GROUP extends Serializable> extends AbstractEntryProcessor<UUID, PendingTaskEntry<GROUP>> {
+    private static final long serialVersionUID = 1L;
+    
+    private final long createdBefore;
+    private final Map<String, Long> liveOwners;
+    private final String newOwner;
+    
+    /**
+     * @param liveOwners - uuid of each live member -> tasks it owns created before this are 
+     *                     lost anyway.  Long.MIN_VALUE if we don't know what it holds.
+     */
+    public ReassignTaskProcessor(long createdBefore, Map<String, Long> liveOwners, String newOwner) {
+        this.createdBefore = createdBefore;
+        this.liveOwners = liveOwners;
+        this.newOwner = newOwner;
+    }
+
+    /**
+     * @return the entry under its new owner and epoch, or null if it isn't lost
+     */
+    public Object process(Entry<UUID, PendingTaskEntry<GROUP>> entry) {
+        PendingTaskEntry<GROUP> task = entry.getValue();
+        if(task == null || task.getCreatedAtMillis() >= createdBefore)
+            return null;
+        if(task.getOwner() != null) {
+            Long ownerHoldsSince = liveOwners.get(task.getOwner());
+            if(ownerHoldsSince != null && task.getCreatedAtMillis() >= ownerHoldsSince)
+                return null;
+        }
+        
+        PendingTaskEntry<GROUP> reassigned = task.reassignTo(newOwner);
+        entry.setValue(reassigned);
+        return reassigned;
+    }
+}
@@ -0,0 +1,44 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+
+/**
+ * Takes a task back under a new owner and epoch, but only if nobody touched it since the
+ * epoch we had.  A member restarting from its queue snapshot uses this so a task that
+ * completed or was recovered while it was down isn't run again.
+ *
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public class ReclaimTaskProcessor<GROUP extends Serializable> extends AbstractEntryProcessor<UUID, PendingTaskEntry<GROUP>> {
+    private static final long serialVersionUID = 1L;
+
+    private final int epoch;
+    private final String newOwner;
+
+    /**
+     * @param epoch - the submission count of the task we held
+     */
+    public ReclaimTaskProcessor(int epoch, String newOwner) {
+        this.epoch = epoch;
+        this.newOwner = newOwner;
+    }
+
+    /**
+     * @return the entry under its new owner and epoch, or null if it moved on
+     */
+    public Object process(Entry<UUID, PendingTaskEntry<GROUP>> entry) {
+        PendingTaskEntry<GROUP> task = entry.getValue();
+        if(task == null || task.getSubmissionCount() != epoch)
+            return null;
+
+        PendingTaskEntry<GROUP> reclaimed = task.reassignTo(newOwner);
+        entry.setValue(reclaimed);
+        return reclaimed;
+    }
+}
@@ -2,23 +2,49 @@ package com.hazeltask.executor.task;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import lombok.extern.slf4j.Slf4j;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
 import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.core.concurrent.BackoffTimer;
 import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
 import com.hazeltask.executor.DistributedExecutorServiceImpl;
 import com.hazeltask.executor.IExecutorTopologyService;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
 
+/**
+ * Resubmits tasks in our part of the write ahead log whose owner is gone.  When a member 
+ * leaves its tasks are found through the owner index and resubmitted right away.  The 
+ * periodic run catches the rest, tasks that were never handed to anyone or never got to 
+ * their owner, and tasks whose owner left while partitions were migrating.  Tasks a live member holds are left alone so 
+ * a long running task isn't run twice.
+ * <p>
+ * A member that shut down with its queue in a snapshot counts as live until its grace 
+ * period passes, so it can restore its tasks when it restarts instead of them being 
+ * resubmitted somewhere else.
+ * 
+ * @author jclawson
+ *
+ */
 @Slf4j
-public class TaskRecoveryTimerTask<GROUP extends Serializable> extends BackoffTask {
+public class TaskRecoveryTimerTask<GROUP extends Serializable> extends BackoffTask implements MembershipListener {
     private final DistributedExecutorServiceImpl<GROUP> svc;
     private final IExecutorTopologyService<GROUP> executorTopologyService;
+    private final Cluster cluster;
+    private final BackoffTimer timer;
 
     public static long EXPIRE_TIME_BUFFER = 5000L; //5 seconds
     public static long EMPTY_EXPIRE_TIME_BUFFER = 10000L; //10 seconds
@@ -27,8 +53,14 @@ public class TaskRecoveryTimerTask<GROUP extends Serializable> extends BackoffTa
     private Histogram numFlushedHistogram;
     private Meter recoveryMeter;
     
-    public TaskRecoveryTimerTask(HazeltaskTopology<GROUP> topology, DistributedExecutorServiceImpl<GROUP> svc, IExecutorTopologyService<GROUP> executorTopologyService, ExecutorMetrics metrics) {
+    /**
+     * @param timer - member departures are recovered on this timer so they never run at the
+     *                same time as the periodic recovery
+     */
+    public TaskRecoveryTimerTask(HazeltaskTopology<GROUP> topology, DistributedExecutorServiceImpl<GROUP> svc, IExecutorTopologyService<GROUP> executorTopologyService, Cluster cluster, BackoffTimer timer, ExecutorMetrics metrics) {
         this.svc = svc;
+        this.cluster = cluster;
+        this.timer = timer;
         this.flushTimer = metrics.getRecoveryTimer().getMetric();
         this.numFlushedHistogram = metrics.getStaleFlushCountHistogram().getMetric();
         this.executorTopologyService = executorTopologyService;
@@ -52,35 +84,27 @@ public class TaskRecoveryTimerTask<GROUP extends Serializable> extends BackoffTa
     	            }
     	        }
     	        
-    	        String sql;
+    	        long cutoff;
     	        if(min == Long.MAX_VALUE) {
-    	            sql = "createdAtMillis < "+(System.currentTimeMillis()-EMPTY_EXPIRE_TIME_BUFFER);
+    	            cutoff = System.currentTimeMillis()-EMPTY_EXPIRE_TIME_BUFFER;
     	        } else {
-    	            sql = "createdAtMillis < "+(min-EXPIRE_TIME_BUFFER);
+    	            cutoff = min-EXPIRE_TIME_BUFFER;
     	        }
     	        
-    	        //System.out.println("Map Size: "+map.size()+" "+map.values().size());
-    	        //System.out.println("Local Size: "+map.localKeySet().size());
+    	        //the pending task map has an ordered index on createdAtMillis so this only
+    	        //touches tasks older than the cutoff, not the whole write ahead log
+    	        Set<UUID> taskIds = executorTopologyService.getLocalPendingTaskIds(cutoff);
+    	        int recovered = 0;
+    	        if(!taskIds.isEmpty())
+    	            recovered = svc.recoverPendingTasks(taskIds, cutoff, getLiveOwners(results));
     	        
-    //	        Set<String> keys = (Set<String>) map.localKeySet(pred);
-    //	        Collection<HazelcastWork> works = map.getAll(keys).values();
-    	        
-    	        Collection<HazeltaskTask<GROUP>> works = executorTopologyService.getLocalPendingTasks(sql);
-    	        
-    	        if(works.size() > 0) {
+    	        if(recovered > 0) {
     	            flushed = true;
     	            recoveryMeter.mark();
-    	            log.info("Recovering "+works.size()+" works. "+sql);
-    	        }
-    	        
-    	        for(HazeltaskTask<GROUP> work : works) {
-    	            svc.submitHazeltaskTask(work, true);
+    	            log.info("Recovered "+recovered+" works created before "+cutoff);
     	        }
     	        
-    	        if(works.size() > 0)
-    	        	log.info("Done recovering "+works.size()+" works");
-    	        
-    	        numFlushedHistogram.update(works.size());
+    	        numFlushedHistogram.update(recovered);
     	        
         	} finally {
         		timerCtx.stop();
@@ -93,4 +117,76 @@ public class TaskRecoveryTimerTask<GROUP extends Serializable> extends BackoffTa
     	    return true;//backoff
     	}
     }
+    
+    /**
+     * A live member may own tasks it never got, the owner is written before the task is 
+     * sent.  The tasks it owns that are older than the oldest one it says it holds are lost 
+     * too.  Members that didn't answer, and members that shut down with a snapshot, keep 
+     * everything they own.
+     * 
+     * @param oldestTaskTimes - the oldest task each member holds, may be empty
+     */
+    private Map<String, Long> getLiveOwners(Collection<MemberResponse<Long>> oldestTaskTimes) {
+        Map<String, Long> live = new HashMap<String, Long>();
+        for(Member member : cluster.getMembers()) {
+            live.put(member.getUuid(), Long.MIN_VALUE);
+        }
+        for(MemberResponse<Long> result : oldestTaskTimes) {
+            if(result.getValue() != null && live.containsKey(result.getMember().getUuid()))
+                live.put(result.getMember().getUuid(), result.getValue()-EXPIRE_TIME_BUFFER);
+        }
+        for(String memberUuid : executorTopologyService.getCleanShutdownMembers()) {
+            live.put(memberUuid, Long.MIN_VALUE);
+        }
+        return live;
+    }
+    
+    /**
+     * Resubmit the tasks the member owned that live in our partitions
+     */
+    void recoverOwnedBy(String memberUuid) {
+        if(executorTopologyService.getCleanShutdownMembers().contains(memberUuid)) {
+            //the periodic recovery picks them up if it doesn't come back in time
+            log.info("Departed member "+memberUuid+" shut down with a queue snapshot, leaving its works for it to restore");
+            return;
+        }
+        Timer.Context timerCtx = flushTimer.time();
+        try {
+            Set<UUID> taskIds = executorTopologyService.getLocalPendingTaskIdsOwnedBy(memberUuid);
+            int recovered = 0;
+            if(!taskIds.isEmpty())
+                recovered = svc.recoverPendingTasks(taskIds, Long.MAX_VALUE, getLiveOwners(Collections.<MemberResponse<Long>>emptyList()));
+            if(recovered > 0) {
+                recoveryMeter.mark();
+                log.info("Recovered "+recovered+" works owned by departed member "+memberUuid);
+            }
+            numFlushedHistogram.update(recovered);
+        } finally {
+            timerCtx.stop();
+        }
+    }
+
+    public void memberRemoved(MembershipEvent membershipEvent) {
+        final String memberUuid = membershipEvent.getMember().getUuid();
+        try {
+            timer.schedule(new BackoffTask() {
+                @Override
+                public boolean execute() {
+                    //only run once
+                    cancel();
+                    try {
+                        recoverOwnedBy(memberUuid);
+                    } catch (Throwable t) {
+                        //the periodic recovery will pick these up
+                        log.error("An error occurred while recovering the tasks of "+memberUuid, t);
+                    }
+                    return true;
+                }
+            }, 0, 1000);
+        } catch (IllegalStateException e) {
+            //the timer was stopped, we are shutting down
+        }
+    }
+    
+    public void memberAdded(MembershipEvent membershipEvent) {}
 }
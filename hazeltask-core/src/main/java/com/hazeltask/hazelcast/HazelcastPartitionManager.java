@@ -48,6 +48,10 @@ public class HazelcastPartitionManager {
     	return partitionService.getPartition(id);
     }
     
+    public int getPartitionCount() {
+        return partitionService.getPartitions().size();
+    }
+    
     public void addPartitionListener(PartitionLostListener listener) {
         listeners.add(listener);
     }
@@ -3,17 +3,18 @@ package com.hazeltask.hazelcast;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import lombok.extern.slf4j.Slf4j;
 
+import com.hazelcast.core.ExecutionCallback;
 import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MemberLeftException;
@@ -21,11 +22,16 @@ import com.hazelcast.core.MemberLeftException;
 @Slf4j
 public class MemberTasks {
     
+	/**
+	 * The result of a callable on one member.  If it failed or didn't answer in time 
+	 * getError holds why and getValue throws.
+	 */
 	public static class MemberResponse<T> implements Serializable {
         private static final long serialVersionUID = 1L;
         
         private T value;
         private Member member;
+        private Throwable error;
        
         public MemberResponse(){}
         
@@ -33,16 +39,40 @@ public class MemberTasks {
             this.value = value;
             this.member = member;
         }
+        
+        public static <T> MemberResponse<T> failed(Member member, Throwable error) {
+            MemberResponse<T> response = new MemberResponse<T>(member, null);
+            response.error = error;
+            return response;
+        }
+        
+        /**
+         * @throws IllegalStateException if the member failed or didn't answer in time
+         */
         public T getValue() {
+            if(error != null)
+                throw new IllegalStateException("No result from "+member, error);
             return value;
         }
         public Member getMember() {
             return member;
         }
+        public boolean isSuccess() {
+            return error == null;
+        }
+        public boolean isTimedOut() {
+            return error instanceof TimeoutException;
+        }
+        /**
+         * @return null if the member answered
+         */
+        public Throwable getError() {
+            return error;
+        }
     }
     
     /**
-     * Will wait a maximum of 1 minute for each node to response with their result.  If an error occurs on any
+     * Will wait a maximum of 1 minute for all members to respond with their result.  If an error occurs on any
      * member, we will always attempt to continue execution and collect as many results as possible.
      * 
      * @param execSvc
@@ -55,54 +85,90 @@ public class MemberTasks {
     }
     
     /**
-     * We will always try to gather as many results as possible and never throw an exception.
-     * 
-     * TODO: Make MemberResponse hold an exception that we can populate if something bad happens so we always
-     *       get to return something for a member in order to indicate a failure.  Getting the result when there
-     *       is an error should throw an exception.
+     * We will always try to gather as many results as possible and never throw an exception.  Only
+     * the members that answered are returned, failures are logged.
      * 
+     * @see gather
      * @param execSvc
      * @param members
      * @param callable
-     * @param maxWaitTime - a value of 0 indicates forever
+     * @param maxWaitTime - for all members together, a value of 0 indicates forever
      * @param unit
      * @return
      */
     public static <T> Collection<MemberResponse<T>> executeOptimistic(IExecutorService execSvc, Set<Member> members, Callable<T> callable, long maxWaitTime, TimeUnit unit) {
-    	Collection<MemberResponse<T>> result = new ArrayList<MemberResponse<T>>(members.size());
-    	
-    	Map<Member, Future<T>> resultFutures = execSvc.submitToMembers(callable, members);
-    	for(Entry<Member, Future<T>> futureEntry : resultFutures.entrySet()) {
-    		Future<T> future = futureEntry.getValue();
-    		Member member = futureEntry.getKey();
-    		
-    		try {
-                if(maxWaitTime > 0) {
-                	result.add(new MemberResponse<T>(member, future.get(maxWaitTime, unit)));
-                } else {
-                	result.add(new MemberResponse<T>(member, future.get()));
-                } 
-                //ignore exceptions... return what you can
-            } catch (InterruptedException e) {
-            	Thread.currentThread().interrupt(); //restore interrupted status and return what we have
-            	return result;
-            } catch (MemberLeftException e) {
-            	log.warn("Member {} left while trying to get a distributed callable result", member);
-            } catch (ExecutionException e) {
-            	if(e.getCause() instanceof InterruptedException) {
-            	    //restore interrupted state and return
-            	    Thread.currentThread().interrupt();
-            	    return result;
-            	} else {
-            	    log.warn("Unable to execute callable on "+member+". There was an error.", e);
-            	}
-            } catch (TimeoutException e) {
-            	log.error("Unable to execute task on "+member+" within 10 seconds.");
+    	List<MemberResponse<T>> responses = gather(execSvc, members, callable, maxWaitTime, unit);
+    	Collection<MemberResponse<T>> result = new ArrayList<MemberResponse<T>>(responses.size());
+    	for(MemberResponse<T> response : responses) {
+    	    Member member = response.getMember();
+    	    Throwable error = response.getError();
+    	    if(error == null) {
+    	        result.add(response);
+    	    } else if(error instanceof MemberLeftException) {
+    	        log.warn("Member {} left while trying to get a distributed callable result", member);
+    	    } else if(error instanceof TimeoutException) {
+    	        log.error("Unable to execute task on "+member+" within "+unit.toMillis(maxWaitTime)+"ms.");
+    	    } else {
+    	        log.warn("Unable to execute callable on "+member+". There was an error.", error);
+    	    }
+    	}
+    	return result;
+    }
+    
+    /**
+     * Run the callable on every member at once and wait for them all under one deadline.  
+     * This returns as soon as the last member answers, or when the deadline passes with 
+     * whatever has arrived.  There is a response for every member, the ones that failed or 
+     * didn't answer in time hold the error or a TimeoutException.
+     * <p>
+     * If we are interrupted we return right away, the members we were waiting on are marked 
+     * timed out and the interrupted status is restored.
+     * 
+     * @param execSvc
+     * @param members
+     * @param callable
+     * @param maxWaitTime - for all members together, a value of 0 indicates forever
+     * @param unit
+     * @return a response for each member in the order of members
+     */
+    public static <T> List<MemberResponse<T>> gather(IExecutorService execSvc, Collection<Member> members, Callable<T> callable, long maxWaitTime, TimeUnit unit) {
+        final Map<Member, MemberResponse<T>> responses = new ConcurrentHashMap<Member, MemberResponse<T>>();
+        final CountDownLatch remaining = new CountDownLatch(members.size());
+        for(final Member member : members) {
+            try {
+                execSvc.submitToMember(callable, member, new ExecutionCallback<T>() {
+                    public void onResponse(T response) {
+                        responses.put(member, new MemberResponse<T>(member, response));
+                        remaining.countDown();
+                    }
+
+                    public void onFailure(Throwable t) {
+                        responses.put(member, MemberResponse.<T>failed(member, t));
+                        remaining.countDown();
+                    }
+                });
             } catch (RuntimeException e) {
-            	log.error("Unable to execute task on "+member+". An unexpected error occurred.", e);
+                responses.put(member, MemberResponse.<T>failed(member, e));
+                remaining.countDown();
             }
-    	}
+        }
         
+        try {
+            if(maxWaitTime > 0)
+                remaining.await(maxWaitTime, unit);
+            else
+                remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //restore interrupted status and return what we have
+        }
+        
+        List<MemberResponse<T>> result = new ArrayList<MemberResponse<T>>(members.size());
+        for(Member member : members) {
+            MemberResponse<T> response = responses.get(member);
+            if(response == null)
+                response = MemberResponse.<T>failed(member, new TimeoutException("No response from "+member));
+            result.add(response);
+        }
         return result;
     }
     
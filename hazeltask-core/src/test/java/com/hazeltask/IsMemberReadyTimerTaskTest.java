@@ -0,0 +1,88 @@
+package com.hazeltask;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryEventType;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.instance.MemberImpl;
+import com.hazelcast.nio.Address;
+
+public class IsMemberReadyTimerTaskTest {
+    private Member local;
+    private Member other;
+    private Cluster cluster;
+    private ITopologyService<String> topologyService;
+    private HazeltaskTopology<String> topology;
+    private IsMemberReadyTimerTask<String> task;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        local = new MemberImpl(new Address("127.0.0.1", 5701), true, "local-uuid");
+        other = new MemberImpl(new Address("127.0.0.1", 5702), false, "other-uuid");
+        cluster = mock(Cluster.class);
+        when(cluster.getMembers()).thenReturn(new HashSet<Member>(Arrays.asList(local, other)));
+        topologyService = mock(ITopologyService.class);
+        topology = new HazeltaskTopology<String>("test", local);
+        task = new IsMemberReadyTimerTask<String>(topologyService, topology, cluster);
+    }
+
+    private EntryEvent<String, Boolean> event(Member member, EntryEventType type) {
+        return new EntryEvent<String, Boolean>("test", member, type.getType(), member.getUuid(), Boolean.TRUE);
+    }
+
+    @Test
+    public void testReadyEvents() {
+        task.entryAdded(event(other, EntryEventType.ADDED));
+        Assert.assertEquals(Collections.singletonList(other), topology.getReadyMembers());
+
+        task.entryRemoved(event(other, EntryEventType.REMOVED));
+        Assert.assertTrue(topology.getReadyMembers().isEmpty());
+    }
+
+    @Test
+    public void testMemberLeaving() {
+        task.entryAdded(event(other, EntryEventType.ADDED));
+        task.memberRemoved(new MembershipEvent(cluster, other, MembershipEvent.MEMBER_REMOVED, Collections.singleton(local)));
+        Assert.assertTrue(topology.getReadyMembers().isEmpty());
+        verify(topologyService).removeReadyMember(other);
+    }
+
+    @Test
+    public void testReconcileRemovesStaleMembers() {
+        task.entryAdded(event(other, EntryEventType.ADDED));
+        when(topologyService.getReadyMembers()).thenReturn(Collections.singleton(local));
+        task.execute();
+        Assert.assertEquals(Collections.singletonList(local), topology.getReadyMembers());
+    }
+
+    @Test
+    public void testReconcileKeepsEventsAppliedWhileReading() {
+        when(topologyService.getReadyMembers()).thenAnswer(new Answer<Set<Member>>() {
+            public Set<Member> answer(InvocationOnMock invocation) {
+                //other publishes it is ready after the map was read
+                task.entryAdded(event(other, EntryEventType.ADDED));
+                return Collections.emptySet();
+            }
+        });
+        task.execute();
+        Assert.assertEquals(Collections.singletonList(other), topology.getReadyMembers());
+    }
+}
@@ -0,0 +1,109 @@
+package com.hazeltask;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class StatisticsSnapshotTest {
+    
+    @Test
+    public void testCachesWithinMaxAge() {
+        final AtomicInteger fetches = new AtomicInteger();
+        StatisticsSnapshot<Integer> snapshot = new StatisticsSnapshot<Integer>(new Callable<Integer>() {
+            public Integer call() {
+                return fetches.incrementAndGet();
+            }
+        });
+        
+        Assert.assertFalse(snapshot.isUsed());
+        Assert.assertEquals(-1, snapshot.getAge());
+        Assert.assertEquals(1, (int) snapshot.get(60000));
+        Assert.assertEquals(1, (int) snapshot.get(60000));
+        Assert.assertTrue(snapshot.isUsed());
+        //0 always fetches
+        Assert.assertEquals(2, (int) snapshot.get(0));
+        Assert.assertEquals(2, fetches.get());
+    }
+    
+    @Test
+    public void testInterruptedWithoutSnapshotThrows() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StatisticsSnapshot<Integer> snapshot = new StatisticsSnapshot<Integer>(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                started.countDown();
+                release.await();
+                return 1;
+            }
+        });
+        
+        ExecutorService threads = Executors.newFixedThreadPool(1);
+        try {
+            threads.submit(new Callable<Integer>() {
+                public Integer call() {
+                    return snapshot.get(0);
+                }
+            });
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.currentThread().interrupt();
+            try {
+                snapshot.get(0);
+                Assert.fail("expected an exception without a snapshot to fall back on");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            }
+            Assert.assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testConcurrentCallersShareOneFetch() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+        final StatisticsSnapshot<Integer> snapshot = new StatisticsSnapshot<Integer>(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                started.countDown();
+                release.await();
+                return fetches.incrementAndGet();
+            }
+        }) {
+            @Override
+            void joinedFetch() {
+                joined.countDown();
+            }
+        };
+        
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Integer> caller = new Callable<Integer>() {
+                public Integer call() {
+                    return snapshot.get(0);
+                }
+            };
+            Future<Integer> first = threads.submit(caller);
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Integer> second = threads.submit(caller);
+            Assert.assertTrue(joined.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            
+            Assert.assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, (int) second.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, fetches.get());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
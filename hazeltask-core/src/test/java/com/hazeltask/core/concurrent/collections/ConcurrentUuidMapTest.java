@@ -0,0 +1,72 @@
+package com.hazeltask.core.concurrent.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ConcurrentUuidMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentUuidMap<String> map = new ConcurrentUuidMap<String>(4);
+        UUID one = UUID.randomUUID();
+        UUID two = UUID.randomUUID();
+
+        assertNull(map.put(one, "one"));
+        assertNull(map.put(two, "two"));
+        assertEquals("one", map.put(one, "uno"));
+        assertEquals(2, map.size());
+
+        assertEquals("uno", map.get(one.getMostSignificantBits(), one.getLeastSignificantBits()));
+        assertFalse(map.remove(two.getMostSignificantBits(), two.getLeastSignificantBits(), "dos"));
+        assertEquals("two", map.remove(two));
+        assertNull(map.get(two));
+        assertEquals(1, map.size());
+        assertEquals(one, map.keys().get(0));
+    }
+
+    /**
+     * Colliding keys in a single small stripe exercise resizing and backward shift deletion
+     */
+    @Test
+    public void testMatchesHashMap() {
+        ConcurrentUuidMap<Integer> map = new ConcurrentUuidMap<Integer>(1);
+        Map<UUID, Integer> expected = new HashMap<UUID, Integer>();
+        List<UUID> keys = new ArrayList<UUID>();
+        Random random = new Random(7);
+        for(int i=0; i<2000; i++) {
+            keys.add(new UUID(random.nextInt(50), random.nextLong()));
+        }
+
+        for(int i=0; i<50000; i++) {
+            UUID key = keys.get(random.nextInt(keys.size()));
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.keySet(), new HashSet<UUID>(map.keys()));
+        for(UUID key : keys) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        for(UUID key : keys) {
+            map.remove(key);
+        }
+        assertTrue(map.isEmpty());
+    }
+}
@@ -1,6 +1,8 @@
 package com.hazeltask.core.concurrent.collections.grouped;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 import junit.framework.Assert;
 
@@ -78,4 +80,38 @@ public class GroupedPriorityQueueTest {
         //all groups empty
         Assert.assertEquals(0, queue.size());
     }
+    
+    @Test
+    public void drainTo() {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        for(long i=0; i<6; i++) {
+            queue.offer(new MyGroupableItem(i%3));
+        }
+        
+        ArrayList<MyGroupableItem> drained = new ArrayList<MyGroupableItem>();
+        Assert.assertEquals(4, queue.drainTo(drained, 4));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(2, queue.drainTo(drained));
+        Assert.assertEquals(6, drained.size());
+        Assert.assertEquals(0, queue.size());
+    }
+    
+    @Test
+    public void largestGroups() {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        //group i gets i items
+        for(long i=1; i<=10; i++) {
+            for(long j=0; j<i; j++) {
+                queue.offer(new MyGroupableItem(i));
+            }
+        }
+        
+        Map<Long, Integer> largest = queue.getLargestGroups(3, null);
+        Assert.assertEquals(Arrays.asList(10L, 9L, 8L), new ArrayList<Long>(largest.keySet()));
+        Assert.assertEquals(10, (int) largest.get(10L));
+        
+        Map<Long, Integer> sizes = queue.getGroupSizes(Arrays.asList(2L, 5L, 42L));
+        Assert.assertEquals(2, sizes.size());
+        Assert.assertEquals(5, (int) sizes.get(5L));
+    }
 }
@@ -0,0 +1,130 @@
+package com.hazeltask.core.concurrent.collections.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data.SimpleItem;
+import data.SimpleItemCodec;
+
+public class OffHeapTrackedQueueTest {
+    OffHeapSlabAllocator allocator;
+    OffHeapTrackedQueue<SimpleItem> queue;
+    
+    SimpleItem item100 = new SimpleItem(100, 100);
+    SimpleItem item101 = new SimpleItem(101, 101);
+    SimpleItem item1   = new SimpleItem(1, 1);
+    SimpleItem item2   = new SimpleItem(2, 2);
+    
+    @Before
+    public void before() {
+        //each item is 12 bytes, so 4 items fit in a slab
+        allocator = new OffHeapSlabAllocator(96, 48);
+        queue = new OffHeapTrackedQueue<SimpleItem>(allocator, new SimpleItemCodec());
+        queue.offer(item100);
+        queue.offer(item2);
+        queue.offer(item101);
+        queue.offer(item1);
+    }
+    
+    @Test
+    public void expectedPollOrder() {
+        assertEquals(item1, queue.poll());
+        assertEquals(item2, queue.poll());
+        assertEquals(item100, queue.poll());
+        assertEquals(item101, queue.poll());
+        assertNull(queue.poll());
+    }
+    
+    @Test
+    public void drainNewest() {
+        List<SimpleItem> drained = new ArrayList<SimpleItem>();
+        assertEquals(3, queue.drainNewestTo(drained, 3));
+        assertEquals(Arrays.asList(item2, item100, item101), drained);
+        assertEquals(item1, queue.poll());
+        assertNull(queue.poll());
+    }
+    
+    @Test
+    public void getOldestTime() {
+        assertEquals((Long)1L, queue.getOldestItemTime());
+        queue.poll();
+        assertEquals((Long)2L, queue.getOldestItemTime());
+    }
+    
+    @Test
+    public void bytesAreReleased() {
+        assertEquals(48, allocator.getUsedBytes());
+        queue.poll();
+        queue.remove(item101);
+        assertEquals(24, allocator.getUsedBytes());
+        queue.poll();
+        queue.poll();
+        assertEquals(0, allocator.getUsedBytes());
+    }
+    
+    @Test
+    public void rejectsWhenFull() {
+        for(int i=0; i<4; i++)
+            assertTrue(queue.offer(new SimpleItem(200+i, 200+i)));
+        assertFalse(queue.offer(new SimpleItem(300, 300)));
+        assertEquals(8, queue.size());
+        
+        //freeing a whole slab makes room again
+        for(int i=0; i<4; i++)
+            queue.poll();
+        assertTrue(queue.offer(new SimpleItem(300, 300)));
+    }
+    
+    @Test
+    public void freedSpaceIsReusedWhileSlabHasLiveItems() {
+        for(int i=0; i<4; i++)
+            assertTrue(queue.offer(new SimpleItem(200+i, 200+i)));
+        assertFalse(queue.offer(new SimpleItem(300, 300)));
+        
+        //item101 keeps the first slab in use
+        queue.poll();
+        queue.poll();
+        queue.poll();
+        for(int i=0; i<3; i++)
+            assertTrue(queue.offer(new SimpleItem(300+i, 300+i)));
+        assertFalse(queue.offer(new SimpleItem(400, 400)));
+        assertEquals(96, allocator.getUsedBytes());
+        
+        assertEquals(item101, queue.poll());
+        for(int i=0; i<4; i++)
+            assertEquals(200+i, queue.poll().id);
+        for(int i=0; i<3; i++)
+            assertEquals(300+i, queue.poll().id);
+        assertEquals(0, allocator.getUsedBytes());
+    }
+    
+    @Test
+    public void removeById() {
+        assertTrue(queue.remove(new SimpleItem(100, 100)));
+        assertFalse(queue.remove(new SimpleItem(100, 100)));
+        assertEquals(3, queue.size());
+    }
+    
+    @Test
+    public void iteratorSkipsPolledItems() {
+        Iterator<SimpleItem> it = queue.iterator();
+        assertEquals(item1, it.next());
+        queue.poll();
+        queue.poll();
+        assertEquals(item100, it.next());
+        it.remove();
+        assertEquals(item101, it.next());
+        assertFalse(it.hasNext());
+        assertEquals(1, queue.size());
+    }
+}
@@ -0,0 +1,51 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class WeightedRoundRobinRouterTest {
+    private final Map<String, Double> weights = new HashMap<String, Double>();
+    private final RouteWeigher<String> weigher = new RouteWeigher<String>() {
+        public double getWeight(String route) {
+            return weights.get(route);
+        }
+    };
+
+    @Test
+    public void testPicksInProportionToWeight() {
+        weights.put("a", 1d);
+        weights.put("b", 3d);
+        ListRouter<String> router = new WeightedRoundRobinRouter<String>(Arrays.asList("a", "b"), weigher);
+
+        List<String> picks = new ArrayList<String>();
+        for(int i=0; i<8; i++) {
+            picks.add(router.next());
+        }
+        //smooth, the heavy route doesn't get bursts
+        Assert.assertEquals(Arrays.asList("b", "a", "b", "b", "b", "a", "b", "b"), picks);
+    }
+
+    @Test
+    public void testSkipsUnroutable() {
+        weights.put("a", 1d);
+        weights.put("b", 1d);
+        weights.put("c", 0d);
+        ListRouter<String> router = new WeightedRoundRobinRouter<String>(Arrays.asList("a", "b", "c"), weigher);
+        router.setRouteCondition(new RouteCondition<String>() {
+            public boolean isRoutable(String route) {
+                return !route.equals("a");
+            }
+        });
+
+        for(int i=0; i<4; i++) {
+            Assert.assertEquals("b", router.next());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hazeltask.core.concurrent.collections.spill;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazeltask.core.concurrent.collections.tracked.TrackedPriorityBlockingQueue;
+
+import data.SimpleItem;
+import data.SimpleItemCodec;
+
+public class SpillableTrackedQueueTest {
+    File directory;
+    SpillStore<SimpleItem> store;
+    SpillableTrackedQueue<SimpleItem> queue;
+    
+    @Before
+    public void before() throws IOException {
+        directory = File.createTempFile("spill", "test");
+        directory.delete();
+        
+        //each record is 40 bytes so 2 fit in a segment.  Spill after 2 items (24 bytes) are in memory
+        store = new SpillStore<SimpleItem>(directory, new SimpleItemCodec(), 80, 24, 0, 2);
+        queue = newQueue();
+        for(int i=1; i<=6; i++)
+            queue.offer(new SimpleItem(i, i));
+    }
+    
+    @After
+    public void after() {
+        for(File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+    
+    private SpillableTrackedQueue<SimpleItem> newQueue() {
+        return new SpillableTrackedQueue<SimpleItem>(new TrackedPriorityBlockingQueue<SimpleItem>(), store);
+    }
+    
+    @Test
+    public void spillsTailPastThreshold() {
+        assertEquals(6, queue.size());
+        assertEquals(4, queue.getSpilledSize());
+        assertEquals(2, store.getInMemoryItems());
+        assertEquals(160, store.getSpilledBytes());
+        assertEquals(2, directory.listFiles().length);
+    }
+    
+    @Test
+    public void expectedPollOrder() {
+        for(int i=1; i<=6; i++)
+            assertEquals(i, queue.poll().id);
+        assertNull(queue.poll());
+        assertEquals(0, store.getSpilledItems());
+        assertEquals(0, store.getSpilledBytes());
+        assertEquals(0, directory.listFiles().length);
+    }
+    
+    @Test
+    public void drainNewestFromDiskFirst() {
+        List<SimpleItem> drained = new ArrayList<SimpleItem>();
+        assertEquals(3, queue.drainNewestTo(drained, 3));
+        assertEquals(3, drained.size());
+        for(int i=0; i<3; i++)
+            assertEquals(4 + i, drained.get(i).id);
+        assertEquals(1, queue.getSpilledSize());
+        
+        drained.clear();
+        assertEquals(2, queue.drainNewestTo(drained, 2));
+        assertEquals(2, drained.get(0).id);
+        assertEquals(3, drained.get(1).id);
+        assertEquals(0, queue.getSpilledSize());
+        assertEquals(1, queue.poll().id);
+        assertNull(queue.poll());
+    }
+    
+    @Test
+    public void olderItemsGoToHead() {
+        queue.offer(new SimpleItem(0, 0));
+        assertEquals(4, queue.getSpilledSize());
+        assertEquals(0, queue.poll().id);
+        assertEquals(1, queue.poll().id);
+    }
+    
+    @Test
+    public void smallGroupsStayInMemory() {
+        SpillableTrackedQueue<SimpleItem> small = newQueue();
+        small.offer(new SimpleItem(10, 10));
+        small.offer(new SimpleItem(11, 11));
+        assertEquals(0, small.getSpilledSize());
+        small.offer(new SimpleItem(12, 12));
+        assertEquals(1, small.getSpilledSize());
+    }
+    
+    @Test
+    public void groupsShareSegments() {
+        SpillableTrackedQueue<SimpleItem> other = newQueue();
+        SpillableTrackedQueue<SimpleItem> third = newQueue();
+        for(int i=10; i<=12; i++)
+            other.offer(new SimpleItem(i, i));
+        assertEquals(3, directory.listFiles().length);
+        for(int i=20; i<=22; i++)
+            third.offer(new SimpleItem(i, i));
+        assertEquals(1, third.getSpilledSize());
+        assertEquals(3, directory.listFiles().length);
+        
+        assertEquals(10, other.poll().id);
+        assertEquals(11, other.poll().id);
+        assertEquals(12, other.poll().id);
+        assertEquals(3, directory.listFiles().length);
+        third.clear();
+        assertEquals(2, directory.listFiles().length);
+    }
+    
+    @Test
+    public void removeSpilledById() {
+        assertTrue(queue.remove(new SimpleItem(4, 4)));
+        assertFalse(queue.remove(new SimpleItem(4, 4)));
+        assertEquals(5, queue.size());
+        assertEquals(1, queue.poll().id);
+        assertEquals(2, queue.poll().id);
+        assertEquals(3, queue.poll().id);
+        assertEquals(5, queue.poll().id);
+        assertEquals(6, queue.poll().id);
+        assertNull(queue.poll());
+    }
+    
+    @Test
+    public void iteratorIncludesSpilledItems() {
+        Iterator<SimpleItem> it = queue.iterator();
+        for(int i=1; i<=5; i++) {
+            SimpleItem item = it.next();
+            assertEquals(i, item.id);
+            if(i == 2 || i == 5)
+                it.remove();
+        }
+        assertEquals(6, it.next().id);
+        assertFalse(it.hasNext());
+        
+        assertEquals(4, queue.size());
+        assertEquals(1, queue.poll().id);
+        assertEquals(3, queue.poll().id);
+        assertEquals(4, queue.poll().id);
+        assertEquals(6, queue.poll().id);
+    }
+    
+    @Test
+    public void fullHeadHoldsItemInsteadOfNewSegment() {
+        final boolean[] full = new boolean[1];
+        SpillableTrackedQueue<SimpleItem> limited = new SpillableTrackedQueue<SimpleItem>(new TrackedPriorityBlockingQueue<SimpleItem>() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean offer(SimpleItem e) {
+                return !full[0] && super.offer(e);
+            }
+        }, store);
+        for(int i=11; i<=16; i++)
+            limited.offer(new SimpleItem(i, i));
+        int files = directory.listFiles().length;
+        
+        full[0] = true;
+        for(int i=11; i<=14; i++) {
+            assertEquals(i, limited.poll().id);
+            assertTrue(directory.listFiles().length <= files);
+        }
+        assertEquals(2, limited.size());
+        full[0] = false;
+        assertEquals(15, limited.poll().id);
+        assertEquals(16, limited.poll().id);
+        assertNull(limited.poll());
+    }
+    
+    @Test
+    public void clearDeletesSegments() {
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertEquals(0, store.getInMemoryItems());
+        assertEquals(0, store.getSpilledItems());
+        assertEquals(0, directory.listFiles().length);
+    }
+}
@@ -1,5 +1,10 @@
 package com.hazeltask.executor;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -13,10 +18,12 @@ import org.junit.Test;
 
 import com.hazelcast.core.Member;
 import com.hazelcast.core.Message;
+import com.hazelcast.core.Partition;
 import com.hazelcast.instance.MemberImpl;
 import com.hazeltask.config.defaults.ExecutorConfigs;
 import com.hazeltask.executor.task.HazeltaskTask;
 import com.hazeltask.executor.task.TaskResponse;
+import com.hazeltask.hazelcast.HazelcastPartitionManager;
 
 public class DistributedFutureTrackerTest {
     private UUID workOneId;
@@ -80,6 +87,98 @@ public class DistributedFutureTrackerTest {
         Assert.assertEquals(future.get(10, TimeUnit.MILLISECONDS), "Yay!");
     }
     
+    @Test
+    public void testAwaitEmpty() throws InterruptedException {
+        Assert.assertTrue(tracker.awaitEmpty(0, TimeUnit.MILLISECONDS));
+        
+        HazeltaskTask<String> work = new HazeltaskTask<String>(workOneId, "group-1", null, (Callable<?>)null);
+        tracker.createFuture(work);
+        Assert.assertFalse(tracker.awaitEmpty(10, TimeUnit.MILLISECONDS));
+        
+        new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                tracker.errorFuture(workOneId, new TestException("gone"));
+            }
+        }.start();
+        Assert.assertTrue(tracker.awaitEmpty(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testFutureExpires() throws InterruptedException {
+        IExecutorTopologyService<String> topologyService = mock(IExecutorTopologyService.class);
+        DistributedFutureTracker<String> tracker = new DistributedFutureTracker<String>(topologyService, null, ExecutorConfigs.<String>basicGroupable());
+        HazeltaskTask<String> work = new HazeltaskTask<String>(workOneId, "group-1", null, (Callable<?>)null);
+        HazeltaskTask<String> work2 = new HazeltaskTask<String>(workTwoId, "group-1", null, (Callable<?>)null);
+        DistributedFuture<String, String> future = tracker.createFuture(work);
+        DistributedFuture<String, String> future2 = tracker.createFuture(work2);
+        tracker.errorFuture(workTwoId, new TestException("gone"));
+        
+        long maxWait = ExecutorConfigs.basic().getMaximumFutureWaitTime();
+        tracker.expire(System.currentTimeMillis() + maxWait / 2);
+        Assert.assertFalse(future.isDone());
+        
+        tracker.expire(System.currentTimeMillis() + maxWait * 2);
+        Assert.assertEquals(0, tracker.size());
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        verify(topologyService).cancelTask("group-1", workOneId);
+        verify(topologyService).removePendingTask(workOneId);
+        verify(topologyService, never()).cancelTask("group-1", workTwoId);
+        Assert.assertTrue(future2.isDone());
+    }
+    
+    @Test
+    public void testExpiryTaskExpiresWithoutNewFutures() throws InterruptedException {
+        IExecutorTopologyService<String> topologyService = mock(IExecutorTopologyService.class);
+        DistributedFutureTracker<String> tracker = new DistributedFutureTracker<String>(topologyService, null, ExecutorConfigs.<String>basicGroupable().withMaximumFutureWaitTime(512));
+        HazeltaskTask<String> work = new HazeltaskTask<String>(workOneId, "group-1", null, (Callable<?>)null);
+        DistributedFuture<String, String> future = tracker.createFuture(work);
+        
+        Thread.sleep(512 + 2 * tracker.getTickMillis());
+        tracker.createExpiryTask().execute();
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(0, tracker.size());
+        verify(topologyService).removePendingTask(workOneId);
+    }
+    
+    @Test
+    public void testErrorPartitionFutures() throws InterruptedException {
+        HazelcastPartitionManager partitionManager = mock(HazelcastPartitionManager.class);
+        when(partitionManager.getPartitionCount()).thenReturn(271);
+        Partition partition1 = mock(Partition.class);
+        when(partition1.getPartitionId()).thenReturn(1);
+        Partition partition2 = mock(Partition.class);
+        when(partition2.getPartitionId()).thenReturn(2);
+        UUID workThreeId = UUID.randomUUID();
+        when(partitionManager.getPartition(workOneId)).thenReturn(partition1);
+        when(partitionManager.getPartition(workTwoId)).thenReturn(partition2);
+        when(partitionManager.getPartition(workThreeId)).thenReturn(partition1);
+        
+        DistributedFutureTracker<String> tracker = new DistributedFutureTracker<String>(null, null, ExecutorConfigs.<String>basicGroupable(), partitionManager);
+        DistributedFuture<String, String> future1 = tracker.createFuture(new HazeltaskTask<String>(workOneId, "group-1", null, (Callable<?>)null));
+        DistributedFuture<String, String> future2 = tracker.createFuture(new HazeltaskTask<String>(workTwoId, "group-1", null, (Callable<?>)null));
+        DistributedFuture<String, String> future3 = tracker.createFuture(new HazeltaskTask<String>(workThreeId, "group-1", null, (Callable<?>)null));
+        
+        //completed futures are no longer in their partition
+        tracker.errorFuture(workThreeId, new TestException("done"));
+        
+        Assert.assertEquals(1, tracker.errorPartitionFutures(1, new TestException("lost")));
+        Assert.assertTrue(future1.isDone());
+        Assert.assertFalse(future2.isDone());
+        Assert.assertTrue(future3.isDone());
+        Assert.assertEquals(0, tracker.errorPartitionFutures(1, new TestException("lost")));
+        Assert.assertEquals(1, tracker.size());
+    }
+    
     private static class TestException extends RuntimeException {
         public TestException(String msg) {
             super(msg);
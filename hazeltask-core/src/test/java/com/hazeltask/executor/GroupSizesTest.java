@@ -0,0 +1,34 @@
+package com.hazeltask.executor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class GroupSizesTest {
+    
+    @Test
+    public void testMergeAndLargest() {
+        Map<String, Integer> member1 = new HashMap<String, Integer>();
+        member1.put("a", 5);
+        member1.put("b", 1);
+        Map<String, Integer> member2 = new HashMap<String, Integer>();
+        member2.put("b", 7);
+        member2.put("c", 3);
+        
+        GroupSizes<String> total = new GroupSizes<String>()
+                .merge(new GroupSizes<String>(member1, false))
+                .merge(new GroupSizes<String>(member2, false));
+        Assert.assertEquals(8, (int) total.asMap().get("b"));
+        Assert.assertFalse(total.isTruncated());
+        
+        GroupSizes<String> largest = total.largest(2);
+        Assert.assertEquals(Arrays.asList("b", "a"), new ArrayList<String>(largest.asMap().keySet()));
+        Assert.assertTrue(largest.isTruncated());
+        Assert.assertFalse(total.largest(3).isTruncated());
+    }
+}
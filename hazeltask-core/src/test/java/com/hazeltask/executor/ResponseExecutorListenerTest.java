@@ -3,7 +3,9 @@ package com.hazeltask.executor;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.Serializable;
 import java.util.UUID;
@@ -32,27 +34,30 @@ public class ResponseExecutorListenerTest {
     @Test
     public void testSuccessfulExecution() {        
         HazeltaskTask<String> work = new HazeltaskTask<String>(workId, "group-1", "info", new SuccessCallable());
+        work.setReplyRequired(true);
         work.run();
         listener.afterExecute(work, null);
-        verify(mockedSvc).broadcastTaskCompletion(eq(workId), (Serializable) any(), eq("info"));
+        verify(mockedSvc).sendTaskCompletion(eq(work), (Serializable) any());
     }
     
     @Test
     public void testFailedExecution() {
         HazeltaskTask<String> work = new HazeltaskTask<String>(workId, "group-1", "info", new SuccessCallable());
+        work.setReplyRequired(true);
         work.run();
         TestException e = new TestException("Darn!");
         listener.afterExecute(work, e);
-        verify(mockedSvc).broadcastTaskError(eq(workId), eq(e), eq("info"));
+        verify(mockedSvc).sendTaskError(eq(work), eq(e));
     }
     
     @Test
     public void testFailedExecutionWorkFail() {
         TestException e = new TestException("Bah!");
         HazeltaskTask<String> work = new HazeltaskTask<String>(workId, "group-1", "info", new ExceptionCallable(e));
+        work.setReplyRequired(true);
         work.run();
         listener.afterExecute(work, null);
-        verify(mockedSvc).broadcastTaskError(eq(workId), eq(e), eq("info"));
+        verify(mockedSvc).sendTaskError(eq(work), eq(e));
     }
     
     @Test
@@ -60,9 +65,28 @@ public class ResponseExecutorListenerTest {
         TestException e1 = new TestException("Bah!");
         TestException e2 = new TestException("Humbug!");
         HazeltaskTask<String> work = new HazeltaskTask<String>(workId, "group-1", "info", new ExceptionCallable(e1));
+        work.setReplyRequired(true);
         work.run();
         listener.afterExecute(work, e2);
-        verify(mockedSvc).broadcastTaskError(eq(workId), eq(e1), eq("info"));
+        verify(mockedSvc).sendTaskError(eq(work), eq(e1));
+    }
+    
+    @Test
+    public void testFireAndForgetIsSkipped() {
+        HazeltaskTask<String> work = new HazeltaskTask<String>(workId, "group-1", "info", new SuccessCallable());
+        work.run();
+        listener.afterExecute(work, null);
+        verify(mockedSvc, never()).sendTaskCompletion(eq(work), (Serializable) any());
+    }
+    
+    @Test
+    public void testFireAndForgetWithListeners() {
+        //a member somewhere has TaskResponseListeners
+        when(mockedSvc.isTaskResponsePublishingEnabled()).thenReturn(true);
+        HazeltaskTask<String> work = new HazeltaskTask<String>(workId, "group-1", "info", new SuccessCallable());
+        work.run();
+        listener.afterExecute(work, null);
+        verify(mockedSvc).sendTaskCompletion(eq(work), (Serializable) any());
     }
     
     private static class TestException extends RuntimeException {
@@ -0,0 +1,96 @@
+package com.hazeltask.executor;
+
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+public class WriteAheadLogBatcherTest {
+    private IExecutorTopologyService<String> mockedSvc;
+    private WriteAheadLogBatcher<String> batcher;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setupData() {
+        mockedSvc = mock(IExecutorTopologyService.class);
+        //never flush in the background during the test
+        batcher = new WriteAheadLogBatcher<String>(mockedSvc, 3600000, 2, Executors.defaultThreadFactory(), new Timer(), new Histogram(new UniformReservoir()));
+    }
+
+    @After
+    public void after() {
+        batcher.close();
+    }
+
+    private HazeltaskTask<String> newTask() {
+        return new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+    }
+
+    @Test
+    public void testWaitsForItsGroupToBeWritten() throws InterruptedException {
+        final HazeltaskTask<String> task = newTask();
+        final CountDownLatch added = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            public void run() {
+                batcher.add(task);
+                added.countDown();
+            }
+        }).start();
+
+        Assert.assertFalse(added.await(100, TimeUnit.MILLISECONDS));
+        verify(mockedSvc, never()).addPendingTasks(anyCollection());
+
+        batcher.flush();
+        Assert.assertTrue(added.await(5, TimeUnit.SECONDS));
+        verify(mockedSvc).addPendingTasks(Collections.singletonList(task));
+    }
+
+    @Test
+    public void testFullGroupIsWrittenByTheAddingThread() throws InterruptedException {
+        final HazeltaskTask<String> first = newTask();
+        new Thread(new Runnable() {
+            public void run() {
+                batcher.add(first);
+            }
+        }).start();
+
+        //give the first task time to get in the group
+        Thread.sleep(100);
+        HazeltaskTask<String> second = newTask();
+        batcher.add(second);
+        verify(mockedSvc).addPendingTasks(Arrays.asList(first, second));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedWriteFailsTheSubmit() {
+        doThrow(new IllegalStateException("no partitions")).when(mockedSvc).addPendingTasks(anyCollection());
+        batcher.close();
+        try {
+            batcher.add(newTask());
+            Assert.fail("the task isn't in the write ahead log");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
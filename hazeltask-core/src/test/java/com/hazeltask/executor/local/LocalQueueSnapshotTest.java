@@ -0,0 +1,62 @@
+package com.hazeltask.executor.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import data.SimpleItem;
+import data.SimpleItemCodec;
+
+public class LocalQueueSnapshotTest {
+    File file;
+    LocalQueueSnapshot<SimpleItem> snapshot;
+    
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("queue", ".snapshot");
+        file.delete();
+        snapshot = new LocalQueueSnapshot<SimpleItem>(file, new SimpleItemCodec());
+    }
+    
+    @After
+    public void after() {
+        file.delete();
+    }
+    
+    @Test
+    public void missingSnapshotIsEmpty() throws IOException {
+        assertFalse(snapshot.exists());
+        assertTrue(snapshot.read().isEmpty());
+    }
+    
+    @Test
+    public void roundTrip() throws IOException {
+        snapshot.write(Arrays.asList(new SimpleItem(1, 10), new SimpleItem(2, 20)));
+        assertTrue(snapshot.exists());
+        
+        List<SimpleItem> items = snapshot.read();
+        assertEquals(Arrays.asList(new SimpleItem(1, 10), new SimpleItem(2, 20)), items);
+        
+        //a later snapshot replaces the old one
+        snapshot.write(Arrays.asList(new SimpleItem(3, 30)));
+        assertEquals(Arrays.asList(new SimpleItem(3, 30)), snapshot.read());
+    }
+    
+    @Test(expected=IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        out.close();
+        snapshot.read();
+    }
+}
@@ -0,0 +1,62 @@
+package com.hazeltask.executor.local;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+public class ReleaseOwnershipPolicyTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFullQueueLeavesTaskForRecovery() throws InterruptedException {
+        IExecutorTopologyService<String> svc = mock(IExecutorTopologyService.class);
+        Counter rejected = new Counter();
+        //one busy worker and no room in the queue, like an off heap queue out of capacity
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ReleaseOwnershipPolicy<String>(svc, rejected));
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            pool.execute(newTask());
+
+            HazeltaskTask<String> task = newTask();
+            task.setOwner("member-1");
+            //doesn't throw back at the sender
+            pool.execute(task);
+
+            Assert.assertEquals(1, rejected.getCount());
+            Assert.assertNull(task.getOwner());
+            verify(svc).updatePendingTasks(Collections.singletonList(task));
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    private HazeltaskTask<String> newTask() {
+        return new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+    }
+}
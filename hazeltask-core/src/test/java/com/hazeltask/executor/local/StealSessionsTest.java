@@ -0,0 +1,114 @@
+package com.hazeltask.executor.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazeltask.executor.steal.StolenTaskChunk;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+public class StealSessionsTest {
+    private LinkedList<HazeltaskTask<String>> queue;
+    private StealSessions.TaskSource<String> source;
+
+    @Before
+    public void setup() {
+        queue = new LinkedList<HazeltaskTask<String>>();
+        for(int i=0; i<25; i++) {
+            queue.add(new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>)null));
+        }
+        source = new StealSessions.TaskSource<String>() {
+            public Collection<HazeltaskTask<String>> take(long numberOfTasks) {
+                List<HazeltaskTask<String>> tasks = new ArrayList<HazeltaskTask<String>>();
+                while(tasks.size() < numberOfTasks && !queue.isEmpty()) {
+                    tasks.add(queue.poll());
+                }
+                return tasks;
+            }
+        };
+    }
+
+    @Test
+    public void testChunksUntilDone() {
+        StealSessions<String> sessions = new StealSessions<String>(60000);
+        UUID stealId = UUID.randomUUID();
+
+        StolenTaskChunk<String> chunk = sessions.next(stealId, 20, 8, 0, source);
+        Assert.assertEquals(1, chunk.getSequence());
+        Assert.assertEquals(8, chunk.getTasks().size());
+
+        chunk = sessions.next(stealId, 20, 8, chunk.getSequence(), source);
+        Assert.assertEquals(2, chunk.getSequence());
+        Assert.assertEquals(8, chunk.getTasks().size());
+
+        //only 4 left of the 20 asked for
+        chunk = sessions.next(stealId, 20, 8, chunk.getSequence(), source);
+        Assert.assertEquals(3, chunk.getSequence());
+        Assert.assertEquals(4, chunk.getTasks().size());
+
+        chunk = sessions.next(stealId, 20, 8, chunk.getSequence(), source);
+        Assert.assertTrue(chunk.isDone());
+        Assert.assertEquals(5, queue.size());
+        Assert.assertTrue(sessions.removeAll().isEmpty());
+    }
+
+    @Test
+    public void testResendsUnacknowledgedChunk() {
+        StealSessions<String> sessions = new StealSessions<String>(60000);
+        UUID stealId = UUID.randomUUID();
+
+        StolenTaskChunk<String> first = sessions.next(stealId, 20, 8, 0, source);
+        //the thief never got the first chunk
+        StolenTaskChunk<String> again = sessions.next(stealId, 20, 8, 0, source);
+        Assert.assertEquals(first.getSequence(), again.getSequence());
+        Assert.assertEquals(first.getTasks(), again.getTasks());
+        Assert.assertEquals(17, queue.size());
+    }
+
+    @Test
+    public void testExpiredChunkIsReturned() {
+        StealSessions<String> sessions = new StealSessions<String>(-1);
+        UUID stealId = UUID.randomUUID();
+
+        StolenTaskChunk<String> chunk = sessions.next(stealId, 20, 8, 0, source);
+        List<HazeltaskTask<String>> reclaimed = sessions.removeExpired();
+        Assert.assertEquals(chunk.getTasks(), reclaimed);
+        Assert.assertTrue(sessions.removeExpired().isEmpty());
+    }
+
+    @Test
+    public void testOtherThievesAreServedWhileDraining() throws InterruptedException {
+        final StealSessions<String> sessions = new StealSessions<String>(60000);
+        final AtomicReference<StolenTaskChunk<String>> other = new AtomicReference<StolenTaskChunk<String>>();
+        StealSessions.TaskSource<String> slowSource = new StealSessions.TaskSource<String>() {
+            public Collection<HazeltaskTask<String>> take(long numberOfTasks) {
+                Thread thief = new Thread() {
+                    public void run() {
+                        other.set(sessions.next(UUID.randomUUID(), 5, 5, 0, source));
+                    }
+                };
+                thief.start();
+                try {
+                    thief.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return source.take(numberOfTasks);
+            }
+        };
+
+        StolenTaskChunk<String> chunk = sessions.next(UUID.randomUUID(), 8, 8, 0, slowSource);
+        Assert.assertNotNull(other.get());
+        Assert.assertEquals(5, other.get().getTasks().size());
+        Assert.assertEquals(8, chunk.getTasks().size());
+    }
+}
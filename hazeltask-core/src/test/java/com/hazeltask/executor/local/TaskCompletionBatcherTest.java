@@ -0,0 +1,102 @@
+package com.hazeltask.executor.local;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.Serializable;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import junit.framework.Assert;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.hazelcast.core.Member;
+import com.hazelcast.instance.MemberImpl;
+import com.hazelcast.nio.Address;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.TaskResponse;
+
+public class TaskCompletionBatcherTest {
+    private IExecutorTopologyService<String> mockedSvc;
+    private TaskCompletionBatcher<String> batcher;
+    private Member local;
+    private String origin;
+    
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setupData() throws UnknownHostException {
+        mockedSvc = mock(IExecutorTopologyService.class);
+        local = new MemberImpl(new Address("127.0.0.1", 5701), true, UUID.randomUUID().toString());
+        origin = UUID.randomUUID().toString();
+        //never flush in the background during the test
+        batcher = new TaskCompletionBatcher<String>(mockedSvc, local, true, 3600000, 2, Executors.defaultThreadFactory(), new Meter(), new Timer());
+    }
+    
+    @After
+    public void after() {
+        batcher.close();
+    }
+    
+    private HazeltaskTask<String> runTask(String origin) {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group-1", "info", new SuccessCallable());
+        task.setOrigin(origin);
+        task.setReplyRequired(true);
+        task.run();
+        batcher.afterExecute(task, null);
+        return task;
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void sendsFullBatchToOrigin() {
+        HazeltaskTask<String> task1 = runTask(origin);
+        verify(mockedSvc, never()).sendTaskCompletions(any(String.class), any(Map.class), any(List.class));
+        HazeltaskTask<String> task2 = runTask(origin);
+        
+        ArgumentCaptor<List> responses = ArgumentCaptor.forClass(List.class);
+        verify(mockedSvc).sendTaskCompletions(eq(origin), eq(epochs(task1, task2)), responses.capture());
+        Assert.assertEquals(2, responses.getValue().size());
+        Assert.assertEquals("Yay!", ((TaskResponse<Serializable>)responses.getValue().get(0)).getResponse());
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void flushSendsPartialBatches() {
+        HazeltaskTask<String> task1 = runTask(origin);
+        HazeltaskTask<String> task2 = runTask(null);
+        batcher.flush();
+        
+        verify(mockedSvc).sendTaskCompletions(eq(origin), eq(epochs(task1)), any(List.class));
+        //tasks without an origin are completed locally
+        verify(mockedSvc).sendTaskCompletions(eq(local.getUuid()), eq(epochs(task2)), any(List.class));
+    }
+    
+    private Map<UUID, Integer> epochs(HazeltaskTask<?>... tasks) {
+        Map<UUID, Integer> epochs = new HashMap<UUID, Integer>();
+        for(HazeltaskTask<?> task : tasks) {
+            epochs.put(task.getId(), task.getSubmissionCount());
+        }
+        return epochs;
+    }
+    
+    private static class SuccessCallable implements Callable<String> {
+        public String call() throws Exception {
+            return "Yay!";
+        }
+    }
+}
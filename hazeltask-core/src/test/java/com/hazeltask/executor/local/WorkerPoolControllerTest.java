@@ -0,0 +1,78 @@
+package com.hazeltask.executor.local;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.config.defaults.ExecutorConfigs;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+
+public class WorkerPoolControllerTest {
+    private WorkerPoolController controller;
+
+    @Before
+    public void setup() {
+        HazeltaskThreadPoolExecutor pool = mock(HazeltaskThreadPoolExecutor.class);
+        when(pool.getCorePoolSize()).thenReturn(2);
+        ExecutorConfig<String> config = ExecutorConfigs.<String>basicGroupable()
+                .withAdaptiveThreadCount(2, 5)
+                .withAdaptiveThreadTargetWait(1000);
+        controller = new WorkerPoolController(pool, Collections.emptyList(), config, new ExecutorMetrics(new HazeltaskConfig<String>()));
+    }
+
+    @Test
+    public void testGrowsWhileThroughputRises() {
+        //100 queued at 20 per second is a 5 second wait
+        Assert.assertEquals(3, controller.adjust(20, 100, 0.5, 1000));
+        Assert.assertEquals(5000, controller.getEstimatedWait());
+        Assert.assertEquals(4, controller.adjust(30, 100, 0.5, 1000));
+        Assert.assertEquals(5, controller.adjust(40, 100, 0.5, 1000));
+        //max threads
+        Assert.assertEquals(5, controller.adjust(50, 100, 0.5, 1000));
+    }
+
+    @Test
+    public void testBacksOffWhenThreadDoesNotHelp() {
+        Assert.assertEquals(3, controller.adjust(20, 100, 0.5, 1000));
+        //no more throughput with the new thread
+        Assert.assertEquals(2, controller.adjust(20, 100, 0.5, 1000));
+        //and we wait before trying again
+        Assert.assertEquals(2, controller.adjust(20, 100, 0.5, 1000));
+    }
+
+    @Test
+    public void testHoldsWhenCpuIsSaturatedOrWaitIsLow() {
+        Assert.assertEquals(2, controller.adjust(20, 100, 0.95, 1000));
+        //10 queued at 20 per second is within the target
+        Assert.assertEquals(2, controller.adjust(20, 10, 0.5, 1000));
+    }
+
+    @Test
+    public void testDoesNotGrowWithoutCompletions() {
+        //every thread is stuck, another one won't help
+        Assert.assertEquals(2, controller.adjust(0, 100, 0.1, 1000));
+        Assert.assertEquals(2, controller.adjust(0, 100, 0.1, 1000));
+        //a thread we just added that stalls is taken back
+        Assert.assertEquals(3, controller.adjust(20, 100, 0.5, 1000));
+        Assert.assertEquals(2, controller.adjust(0, 100, 0.5, 1000));
+    }
+
+    @Test
+    public void testShrinksWhenIdle() {
+        controller.adjust(20, 100, 0.5, 1000);
+        controller.adjust(30, 100, 0.5, 1000);
+        controller.adjust(40, 100, 0.5, 1000);
+        Assert.assertEquals(4, controller.adjust(40, 0, 0.5, 1000));
+        Assert.assertEquals(3, controller.adjust(40, 0, 0.5, 1000));
+        Assert.assertEquals(2, controller.adjust(40, 0, 0.5, 1000));
+        Assert.assertEquals(2, controller.adjust(40, 0, 0.5, 1000));
+    }
+}
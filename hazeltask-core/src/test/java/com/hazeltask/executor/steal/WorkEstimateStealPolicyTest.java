@@ -0,0 +1,75 @@
+package com.hazeltask.executor.steal;
+
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.core.Member;
+import com.hazelcast.instance.MemberImpl;
+import com.hazelcast.nio.Address;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.hazeltask.hazelcast.MemberValuePair;
+
+public class WorkEstimateStealPolicyTest {
+    private Member local;
+    private Member other;
+    private Member another;
+    private WorkEstimateStealPolicy policy;
+
+    @Before
+    public void setup() throws UnknownHostException {
+        local = new MemberImpl(new Address("127.0.0.1", 5701), true);
+        other = new MemberImpl(new Address("127.0.0.1", 5702), false);
+        another = new MemberImpl(new Address("127.0.0.1", 5703), false);
+        policy = new WorkEstimateStealPolicy(0.30);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testStealsEnoughToReachAverage() {
+        //average drain time is 1000, local has 0, other has 2000 at 10 ms per task per thread
+        List<MemberValuePair<Long>> take = policy.getTasksToSteal(local, Arrays.asList(
+                new MemberResponse<MemberLoad>(local, new MemberLoad(0, 4, 0)),
+                new MemberResponse<MemberLoad>(other, new MemberLoad(800, 4, 2000))));
+
+        Assert.assertEquals(1, take.size());
+        Assert.assertEquals(other, take.get(0).getMember());
+        //1000 millis for each of our 4 threads
+        Assert.assertEquals(400L, (long) take.get(0).getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSlowTasksCountMore() {
+        //other has fewer tasks, but they are slow
+        List<MemberValuePair<Long>> take = policy.getTasksToSteal(local, Arrays.asList(
+                new MemberResponse<MemberLoad>(local, new MemberLoad(500, 1, 500)),
+                new MemberResponse<MemberLoad>(other, new MemberLoad(100, 1, 10000))));
+
+        Assert.assertEquals(1, take.size());
+        Assert.assertEquals(48L, (long) take.get(0).getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNothingInsideBand() {
+        //we are below the average, but not by more than the band
+        List<MemberValuePair<Long>> take = policy.getTasksToSteal(local, Arrays.asList(
+                new MemberResponse<MemberLoad>(local, new MemberLoad(80, 1, 800)),
+                new MemberResponse<MemberLoad>(other, new MemberLoad(120, 1, 1200))));
+        Assert.assertTrue(take.isEmpty());
+
+        //only members above the band are stolen from
+        take = policy.getTasksToSteal(local, Arrays.asList(
+                new MemberResponse<MemberLoad>(local, new MemberLoad(0, 1, 0)),
+                new MemberResponse<MemberLoad>(other, new MemberLoad(110, 1, 1100)),
+                new MemberResponse<MemberLoad>(another, new MemberLoad(190, 1, 1900))));
+        Assert.assertEquals(1, take.size());
+        Assert.assertEquals(another, take.get(0).getMember());
+    }
+}
@@ -0,0 +1,28 @@
+package com.hazeltask.executor.task;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FencedRemoveProcessorTest {
+    
+    @Test
+    public void testStaleEpochIsFenced() {
+        //recovered and handed to a new owner
+        PendingTaskEntry<String> task = new PendingTaskEntry<String>(UUID.randomUUID(), "group-1", System.currentTimeMillis(), 2, "member-2");
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(task.getId(), task);
+        
+        Assert.assertEquals(false, new FencedRemoveProcessor<String>(1).process(entry));
+        Assert.assertSame(task, entry.getValue());
+        
+        Assert.assertEquals(true, new FencedRemoveProcessor<String>(2).process(entry));
+        Assert.assertNull(entry.getValue());
+        
+        //already gone
+        Assert.assertEquals(false, new FencedRemoveProcessor<String>(2).process(entry));
+    }
+}
@@ -0,0 +1,130 @@
+package com.hazeltask.executor.task;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hazelcast.core.Member;
+import com.hazelcast.instance.MemberImpl;
+import com.hazelcast.nio.Address;
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.core.concurrent.NamedThreadFactory;
+import com.hazeltask.core.concurrent.collections.grouped.ItemCallback;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.hazeltask.hazelcast.MemberValuePair;
+
+public class IdleTaskStealerTest {
+    private Member local;
+    private Member busy;
+    private Member busier;
+    private LocalTaskExecutorService<String> localSvc;
+    private IExecutorTopologyService<String> svc;
+    private IdleTaskStealer<String> stealer;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        local = new MemberImpl(new Address("127.0.0.1", 5701), true);
+        busy = new MemberImpl(new Address("127.0.0.1", 5702), false);
+        busier = new MemberImpl(new Address("127.0.0.1", 5703), false);
+
+        localSvc = mock(LocalTaskExecutorService.class);
+        svc = mock(IExecutorTopologyService.class);
+        when(svc.getMemberQueueSizes()).thenReturn(Arrays.asList(
+                new MemberResponse<Long>(local, 0L),
+                new MemberResponse<Long>(busy, 50L),
+                new MemberResponse<Long>(busier, 100L)));
+
+        ExecutorLoadBalancingConfig<String> config = ExecutorLoadBalancingConfig.<String>create()
+                .withIdleStealing(10, 20);
+        stealer = new IdleTaskStealer<String>(new HazeltaskTopology<String>("test", local), localSvc, svc, config,
+                new NamedThreadFactory("test", "steal"), new ExecutorMetrics(new HazeltaskConfig<String>()));
+    }
+
+    /**
+     * Hand each task to the callback like HazelcastExecutorTopologyService does as chunks arrive
+     */
+    private Answer<Long> deliver(final Collection<HazeltaskTask<String>> stolen) {
+        return new Answer<Long>() {
+            @SuppressWarnings("unchecked")
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                ItemCallback<String, HazeltaskTask<String>> callback = (ItemCallback<String, HazeltaskTask<String>>) invocation.getArguments()[2];
+                for(HazeltaskTask<String> task : stolen) {
+                    callback.onItem(task);
+                }
+                return (long) stolen.size();
+            }
+        };
+    }
+
+    private List<HazeltaskTask<String>> tasks(int count) {
+        List<HazeltaskTask<String>> tasks = new ArrayList<HazeltaskTask<String>>();
+        for(int i=0; i<count; i++) {
+            tasks.add(new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>)null));
+        }
+        return tasks;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testStealsFromMostLoadedFirst() {
+        Collection<HazeltaskTask<String>> stolen = tasks(20);
+        when(svc.tryAcquireStealLease(eq(busier), anyLong())).thenReturn(true);
+        doAnswer(deliver(stolen)).when(svc).stealTasks(any(List.class), anyLong(), any(ItemCallback.class));
+
+        long now = System.currentTimeMillis();
+        Assert.assertEquals(20, stealer.steal());
+        ArgumentCaptor<List> numToTake = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Long> deadline = ArgumentCaptor.forClass(Long.class);
+        verify(svc).stealTasks(numToTake.capture(), deadline.capture(), any(ItemCallback.class));
+        //the steal ends with the lease
+        Assert.assertTrue(deadline.getValue() <= System.currentTimeMillis() + ExecutorLoadBalancingConfig.create().getIdleStealLeaseTime());
+        Assert.assertTrue(deadline.getValue() >= now);
+        MemberValuePair<Long> take = (MemberValuePair<Long>) numToTake.getValue().get(0);
+        Assert.assertEquals(busier, take.getMember());
+        Assert.assertEquals(20L, (long) take.getValue());
+        verify(localSvc, times(20)).execute(any(HazeltaskTask.class));
+        verify(svc).releaseStealLease(busier);
+        //we are above the low water mark so we stop
+        verify(svc, never()).tryAcquireStealLease(eq(busy), anyLong());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSkipsLeasedMember() {
+        Collection<HazeltaskTask<String>> stolen = tasks(20);
+        when(svc.tryAcquireStealLease(eq(busier), anyLong())).thenReturn(false);
+        when(svc.tryAcquireStealLease(eq(busy), anyLong())).thenReturn(true);
+        doAnswer(deliver(stolen)).when(svc).stealTasks(any(List.class), anyLong(), any(ItemCallback.class));
+
+        Assert.assertEquals(20, stealer.steal());
+        verify(svc, never()).releaseStealLease(busier);
+        verify(svc).releaseStealLease(busy);
+    }
+}
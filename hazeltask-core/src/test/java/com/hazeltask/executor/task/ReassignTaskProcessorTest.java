@@ -0,0 +1,61 @@
+package com.hazeltask.executor.task;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ReassignTaskProcessorTest {
+    private final Map<String, Long> live = Collections.singletonMap("member-2", Long.MIN_VALUE);
+    
+    @Test
+    public void testReassignsTaskOfDepartedOwner() {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+        task.setOwner("member-1");
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(task.getId(), new PendingTaskEntry<String>(task));
+        
+        PendingTaskEntry<?> reassigned = (PendingTaskEntry<?>) new ReassignTaskProcessor<String>(Long.MAX_VALUE, live, "member-2").process(entry);
+        Assert.assertEquals("member-2", reassigned.getOwner());
+        Assert.assertEquals(2, reassigned.getSubmissionCount());
+        Assert.assertSame(reassigned, entry.getValue());
+        
+        //the payload copy picks up the new owner and epoch
+        entry.getValue().applyTo(task);
+        Assert.assertEquals("member-2", task.getOwner());
+        Assert.assertEquals(2, task.getSubmissionCount());
+        
+        //member-2 is alive so it isn't lost anymore
+        Assert.assertNull(new ReassignTaskProcessor<String>(Long.MAX_VALUE, live, "member-2").process(entry));
+    }
+    
+    @Test
+    public void testReassignsTaskItsLiveOwnerNeverGot() {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+        task.setOwner("member-2");
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(task.getId(), new PendingTaskEntry<String>(task));
+        
+        //member-2 holds this task or something older
+        Map<String, Long> holdsOlder = Collections.singletonMap("member-2", task.getTimeCreated());
+        Assert.assertNull(new ReassignTaskProcessor<String>(Long.MAX_VALUE, holdsOlder, "member-3").process(entry));
+        
+        //member-2 only holds newer tasks so it never got this one
+        Map<String, Long> holdsNewer = Collections.singletonMap("member-2", task.getTimeCreated()+1);
+        PendingTaskEntry<?> reassigned = (PendingTaskEntry<?>) new ReassignTaskProcessor<String>(Long.MAX_VALUE, holdsNewer, "member-3").process(entry);
+        Assert.assertEquals("member-3", reassigned.getOwner());
+    }
+    
+    @Test
+    public void testLeavesNewTasksAlone() {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(task.getId(), new PendingTaskEntry<String>(task));
+        
+        Assert.assertNull(new ReassignTaskProcessor<String>(task.getTimeCreated(), live, "member-2").process(entry));
+        Assert.assertEquals(1, entry.getValue().getSubmissionCount());
+    }
+}
@@ -0,0 +1,45 @@
+package com.hazeltask.executor.task;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ReclaimTaskProcessorTest {
+
+    @Test
+    public void testReclaimsUntouchedTask() {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+        task.setOwner("old-member");
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(task.getId(), new PendingTaskEntry<String>(task));
+
+        PendingTaskEntry<?> reclaimed = (PendingTaskEntry<?>) new ReclaimTaskProcessor<String>(task.getSubmissionCount(), "new-member").process(entry);
+        Assert.assertEquals("new-member", reclaimed.getOwner());
+        Assert.assertEquals(2, reclaimed.getSubmissionCount());
+        Assert.assertSame(reclaimed, entry.getValue());
+
+        //a second restore of the same snapshot doesn't get it again
+        Assert.assertNull(new ReclaimTaskProcessor<String>(task.getSubmissionCount(), "new-member").process(entry));
+    }
+
+    @Test
+    public void testLeavesRecoveredTaskAlone() {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group-1", null, (Callable<?>) null);
+        task.setOwner("old-member");
+        //recovered by another member while we were down
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(task.getId(), new PendingTaskEntry<String>(task).reassignTo("member-2"));
+
+        Assert.assertNull(new ReclaimTaskProcessor<String>(task.getSubmissionCount(), "new-member").process(entry));
+        Assert.assertEquals("member-2", entry.getValue().getOwner());
+    }
+
+    @Test
+    public void testCompletedTaskIsNotReclaimed() {
+        Entry<UUID, PendingTaskEntry<String>> entry = new SimpleEntry<UUID, PendingTaskEntry<String>>(UUID.randomUUID(), null);
+        Assert.assertNull(new ReclaimTaskProcessor<String>(1, "new-member").process(entry));
+    }
+}
@@ -0,0 +1,85 @@
+package com.hazeltask.hazelcast;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.Member;
+import com.hazelcast.instance.MemberImpl;
+import com.hazelcast.nio.Address;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+public class MemberTasksTest {
+    private Member fast;
+    private Member broken;
+    private Member slow;
+    private IExecutorService execSvc;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        fast = new MemberImpl(new Address("127.0.0.1", 5701), true);
+        broken = new MemberImpl(new Address("127.0.0.1", 5702), false);
+        slow = new MemberImpl(new Address("127.0.0.1", 5703), false);
+        execSvc = mock(IExecutorService.class);
+
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((ExecutionCallback<Long>) invocation.getArguments()[2]).onResponse(10L);
+                return null;
+            }
+        }).when(execSvc).submitToMember(any(Callable.class), eq(fast), any(ExecutionCallback.class));
+
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((ExecutionCallback<Long>) invocation.getArguments()[2]).onFailure(new RuntimeException("broken"));
+                return null;
+            }
+        }).when(execSvc).submitToMember(any(Callable.class), eq(broken), any(ExecutionCallback.class));
+        //slow never answers
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGatherMarksEachMember() {
+        long start = System.currentTimeMillis();
+        List<MemberResponse<Long>> responses = MemberTasks.gather(execSvc, Arrays.asList(fast, broken, slow), mock(Callable.class), 200, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+        Assert.assertEquals(3, responses.size());
+        Assert.assertTrue(responses.get(0).isSuccess());
+        Assert.assertEquals(10L, (long) responses.get(0).getValue());
+        Assert.assertFalse(responses.get(1).isSuccess());
+        Assert.assertFalse(responses.get(1).isTimedOut());
+        Assert.assertEquals("broken", responses.get(1).getError().getMessage());
+        Assert.assertTrue(responses.get(2).isTimedOut());
+        try {
+            responses.get(2).getValue();
+            Assert.fail("a timed out response has no value");
+        } catch (IllegalStateException e) {}
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGatherReturnsOnceAllAnswer() {
+        long start = System.currentTimeMillis();
+        List<MemberResponse<Long>> responses = MemberTasks.gather(execSvc, Arrays.asList(fast, broken), mock(Callable.class), 60, TimeUnit.SECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(2, responses.size());
+    }
+}
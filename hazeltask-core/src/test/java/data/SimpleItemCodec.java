@@ -0,0 +1,25 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import com.hazeltask.core.concurrent.collections.tracked.ItemCodec;
+
+/**
+ * Each item encodes to 12 bytes
+ */
+public class SimpleItemCodec implements ItemCodec<SimpleItem> {
+    public UUID getId(SimpleItem item) {
+        return new UUID(0, item.id);
+    }
+
+    public byte[] encode(SimpleItem item) {
+        return ByteBuffer.allocate(12).putInt(item.id).putLong(item.timeCreated).array();
+    }
+
+    public SimpleItem decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int id = buffer.getInt();
+        return new SimpleItem(id, buffer.getLong());
+    }
+}